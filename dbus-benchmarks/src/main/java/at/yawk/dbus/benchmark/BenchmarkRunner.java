@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line, but enables the GC profiler unless another
+ * profiler is requested, so that allocation rates are reported next to throughput.
+ *
+ * @author yawkat
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
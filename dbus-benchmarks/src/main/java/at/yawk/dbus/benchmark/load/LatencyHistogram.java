@@ -0,0 +1,116 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Histogram of latencies in microseconds. Buckets are linear up to 128µs and then split every power of two into 64
+ * sub-buckets, so recorded values are exact to within about 1.5%. Recording is a single atomic increment.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Larger values (about 19 hours) are recorded as this value.
+     */
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) { return (int) value; }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * The largest value that falls into the bucket with the given index.
+     */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) { return index; }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    void record(long micros) {
+        counts.incrementAndGet(index(Math.min(Math.max(micros, 0), MAX_VALUE)));
+    }
+
+    /**
+     * Copy the current counts. Values recorded concurrently may or may not be included.
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    @Immutable
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[BUCKETS]);
+
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.count = count;
+        }
+
+        /**
+         * The values recorded after the given earlier snapshot of the same histogram.
+         */
+        Snapshot since(Snapshot earlier) {
+            long[] difference = new long[BUCKETS];
+            for (int i = 0; i < difference.length; i++) {
+                difference[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(difference);
+        }
+
+        long count() {
+            return count;
+        }
+
+        /**
+         * @param percentile The percentile, from 0 to 100.
+         * @return The smallest value that at least the given percentage of recorded values is less than or equal to,
+         * or 0 if nothing was recorded.
+         */
+        long percentile(double percentile) {
+            if (count == 0) { return 0; }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) { return highestValue(i); }
+            }
+            return MAX_VALUE;
+        }
+
+        long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) { return highestValue(i); }
+            }
+            return 0;
+        }
+    }
+}
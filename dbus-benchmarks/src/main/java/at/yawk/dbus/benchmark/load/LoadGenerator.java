@@ -0,0 +1,458 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import at.yawk.dbus.client.DbusClient;
+import at.yawk.dbus.protocol.DbusAddress;
+import at.yawk.dbus.protocol.DbusConnector;
+import at.yawk.dbus.protocol.DbusMetrics;
+import at.yawk.dbus.protocol.MessageType;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * End-to-end load and soak tool. Connects a number of {@link DbusClient}s to a bus, drives method calls, property
+ * reads and signals against a {@link LoadService} at fixed target rates and prints throughput, latency percentiles,
+ * pending requests, GC activity and pooled buffer usage at a fixed interval.
+ *
+ * Operations are issued open-loop: each operation type is scheduled at its target rate independently of replies, and
+ * latency is measured from the scheduled time, so a stalled bus shows up as latency rather than as a lower request
+ * rate. Operations that cannot be queued because all workers are busy are counted as dropped.
+ *
+ * For leak hunting in long runs, use {@code --leak-detection=paranoid} and watch the pending and pooled buffer
+ * figures: they should stay flat. After the run, the tool waits for all pending requests to complete and exits with
+ * status 1 if any remain.
+ *
+ * <pre>java -cp target/benchmarks.jar at.yawk.dbus.benchmark.load.LoadGenerator --clients=16 --calls=20000</pre>
+ *
+ * @author yawkat
+ */
+public final class LoadGenerator implements Closeable {
+    static final String BUS = "load";
+
+    private final LoadOptions options;
+    private final String payload;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger nextTarget = new AtomicInteger();
+    private volatile boolean running = true;
+
+    @Nullable private StandInBus standInBus;
+    @Nullable private Process daemon;
+    @Nullable private LoadService service;
+    private final List<DbusClient> clients = new ArrayList<>();
+    private LoadTarget[] targets;
+
+    private LoadGenerator(LoadOptions options) {
+        this.options = options;
+        char[] payload = new char[options.payload];
+        Arrays.fill(payload, 'x');
+        this.payload = new String(payload);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.leakDetection != null) {
+            ResourceLeakDetector.setLevel(
+                    ResourceLeakDetector.Level.valueOf(options.leakDetection.toUpperCase(Locale.ROOT)));
+        }
+
+        boolean clean;
+        try (LoadGenerator generator = new LoadGenerator(options)) {
+            clean = generator.run();
+        }
+        // the event loops of client connections are not daemon threads
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * @return {@code false} if requests were still pending after the run.
+     */
+    private boolean run() throws Exception {
+        DbusAddress address = startBus();
+        service = LoadService.start(new DbusConnector().connect(address));
+        targets = new LoadTarget[options.clients];
+        for (int i = 0; i < options.clients; i++) {
+            DbusClient client = new DbusClient();
+            clients.add(client);
+            client.setMetrics(metrics);
+            client.setDefaultTimeout(options.timeoutSeconds, TimeUnit.SECONDS);
+            client.connect(BUS, address);
+            targets[i] = client.implement(LoadTarget.class);
+        }
+        System.out.printf("Load on %s: %d clients, %.0f calls/s, %.0f property reads/s, %.0f signals/s, " +
+                          "payload %d, %d workers%n",
+                          address, options.clients, options.callRate, options.propertyRate, options.signalRate,
+                          options.payload, options.concurrency);
+
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(
+                options.concurrency, options.concurrency, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(options.concurrency * 64), daemonThreads("load-worker"));
+        List<Thread> pacers = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            double rate = operation.rate(options);
+            if (rate > 0) {
+                Thread pacer = daemonThreads("load-" + operation.label)
+                        .newThread(() -> pace(workers, operation, rate));
+                pacers.add(pacer);
+                pacer.start();
+            }
+        }
+
+        Reporter reporter = new Reporter();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long nextReport = start;
+        while (true) {
+            nextReport = Math.min(nextReport + TimeUnit.SECONDS.toNanos(options.intervalSeconds), end);
+            long now;
+            while ((now = System.nanoTime()) < nextReport) {
+                TimeUnit.NANOSECONDS.sleep(nextReport - now);
+            }
+            reporter.report(now - start);
+            if (now >= end) { break; }
+        }
+
+        running = false;
+        for (Thread pacer : pacers) {
+            pacer.join();
+        }
+        workers.shutdown();
+        workers.awaitTermination(options.timeoutSeconds * 2, TimeUnit.SECONDS);
+        long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeoutSeconds);
+        while (metrics.pendingCalls() > 0 && System.nanoTime() < drainEnd) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return reporter.summary(System.nanoTime() - start);
+    }
+
+    private DbusAddress startBus() throws Exception {
+        switch (options.bus) {
+        case "stand-in":
+            standInBus = new StandInBus();
+            return standInBus.getAddress();
+        case "daemon":
+            daemon = new ProcessBuilder("dbus-daemon", "--session", "--nofork", "--print-address=1",
+                                        "--address=unix:tmpdir=" + System.getProperty("java.io.tmpdir"))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            String address = new BufferedReader(new InputStreamReader(
+                    daemon.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+            if (address == null) { throw new IOException("dbus-daemon exited without printing its address"); }
+            return DbusAddress.parse(address.trim());
+        default:
+            return DbusAddress.parse(options.bus);
+        }
+    }
+
+    private void pace(Executor workers, Operation operation, double rate) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        OperationStats operationStats = stats.get(operation);
+        long next = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            long scheduled = next;
+            next += interval;
+            inFlight.incrementAndGet();
+            try {
+                workers.execute(() -> execute(operation, operationStats, scheduled));
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                operationStats.dropped.increment();
+            }
+        }
+    }
+
+    private void execute(Operation operation, OperationStats operationStats, long scheduled) {
+        LoadTarget target = targets[Math.floorMod(nextTarget.getAndIncrement(), targets.length)];
+        try {
+            operation.invoke(target, payload);
+            operationStats.latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+        } catch (Exception e) {
+            if (isTimeout(e)) {
+                operationStats.timeouts.increment();
+            } else {
+                operationStats.errors.increment();
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static boolean isTimeout(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException) { return true; }
+        }
+        return false;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        clients.forEach(client -> {
+            try {
+                client.close();
+            } catch (IOException ignored) {}
+        });
+        if (service != null) { service.close(); }
+        if (standInBus != null) { standInBus.close(); }
+        if (daemon != null) { daemon.destroy(); }
+    }
+
+    enum Operation {
+        CALL("call") {
+            @Override
+            double rate(LoadOptions options) {
+                return options.callRate;
+            }
+
+            @Override
+            void invoke(LoadTarget target, String payload) {
+                if (!payload.equals(target.echo(payload))) {
+                    throw new IllegalStateException("Echo returned a different string");
+                }
+            }
+        },
+        PROPERTY("property") {
+            @Override
+            double rate(LoadOptions options) {
+                return options.propertyRate;
+            }
+
+            @Override
+            void invoke(LoadTarget target, String payload) {
+                target.getCounter();
+            }
+        },
+        SIGNAL("signal") {
+            @Override
+            double rate(LoadOptions options) {
+                return options.signalRate;
+            }
+
+            @Override
+            void invoke(LoadTarget target, String payload) {
+                target.ping(payload);
+            }
+        };
+
+        final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        abstract double rate(LoadOptions options);
+
+        abstract void invoke(LoadTarget target, String payload);
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+    }
+
+    /**
+     * Receives the message counts and pending request gauges of all clients.
+     */
+    private static final class ClientMetrics implements DbusMetrics {
+        final LongAdder messagesSent = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder messagesReceived = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        private final List<IntSupplier> pendingCalls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void messageSent(MessageType type, int bytes) {
+            messagesSent.increment();
+            bytesSent.add(bytes);
+        }
+
+        @Override
+        public void messageReceived(@Nullable MessageType type, int bytes) {
+            messagesReceived.increment();
+            bytesReceived.add(bytes);
+        }
+
+        @Override
+        public void registerPendingCalls(IntSupplier pending) {
+            pendingCalls.add(pending);
+        }
+
+        @Override
+        public void unregisterPendingCalls(IntSupplier pending) {
+            pendingCalls.remove(pending);
+        }
+
+        int pendingCalls() {
+            int sum = 0;
+            for (IntSupplier supplier : pendingCalls) {
+                sum += supplier.getAsInt();
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Prints the figures of each interval, and totals at the end.
+     */
+    private final class Reporter {
+        private final Map<Operation, long[]> lastCounters = new EnumMap<>(Operation.class);
+        private final Map<Operation, LatencyHistogram.Snapshot> lastLatencies = new EnumMap<>(Operation.class);
+        private long lastTime = 0;
+        private long lastMessagesSent, lastBytesSent, lastMessagesReceived, lastBytesReceived;
+        private long lastSignalsReceived;
+        private long lastGcCount, lastGcMillis;
+
+        Reporter() {
+            for (Operation operation : Operation.values()) {
+                lastCounters.put(operation, new long[3]);
+                lastLatencies.put(operation, LatencyHistogram.Snapshot.EMPTY);
+            }
+            System.out.printf("%8s  %-8s %10s %8s %8s %8s %9s %9s %9s %9s%n",
+                              "time", "op", "rate/s", "errors", "timeouts", "dropped", "p50", "p99", "p99.9", "max");
+        }
+
+        void report(long elapsedNanos) {
+            double seconds = (elapsedNanos - lastTime) / 1e9;
+            lastTime = elapsedNanos;
+            String time = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos) + "s";
+            for (Operation operation : Operation.values()) {
+                OperationStats operationStats = stats.get(operation);
+                long[] counters = { operationStats.errors.sum(), operationStats.timeouts.sum(),
+                                    operationStats.dropped.sum() };
+                long[] last = lastCounters.put(operation, counters);
+                LatencyHistogram.Snapshot latencies = operationStats.latencies.snapshot();
+                LatencyHistogram.Snapshot interval = latencies.since(lastLatencies.put(operation, latencies));
+                printOperation(time, operation, interval, seconds, counters[0] - last[0], counters[1] - last[1],
+                               counters[2] - last[2]);
+            }
+
+            long messagesSent = metrics.messagesSent.sum();
+            long bytesSent = metrics.bytesSent.sum();
+            long messagesReceived = metrics.messagesReceived.sum();
+            long bytesReceived = metrics.bytesReceived.sum();
+            long signalsReceived = service.getSignalsReceived();
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(bean.getCollectionCount(), 0);
+                gcMillis += Math.max(bean.getCollectionTime(), 0);
+            }
+            System.out.printf("%8s  system   pending %d, in flight %d, out %.0f msg/s %s/s, in %.0f msg/s %s/s, " +
+                              "service got %.0f signals/s, gc %d in %d ms, heap %s, %s%n",
+                              time, metrics.pendingCalls(), inFlight.get(),
+                              (messagesSent - lastMessagesSent) / seconds,
+                              bytes((long) ((bytesSent - lastBytesSent) / seconds)),
+                              (messagesReceived - lastMessagesReceived) / seconds,
+                              bytes((long) ((bytesReceived - lastBytesReceived) / seconds)),
+                              (signalsReceived - lastSignalsReceived) / seconds,
+                              gcCount - lastGcCount, gcMillis - lastGcMillis,
+                              bytes(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()),
+                              pooledBuffers());
+            lastMessagesSent = messagesSent;
+            lastBytesSent = bytesSent;
+            lastMessagesReceived = messagesReceived;
+            lastBytesReceived = bytesReceived;
+            lastSignalsReceived = signalsReceived;
+            lastGcCount = gcCount;
+            lastGcMillis = gcMillis;
+        }
+
+        boolean summary(long elapsedNanos) {
+            System.out.println();
+            System.out.println("Totals:");
+            for (Operation operation : Operation.values()) {
+                OperationStats operationStats = stats.get(operation);
+                printOperation("all", operation, operationStats.latencies.snapshot(), elapsedNanos / 1e9,
+                               operationStats.errors.sum(), operationStats.timeouts.sum(),
+                               operationStats.dropped.sum());
+            }
+            int pending = metrics.pendingCalls();
+            System.out.printf("Service received %d signals. After draining: %d requests pending, %s%n",
+                              service.getSignalsReceived(), pending, pooledBuffers());
+            if (pending > 0) {
+                System.out.println("Requests are still pending after the reply timeout, they may have leaked");
+            }
+            return pending == 0;
+        }
+
+        private void printOperation(String time, Operation operation, LatencyHistogram.Snapshot latencies,
+                                    double seconds, long errors, long timeouts, long dropped) {
+            System.out.printf("%8s  %-8s %10.1f %8d %8d %8d %9s %9s %9s %9s%n",
+                              time, operation.label, latencies.count() / seconds, errors, timeouts, dropped,
+                              micros(latencies.percentile(50)), micros(latencies.percentile(99)),
+                              micros(latencies.percentile(99.9)), micros(latencies.max()));
+        }
+
+        private String pooledBuffers() {
+            long allocations = 0;
+            long bytes = 0;
+            List<PoolArenaMetric> arenas = new ArrayList<>(PooledByteBufAllocator.DEFAULT.heapArenas());
+            arenas.addAll(PooledByteBufAllocator.DEFAULT.directArenas());
+            for (PoolArenaMetric arena : arenas) {
+                allocations += arena.numActiveAllocations();
+                bytes += arena.numActiveBytes();
+            }
+            return "pooled buffers " + allocations + " in " + bytes(bytes);
+        }
+    }
+
+    private static String micros(long micros) {
+        return micros < 10_000 ? micros + "us" : String.format("%.1fms", micros / 1000.0);
+    }
+
+    private static String bytes(long bytes) {
+        return bytes < 1 << 20 ? String.format("%.1fKiB", bytes / 1024.0) : String.format("%.1fMiB", bytes / 1048576.0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Command line options of the {@link LoadGenerator}, given as {@code --name=value}.
+ *
+ * @author yawkat
+ */
+final class LoadOptions {
+    static final String USAGE = String.join(
+            "\n",
+            "Options (--name=value):",
+            "  bus           stand-in (default), daemon to start a private dbus-daemon, or a dbus address",
+            "  clients       number of client connections (4)",
+            "  calls         method calls per second over all clients (1000)",
+            "  properties    property reads per second (500)",
+            "  signals       signals per second (200)",
+            "  payload       length of the string argument of calls and signals (64)",
+            "  concurrency   worker threads issuing operations (32)",
+            "  duration      run time, e.g. 60s, 30m or 8h (60s)",
+            "  interval      report interval (5s)",
+            "  timeout       reply timeout (10s)",
+            "  leak-detection  netty leak detection level, e.g. paranoid for soak runs (netty default)"
+    );
+
+    String bus = "stand-in";
+    int clients = 4;
+    double callRate = 1000;
+    double propertyRate = 500;
+    double signalRate = 200;
+    int payload = 64;
+    int concurrency = 32;
+    long durationSeconds = 60;
+    long intervalSeconds = 5;
+    long timeoutSeconds = 10;
+    @Nullable String leakDetection = null;
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+            case "bus":
+                options.bus = value;
+                break;
+            case "clients":
+                options.clients = positive(Integer.parseInt(value), arg);
+                break;
+            case "calls":
+                options.callRate = Double.parseDouble(value);
+                break;
+            case "properties":
+                options.propertyRate = Double.parseDouble(value);
+                break;
+            case "signals":
+                options.signalRate = Double.parseDouble(value);
+                break;
+            case "payload":
+                options.payload = Integer.parseInt(value);
+                break;
+            case "concurrency":
+                options.concurrency = positive(Integer.parseInt(value), arg);
+                break;
+            case "duration":
+                options.durationSeconds = positive(parseSeconds(value), arg);
+                break;
+            case "interval":
+                options.intervalSeconds = positive(parseSeconds(value), arg);
+                break;
+            case "timeout":
+                options.timeoutSeconds = positive(parseSeconds(value), arg);
+                break;
+            case "leak-detection":
+                options.leakDetection = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Parse a duration with an optional {@code s}, {@code m} or {@code h} suffix. Plain numbers are seconds.
+     */
+    static long parseSeconds(String value) {
+        TimeUnit unit;
+        switch (value.charAt(value.length() - 1)) {
+        case 'h':
+            unit = TimeUnit.HOURS;
+            break;
+        case 'm':
+            unit = TimeUnit.MINUTES;
+            break;
+        case 's':
+            unit = TimeUnit.SECONDS;
+            break;
+        default:
+            return Long.parseLong(value);
+        }
+        return unit.toSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+
+    private static <N extends Number> N positive(N value, String arg) {
+        if (value.longValue() <= 0) { throw new IllegalArgumentException("Must be positive: " + arg); }
+        return value;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import at.yawk.dbus.protocol.DbusChannel;
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageBody;
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The remote end of the load: owns {@link #NAME} on the bus, answers {@link LoadTarget} calls and property reads and
+ * counts the signals it receives. It works on a raw {@link DbusChannel} since the client module can only call
+ * objects, not export them.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+final class LoadService implements MessageConsumer, Closeable {
+    static final String NAME = "at.yawk.dbus.benchmark.Load";
+    static final String PATH = "/at/yawk/dbus/benchmark/Load";
+
+    private static final String PROPERTIES_INTERFACE = "org.freedesktop.DBus.Properties";
+
+    private final DbusChannel channel;
+    private final Map<Integer, CompletableFuture<DbusMessage>> pendingReplies = new ConcurrentHashMap<>();
+    private final AtomicInteger counter = new AtomicInteger();
+    private final LongAdder signalsReceived = new LongAdder();
+
+    private LoadService(DbusChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Start serving on the given freshly connected channel. Returns once the bus name is owned.
+     */
+    static LoadService start(DbusChannel channel) throws Exception {
+        LoadService service = new LoadService(channel);
+        channel.setMessageConsumer(service);
+        service.callBus("AddMatch", BasicObject.createString("type='signal',interface='" + NAME + "'"));
+        DbusMessage reply = service.callBus("RequestName", BasicObject.createString(NAME),
+                                            BasicObject.createUint32(4)); // DBUS_NAME_FLAG_DO_NOT_QUEUE
+        int result = reply.getBody().getArguments().get(0).intValue();
+        if (result != 1) {
+            channel.close();
+            throw new IllegalStateException("Could not acquire " + NAME + " (result " + result + ")");
+        }
+        return service;
+    }
+
+    long getSignalsReceived() {
+        return signalsReceived.sum();
+    }
+
+    private DbusMessage callBus(String member, DbusObject... arguments) throws Exception {
+        DbusMessage call = MessageFactory.methodCall(
+                "/org/freedesktop/DBus", "org.freedesktop.DBus", "org.freedesktop.DBus", member, arguments);
+        int serial = channel.createSerial();
+        call.getHeader().setSerial(serial);
+        CompletableFuture<DbusMessage> future = new CompletableFuture<>();
+        pendingReplies.put(serial, future);
+        channel.write(call);
+        DbusMessage reply = future.get(10, TimeUnit.SECONDS);
+        if (reply.getHeader().getMessageType() == MessageType.ERROR) {
+            throw new IllegalStateException(member + " failed: " + reply.getHeader().getHeaderFields()
+                    .get(HeaderField.ERROR_NAME).stringValue());
+        }
+        return reply;
+    }
+
+    @Override
+    public boolean requireAccept(MessageHeader header) {
+        return true;
+    }
+
+    @Override
+    public void accept(DbusMessage message) {
+        MessageHeader header = message.getHeader();
+        Map<HeaderField, DbusObject> fields = header.getHeaderFields();
+        switch (header.getMessageType()) {
+        case METHOD_CALL:
+            handleCall(message);
+            break;
+        case SIGNAL:
+            if (NAME.equals(stringField(fields, HeaderField.INTERFACE))) {
+                signalsReceived.increment();
+            }
+            break;
+        default:
+            DbusObject replySerial = fields.get(HeaderField.REPLY_SERIAL);
+            if (replySerial != null) {
+                CompletableFuture<DbusMessage> future = pendingReplies.remove(replySerial.intValue());
+                if (future != null) { future.complete(message); }
+            }
+            break;
+        }
+    }
+
+    private void handleCall(DbusMessage call) {
+        Map<HeaderField, DbusObject> fields = call.getHeader().getHeaderFields();
+        String interfaceName = stringField(fields, HeaderField.INTERFACE);
+        String member = stringField(fields, HeaderField.MEMBER);
+        List<DbusObject> arguments = call.getBody() == null ?
+                Collections.emptyList() : call.getBody().getArguments();
+
+        DbusMessage reply;
+        if (NAME.equals(interfaceName) && "Echo".equals(member)) {
+            reply = reply(call, null, arguments);
+        } else if (PROPERTIES_INTERFACE.equals(interfaceName) && "Get".equals(member) && arguments.size() == 2 &&
+                   arguments.get(1).stringValue().equals("Counter")) {
+            reply = reply(call, null, Collections.singletonList(
+                    VariantObject.create(BasicObject.createInt32(counter.incrementAndGet()))));
+        } else {
+            reply = reply(call, "org.freedesktop.DBus.Error.UnknownMethod", Collections.singletonList(
+                    BasicObject.createString("Unknown method " + interfaceName + "." + member)));
+        }
+        if (!call.getHeader().isNoReplyExpected()) {
+            channel.write(reply);
+        }
+    }
+
+    private static DbusMessage reply(DbusMessage call, @Nullable String errorName, List<DbusObject> arguments) {
+        MessageHeader header = new MessageHeader();
+        header.setMessageType(errorName == null ? MessageType.METHOD_RETURN : MessageType.ERROR);
+        header.addHeader(HeaderField.REPLY_SERIAL, BasicObject.createUint32(call.getHeader().getSerial()));
+        DbusObject sender = call.getHeader().getHeaderFields().get(HeaderField.SENDER);
+        if (sender != null) {
+            header.addHeader(HeaderField.DESTINATION, sender);
+        }
+        if (errorName != null) {
+            header.addHeader(HeaderField.ERROR_NAME, BasicObject.createString(errorName));
+        }
+        DbusMessage reply = new DbusMessage();
+        reply.setHeader(header);
+        if (!arguments.isEmpty()) {
+            MessageBody body = new MessageBody();
+            body.setArguments(arguments);
+            reply.setBody(body);
+        }
+        return reply;
+    }
+
+    @Nullable
+    private static String stringField(Map<HeaderField, DbusObject> fields, HeaderField field) {
+        DbusObject value = fields.get(field);
+        return value == null ? null : value.stringValue();
+    }
+
+    @Override
+    public void close() {
+        channel.close();
+    }
+}
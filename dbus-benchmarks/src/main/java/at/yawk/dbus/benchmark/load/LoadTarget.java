@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import at.yawk.dbus.client.annotation.*;
+
+/**
+ * Client view of the {@link LoadService}.
+ *
+ * @author yawkat
+ */
+@Bus(LoadGenerator.BUS)
+@Destination(LoadService.NAME)
+@ObjectPath(LoadService.PATH)
+@Interface(LoadService.NAME)
+interface LoadTarget {
+    @Member("Echo")
+    @Call
+    String echo(String payload);
+
+    @Member("Counter")
+    @GetProperty
+    int getCounter();
+
+    @Member("Ping")
+    @Signal
+    void ping(String payload);
+}
@@ -0,0 +1,283 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.benchmark.load;
+
+import at.yawk.dbus.protocol.DbusAddress;
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.DbusUtil;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageBody;
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.codec.DbusMainProtocol;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ByteProcessor;
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Minimal in-process message bus on a loopback TCP port, for load runs without a {@code dbus-daemon}.
+ *
+ * It accepts any authentication, assigns unique names, implements {@code Hello}, {@code RequestName}, {@code
+ * ReleaseName}, {@code GetNameOwner}, {@code AddMatch} and {@code RemoveMatch}, and routes messages by destination.
+ * Match rules are not evaluated: broadcast signals go to every connection that has added at least one rule. Unlike
+ * {@code dbus-daemon} it fully decodes and re-encodes every message it routes.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+final class StandInBus implements Closeable {
+    private static final String BUS_NAME = "org.freedesktop.DBus";
+
+    private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+    private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private final Channel serverChannel;
+    private final UUID guid = UUID.randomUUID();
+    private final AtomicInteger nextConnectionId = new AtomicInteger(1);
+    private final AtomicInteger serials = new AtomicInteger();
+
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Connection> nameOwners = new ConcurrentHashMap<>();
+
+    StandInBus() throws InterruptedException {
+        serverChannel = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast("handshake", new Handshake());
+                    }
+                })
+                .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+    }
+
+    DbusAddress getAddress() {
+        return DbusAddress.fromTcpAddress((InetSocketAddress) serverChannel.localAddress());
+    }
+
+    private void route(Connection from, DbusMessage message) {
+        MessageHeader header = message.getHeader();
+        header.addHeader(HeaderField.SENDER, BasicObject.createString(from.uniqueName));
+        DbusObject destination = header.getHeaderFields().get(HeaderField.DESTINATION);
+
+        if (destination == null) {
+            if (header.getMessageType() == MessageType.SIGNAL) {
+                for (Connection connection : connections.values()) {
+                    if (connection.matchRules.get() > 0) {
+                        connection.channel.writeAndFlush(copyOf(message), connection.channel.voidPromise());
+                    }
+                }
+            } else if (header.getMessageType() == MessageType.METHOD_CALL) {
+                // calls without destination are meant for the peer, which is us
+                handleBusCall(from, message);
+            }
+        } else if (destination.stringValue().equals(BUS_NAME)) {
+            if (header.getMessageType() == MessageType.METHOD_CALL) {
+                handleBusCall(from, message);
+            }
+        } else {
+            Connection target = resolve(destination.stringValue());
+            if (target != null) {
+                target.channel.writeAndFlush(message, target.channel.voidPromise());
+            } else if (header.getMessageType() == MessageType.METHOD_CALL && !header.isNoReplyExpected()) {
+                from.send(reply(message, "org.freedesktop.DBus.Error.ServiceUnknown",
+                                BasicObject.createString("No owner for " + destination.stringValue())));
+            }
+        }
+    }
+
+    @Nullable
+    private Connection resolve(String name) {
+        return name.startsWith(":") ? connections.get(name) : nameOwners.get(name);
+    }
+
+    private void handleBusCall(Connection from, DbusMessage call) {
+        DbusObject memberObject = call.getHeader().getHeaderFields().get(HeaderField.MEMBER);
+        String member = memberObject == null ? "" : memberObject.stringValue();
+        List<DbusObject> arguments = call.getBody() == null ?
+                Collections.emptyList() : call.getBody().getArguments();
+        DbusMessage reply;
+        switch (member) {
+        case "Hello":
+            reply = reply(call, null, BasicObject.createString(from.uniqueName));
+            break;
+        case "AddMatch":
+            from.matchRules.incrementAndGet();
+            reply = reply(call, null);
+            break;
+        case "RemoveMatch":
+            from.matchRules.decrementAndGet();
+            reply = reply(call, null);
+            break;
+        case "RequestName": {
+            Connection owner = nameOwners.putIfAbsent(arguments.get(0).stringValue(), from);
+            // DBUS_REQUEST_NAME_REPLY_PRIMARY_OWNER, _EXISTS or _ALREADY_OWNER
+            int result = owner == null ? 1 : owner == from ? 4 : 3;
+            reply = reply(call, null, BasicObject.createUint32(result));
+            break;
+        }
+        case "ReleaseName": {
+            // DBUS_RELEASE_NAME_REPLY_RELEASED or _NOT_OWNER
+            int result = nameOwners.remove(arguments.get(0).stringValue(), from) ? 1 : 3;
+            reply = reply(call, null, BasicObject.createUint32(result));
+            break;
+        }
+        case "GetNameOwner": {
+            Connection owner = resolve(arguments.get(0).stringValue());
+            reply = owner == null ?
+                    reply(call, "org.freedesktop.DBus.Error.NameHasNoOwner",
+                          BasicObject.createString("No owner for " + arguments.get(0).stringValue())) :
+                    reply(call, null, BasicObject.createString(owner.uniqueName));
+            break;
+        }
+        default:
+            reply = reply(call, "org.freedesktop.DBus.Error.UnknownMethod",
+                          BasicObject.createString("Unknown bus method " + member));
+            break;
+        }
+        if (!call.getHeader().isNoReplyExpected()) {
+            from.send(reply);
+        }
+    }
+
+    private DbusMessage reply(DbusMessage call, @Nullable String errorName, DbusObject... arguments) {
+        MessageHeader header = new MessageHeader();
+        header.setMessageType(errorName == null ? MessageType.METHOD_RETURN : MessageType.ERROR);
+        header.setSerial(serials.incrementAndGet());
+        header.addHeader(HeaderField.SENDER, BasicObject.createString(BUS_NAME));
+        header.addHeader(HeaderField.REPLY_SERIAL, BasicObject.createUint32(call.getHeader().getSerial()));
+        header.addHeader(HeaderField.DESTINATION, call.getHeader().getHeaderFields().get(HeaderField.SENDER));
+        if (errorName != null) {
+            header.addHeader(HeaderField.ERROR_NAME, BasicObject.createString(errorName));
+        }
+        DbusMessage reply = new DbusMessage();
+        reply.setHeader(header);
+        if (arguments.length > 0) {
+            MessageBody body = new MessageBody();
+            body.setArguments(Arrays.asList(arguments));
+            reply.setBody(body);
+        }
+        return reply;
+    }
+
+    /**
+     * Copy the header of a message that is written to several channels, since encoding updates the header.
+     */
+    private static DbusMessage copyOf(DbusMessage message) {
+        MessageHeader original = message.getHeader();
+        MessageHeader header = new MessageHeader();
+        header.setMessageType(original.getMessageType());
+        header.setNoReplyExpected(original.isNoReplyExpected());
+        header.setNoAutoStart(original.isNoAutoStart());
+        header.setAllowInteractiveAuthorization(original.isAllowInteractiveAuthorization());
+        header.setSerial(original.getSerial());
+        header.setHeaderFields(new EnumMap<>(original.getHeaderFields()));
+        DbusMessage copy = new DbusMessage();
+        copy.setHeader(header);
+        copy.setBody(message.getBody());
+        return copy;
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().syncUninterruptibly();
+        workerGroup.shutdownGracefully();
+        bossGroup.shutdownGracefully();
+    }
+
+    private final class Connection implements MessageConsumer {
+        private final Channel channel;
+        private final String uniqueName = ":1." + nextConnectionId.getAndIncrement();
+        private final AtomicInteger matchRules = new AtomicInteger();
+
+        Connection(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean requireAccept(MessageHeader header) {
+            return true;
+        }
+
+        @Override
+        public void accept(DbusMessage message) {
+            route(this, message);
+        }
+
+        void send(DbusMessage message) {
+            channel.writeAndFlush(message, channel.voidPromise());
+        }
+    }
+
+    /**
+     * Server side of the authentication: accepts the first {@code AUTH} and switches to the message protocol on {@code
+     * BEGIN}.
+     */
+    private final class Handshake extends ByteToMessageDecoder {
+        private boolean nulReceived = false;
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            if (!nulReceived) {
+                if (in.readByte() != 0) { throw new DecoderException("Missing NUL byte before authentication"); }
+                nulReceived = true;
+            }
+            int lineEnd;
+            while ((lineEnd = in.forEachByte(ByteProcessor.FIND_LF)) != -1) {
+                String line = in.toString(in.readerIndex(), lineEnd - in.readerIndex(), StandardCharsets.US_ASCII)
+                        .trim();
+                in.readerIndex(lineEnd + 1);
+                if (line.startsWith("AUTH")) {
+                    ctx.writeAndFlush(ascii("OK " + DbusUtil.printUuid(guid) + "\r\n"));
+                } else if (line.equals("BEGIN")) {
+                    Connection connection = new Connection(ctx.channel());
+                    connections.put(connection.uniqueName, connection);
+                    ctx.channel().closeFuture().addListener(f -> {
+                        connections.remove(connection.uniqueName);
+                        nameOwners.values().removeIf(owner -> owner == connection);
+                    });
+                    ctx.pipeline().addAfter(ctx.name(), "main", new DbusMainProtocol(connection));
+                    // passes the remaining input on to the message protocol
+                    ctx.pipeline().remove(this);
+                    return;
+                } else {
+                    ctx.writeAndFlush(ascii("ERROR\r\n"));
+                }
+            }
+        }
+
+        private ByteBuf ascii(String s) {
+            return Unpooled.copiedBuffer(s, StandardCharsets.US_ASCII);
+        }
+    }
+}
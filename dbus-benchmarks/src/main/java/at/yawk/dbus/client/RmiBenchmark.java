@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.annotation.*;
+import at.yawk.dbus.client.error.RemoteException;
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.databind.DataBinder;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Proxy invocation through {@link RmiFactory} against an in-memory executor that answers immediately. This is the
+ * overhead the client adds per call on top of the wire codec: argument binding, request building, response validation
+ * and result binding.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RmiBenchmark {
+    /**
+     * Whether a pass-through {@link RequestInterceptor} is installed.
+     */
+    @Param({ "false", "true" })
+    public boolean intercepted;
+    /**
+     * Whether the instance is a {@linkplain RmiClassGenerator generated class} instead of a proxy.
+     */
+    @Param({ "false", "true" })
+    public boolean generated;
+
+    private Service service;
+
+    @Setup
+    public void setUp() {
+        RmiFactory factory = new RmiFactory(new DataBinder(), new ImmediateExecutor());
+        factory.setClassGeneration(generated);
+        if (intercepted) {
+            factory.addInterceptor((request, chain) -> chain.proceed(request));
+        }
+        service = factory.createRmiInstance(Service.class);
+    }
+
+    @Benchmark
+    public int call() {
+        return service.lookup("org.freedesktop.NetworkManager", 7);
+    }
+
+    @Benchmark
+    public String getProperty() {
+        return service.getVersion();
+    }
+
+    @Benchmark
+    public void signal() {
+        service.changed("org.freedesktop.NetworkManager");
+    }
+
+    @SystemBus
+    @Destination("org.example")
+    @ObjectPath("/org/example")
+    @Interface("org.example.Service")
+    public interface Service {
+        @Member("Lookup")
+        @Call
+        int lookup(String name, int flags);
+
+        @Member("Version")
+        @GetProperty
+        String getVersion();
+
+        @Member("Changed")
+        @Signal
+        void changed(String name);
+    }
+
+    private static class ImmediateExecutor implements RequestExecutor {
+        private static final Response CALL_REPLY =
+                Response.success(Collections.singletonList(BasicObject.createInt32(5)));
+        private static final Response PROPERTY_REPLY =
+                Response.success(Collections.singletonList(VariantObject.create(BasicObject.createString("1.2.3"))));
+        private static final Response EMPTY_REPLY = Response.success(Collections.emptyList());
+
+        @Override
+        public Response execute(Request request) {
+            switch (request.getMember().stringValue()) {
+            case "Lookup":
+                return CALL_REPLY;
+            case "Get":
+                return PROPERTY_REPLY;
+            default:
+                return EMPTY_REPLY;
+            }
+        }
+
+        @Override
+        public Response execute(Request request, long timeout, TimeUnit unit) {
+            return execute(request);
+        }
+
+        @Override
+        public Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener)
+                throws RemoteException {
+            return () -> {};
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Listener registration and dispatch with a given number of rules already registered. Each rule listens on its own
+ * object path, half of them as {@code path} and half as {@code path_namespace}. Registration should not get slower as
+ * the number of registered rules grows.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerHolderBenchmark {
+    @Param({ "10", "1000", "10000" })
+    public int rules;
+
+    private ListenerHolder holder;
+    private MatchRule churnRule;
+    private DbusMessage message;
+    private Consumer<DbusMessage> listener;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        holder = new ListenerHolder();
+        listener = blackhole::consume;
+        for (int i = 0; i < rules; i++) {
+            holder.addListener(rule("/device" + i, i % 2 == 0), listener);
+        }
+        churnRule = rule("/churn", false);
+        message = MessageFactory.methodCall("/device" + (rules / 2), null, "org.example.Device", "Changed");
+        message.getHeader().setMessageType(MessageType.SIGNAL);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        holder.addListener(churnRule, listener);
+        return holder.removeListener(churnRule, listener);
+    }
+
+    @Benchmark
+    public void post() {
+        holder.post(message);
+    }
+
+    private static MatchRule rule(String path, boolean namespace) {
+        MatchRule rule = new MatchRule();
+        rule.setMessageType(MessageType.SIGNAL);
+        rule.setInterfaceName("org.example.Device");
+        if (namespace) {
+            rule.setPathNamespace(ObjectPathObject.create(path));
+        } else {
+            rule.setPath(ObjectPathObject.create(path));
+        }
+        return rule;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind;
+
+import at.yawk.dbus.databind.binder.Binder;
+import at.yawk.dbus.protocol.object.DbusObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Conversion between java objects and {@link DbusObject}s with a resolved {@link Binder}.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinderBenchmark {
+    @Param({ "primitive", "string", "list", "map", "array", "nested", "struct" })
+    public String type;
+
+    private Binder<Object> binder;
+    private Object value;
+    private DbusObject encoded;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        binder = (Binder<Object>) new DataBinder().getBinder(BoundTypes.type(type));
+        value = BoundTypes.value(type);
+        encoded = binder.encode(value);
+    }
+
+    @Benchmark
+    public DbusObject encode() {
+        return binder.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return binder.decode(encoded);
+    }
+}
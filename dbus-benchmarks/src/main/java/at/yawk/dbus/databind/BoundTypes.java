@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind;
+
+import at.yawk.dbus.databind.annotation.Primitive;
+import at.yawk.dbus.databind.annotation.Struct;
+import at.yawk.dbus.databind.annotation.StructMember;
+import at.yawk.dbus.protocol.type.BasicType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Java types and sample values shared by the databind benchmarks. The generic types are taken from the fields of this
+ * class, which are named after the benchmark parameter.
+ *
+ * @author yawkat
+ */
+@SuppressWarnings("unused")
+final class BoundTypes {
+    private static int primitive;
+    private static String string;
+    private static List<String> list;
+    private static Map<String, Integer> map;
+    private static long[] array;
+    private static Map<String, List<Map<String, Long>>> nested;
+    private static List<Device> struct;
+
+    private BoundTypes() {}
+
+    @Struct
+    @Value
+    static class Device {
+        @StructMember(0) @Primitive(BasicType.OBJECT_PATH) String path;
+        @StructMember(1) String name;
+        @StructMember(2) @Primitive(BasicType.UINT32) int state;
+        @StructMember(3) long bytes;
+    }
+
+    static Type type(String name) throws NoSuchFieldException {
+        return BoundTypes.class.getDeclaredField(name).getGenericType();
+    }
+
+    static Object value(String name) {
+        switch (name) {
+        case "primitive":
+            return 42;
+        case "string":
+            return "org.freedesktop.NetworkManager";
+        case "list":
+            return Arrays.asList("eth0", "wlan0", "lo", "docker0", "virbr0", "tun0", "br-lan", "wwan0");
+        case "map":
+            Map<String, Integer> map = new LinkedHashMap<>();
+            for (int i = 0; i < 16; i++) {
+                map.put("key" + i, i);
+            }
+            return map;
+        case "array":
+            long[] array = new long[256];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = i * 31L;
+            }
+            return array;
+        case "nested":
+            Map<String, List<Map<String, Long>>> nested = new LinkedHashMap<>();
+            for (int i = 0; i < 4; i++) {
+                Map<String, Long> entry = new LinkedHashMap<>();
+                entry.put("rx", (long) i);
+                entry.put("tx", (long) -i);
+                nested.put("device" + i, Arrays.asList(entry, entry));
+            }
+            return nested;
+        case "struct":
+            Device[] devices = new Device[8];
+            for (int i = 0; i < devices.length; i++) {
+                devices[i] = new Device("/org/freedesktop/NetworkManager/Devices/" + i, "eth" + i, i, i * 1000L);
+            }
+            return Arrays.asList(devices);
+        default:
+            throw new IllegalArgumentException("Unknown type " + name);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind;
+
+import at.yawk.dbus.databind.binder.Binder;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Binder resolution through {@link DataBinder#getBinder(Type)}. The cold case resolves on a fresh binder (including
+ * its construction), the warm cases hit the cache, once from a single thread and once from four threads sharing the
+ * binder.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBinderBenchmark {
+    @Param({ "primitive", "string", "list", "map", "array", "nested", "struct" })
+    public String type;
+
+    private Type javaType;
+    private DataBinder warm;
+
+    @Setup
+    public void setUp() throws Exception {
+        javaType = BoundTypes.type(type);
+        warm = new DataBinder();
+        warm.getBinder(javaType);
+    }
+
+    @Benchmark
+    public Binder<?> cold() {
+        return new DataBinder().getBinder(javaType);
+    }
+
+    @Benchmark
+    public Binder<?> warm() {
+        return warm.getBinder(javaType);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Binder<?> warmContended() {
+        return warm.getBinder(javaType);
+    }
+}
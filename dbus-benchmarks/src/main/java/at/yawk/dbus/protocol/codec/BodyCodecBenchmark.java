@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.codec;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.DbusMetrics;
+import at.yawk.dbus.protocol.MessageBody;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.object.ArrayObject;
+import at.yawk.dbus.protocol.object.AlignableByteBuf;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.DictObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.StructObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import at.yawk.dbus.protocol.type.StructTypeDefinition;
+import at.yawk.dbus.protocol.type.TypeParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encoding and decoding of message bodies of representative signatures.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyCodecBenchmark {
+    /**
+     * {@code s}: a single name. {@code a{sv}}: a property map. {@code ay}: 1 MiB of bytes. {@code a(ssssssouso)}: 200
+     * units as returned by systemd's {@code ListUnits}.
+     */
+    @Param({ "s", "a{sv}", "ay", "a(ssssssouso)" })
+    public String signature;
+
+    private final BodyEncoder encoder = new BodyEncoder(DbusMetrics.NONE);
+    private final BodyDecoder decoder = new BodyDecoder(DbusMetrics.NONE);
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+    private DbusMessage message;
+    private ByteBuf encodedBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = channel.pipeline().firstContext();
+
+        message = MessageFactory.methodCall("/", "org.example", "org.example.Test", "Test", payload(signature));
+        message.getHeader().setSerial(1);
+        List<Object> out = new ArrayList<>(2);
+        encoder.encode(ctx, message, out);
+        encodedBody = (ByteBuf) out.get(1);
+        // the decoder reads the signature of the body from the current header
+        channel.attr(Local.CURRENT_HEADER).set(message.getHeader());
+    }
+
+    @TearDown
+    public void tearDown() {
+        encodedBody.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        List<Object> out = new ArrayList<>(2);
+        encoder.encode(ctx, message, out);
+        ByteBuf body = (ByteBuf) out.get(1);
+        int length = body.readableBytes();
+        body.release();
+        return length;
+    }
+
+    @Benchmark
+    public MessageBody decode() throws Exception {
+        List<Object> out = new ArrayList<>(1);
+        decoder.decode(ctx, AlignableByteBuf.decoding(encodedBody.duplicate()), out);
+        return (MessageBody) out.get(0);
+    }
+
+    static DbusObject payload(String signature) throws Exception {
+        switch (signature) {
+        case "s":
+            return BasicObject.createString("org.freedesktop.NetworkManager.Connection.Active");
+        case "a{sv}":
+            Map<DbusObject, DbusObject> properties = new LinkedHashMap<>();
+            properties.put(BasicObject.createString("Id"), variant(BasicObject.createString("Wired connection 1")));
+            properties.put(BasicObject.createString("Uuid"),
+                           variant(BasicObject.createString("b1a5c3e2-6d0a-4c1f-9a43-bc8e0f2d1e77")));
+            properties.put(BasicObject.createString("Type"), variant(BasicObject.createString("802-3-ethernet")));
+            properties.put(BasicObject.createString("State"), variant(BasicObject.createUint32(2)));
+            properties.put(BasicObject.createString("Default"), variant(BasicObject.createBoolean(true)));
+            properties.put(BasicObject.createString("Default6"), variant(BasicObject.createBoolean(false)));
+            properties.put(BasicObject.createString("Timestamp"), variant(BasicObject.createUint64(1_600_000_000L)));
+            properties.put(BasicObject.createString("Ip4Config"),
+                           variant(ObjectPathObject.create("/org/freedesktop/NetworkManager/IP4Config/3")));
+            properties.put(BasicObject.createString("Devices"), variant(ArrayObject.create(
+                    new ArrayTypeDefinition(BasicType.OBJECT_PATH),
+                    Collections.singletonList(ObjectPathObject.create("/org/freedesktop/NetworkManager/Devices/2"))
+            )));
+            properties.put(BasicObject.createString("Metric"), variant(BasicObject.createInt32(100)));
+            return DictObject.create(new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT), properties);
+        case "ay":
+            byte[] bytes = new byte[1 << 20];
+            new Random(0).nextBytes(bytes);
+            List<DbusObject> byteObjects = new ArrayList<>(bytes.length);
+            for (byte b : bytes) {
+                byteObjects.add(BasicObject.createByte(b));
+            }
+            return ArrayObject.create(new ArrayTypeDefinition(BasicType.BYTE), byteObjects);
+        case "a(ssssssouso)":
+            ArrayTypeDefinition type = (ArrayTypeDefinition) TypeParser.parseTypeDefinition(signature);
+            StructTypeDefinition unitType = (StructTypeDefinition) type.getMemberType();
+            List<DbusObject> units = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                units.add(StructObject.create(unitType, Arrays.asList(
+                        BasicObject.createString("unit-" + i + ".service"),
+                        BasicObject.createString("Example service " + i),
+                        BasicObject.createString("loaded"),
+                        BasicObject.createString("active"),
+                        BasicObject.createString("running"),
+                        BasicObject.createString(""),
+                        ObjectPathObject.create("/org/freedesktop/systemd1/unit/unit_2d" + i + "_2eservice"),
+                        BasicObject.createUint32(0),
+                        BasicObject.createString(""),
+                        ObjectPathObject.create("/")
+                )));
+            }
+            return ArrayObject.create(type, units);
+        default:
+            throw new IllegalArgumentException("Unknown signature " + signature);
+        }
+    }
+
+    private static DbusObject variant(DbusObject value) {
+        return VariantObject.create(value);
+    }
+}
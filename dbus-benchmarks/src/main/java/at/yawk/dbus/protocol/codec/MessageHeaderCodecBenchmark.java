@@ -0,0 +1,91 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.codec;
+
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.HeaderFieldTemplate;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.SignatureObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encoding and decoding of a typical method call header.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHeaderCodecBenchmark {
+    /**
+     * Whether the header fields come from a pre-encoded {@link HeaderFieldTemplate}, as for RMI calls.
+     */
+    @Param({ "false", "true" })
+    public boolean template;
+
+    private MessageHeaderCodec codec;
+    private MessageHeader header;
+    private ByteBuf encoded;
+    private ByteBuf out;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<HeaderField, DbusObject> fields = new EnumMap<>(HeaderField.class);
+        fields.put(HeaderField.PATH, ObjectPathObject.create("/org/freedesktop/UPower/devices/DisplayDevice"));
+        fields.put(HeaderField.INTERFACE, BasicObject.createString("org.freedesktop.DBus.Properties"));
+        fields.put(HeaderField.MEMBER, BasicObject.createString("Get"));
+        fields.put(HeaderField.DESTINATION, BasicObject.createString("org.freedesktop.UPower"));
+        fields.put(HeaderField.SIGNATURE, SignatureObject.create(Arrays.asList(BasicType.STRING, BasicType.STRING)));
+
+        header = new MessageHeader();
+        header.setMessageType(MessageType.METHOD_CALL);
+        header.setSerial(42);
+        // no body, so the decoder does not wait for one between iterations
+        header.setMessageBodyLength(0);
+        if (template) {
+            HeaderFieldTemplate.create(fields).applyTo(header);
+        } else {
+            fields.forEach(header::addHeader);
+        }
+
+        codec = new MessageHeaderCodec();
+        encoded = Unpooled.buffer();
+        codec.encode(null, header, encoded);
+        out = Unpooled.buffer(encoded.readableBytes());
+    }
+
+    @Benchmark
+    public ByteBuf encode() throws Exception {
+        out.clear();
+        codec.encode(null, header, out);
+        return out;
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        encoded.readerIndex(0);
+        List<Object> decoded = new ArrayList<>(1);
+        codec.decode(null, encoded, decoded);
+        return decoded.get(0);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.object;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Aligned reads and writes of mixed-width fields, as in struct-heavy bodies where almost every field needs padding.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlignableByteBufBenchmark {
+    private static final int FIELDS = 1024;
+
+    private ByteBuf buffer;
+
+    @Setup
+    public void setUp() {
+        buffer = Unpooled.buffer(FIELDS * 24);
+        write();
+    }
+
+    /**
+     * Write {@link #FIELDS} {@code (yiyx)}-like groups, each of which pads before the int and the long.
+     */
+    @Benchmark
+    public ByteBuf write() {
+        buffer.clear();
+        AlignableByteBuf aligned = AlignableByteBuf.encoding(buffer);
+        for (int i = 0; i < FIELDS; i++) {
+            aligned.alignWrite(8);
+            aligned.writeByte(i);
+            aligned.alignWrite(4);
+            aligned.writeInt(i);
+            aligned.writeByte(i);
+            aligned.alignWrite(8);
+            aligned.writeLong(i);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public long read() {
+        buffer.readerIndex(0);
+        AlignableByteBuf aligned = AlignableByteBuf.decoding(buffer);
+        long sum = 0;
+        for (int i = 0; i < FIELDS; i++) {
+            aligned.alignRead(8);
+            sum += aligned.readByte();
+            aligned.alignRead(4);
+            sum += aligned.readInt();
+            sum += aligned.readByte();
+            aligned.alignRead(8);
+            sum += aligned.readLong();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.type;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parsing of type signatures, as done for every received message body.
+ *
+ * @author yawkat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeParserBenchmark {
+    @Param({ "s", "a{sv}", "a(ssssssouso)", "a{oa{sa{sv}}}" })
+    public String signature;
+
+    @Benchmark
+    public TypeDefinition parse() throws Exception {
+        return TypeParser.parseTypeDefinition(signature);
+    }
+}
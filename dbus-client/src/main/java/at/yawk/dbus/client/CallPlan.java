@@ -0,0 +1,269 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.error.ResponseValidator;
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.databind.binder.Binder;
+import at.yawk.dbus.databind.binder.TypeNotAvailableException;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.HeaderFieldTemplate;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.SignatureObject;
+import at.yawk.dbus.protocol.object.StringObject;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Compiled, immutable form of a {@link CallSiteBuilder} for a single interface method.
+ *
+ * Everything that does not depend on the method arguments (header objects, argument encoders, validators, the match
+ * rule of listeners) is computed once when compiling, so an invocation only allocates the encoded arguments and the
+ * request that carries them. The constant header fields are additionally pre-encoded in a {@link
+ * HeaderFieldTemplate}.
+ *
+ * @author yawkat
+ */
+@Immutable
+@ToString(of = { "messageType", "objectPath", "interfaceName", "member", "destination" })
+@Slf4j
+class CallPlan {
+    private static final DbusObject[] NO_ARGUMENTS = new DbusObject[0];
+
+    private final String bus;
+    private final MessageType messageType;
+    @Nullable private final ObjectPathObject objectPath;
+    private final StringObject interfaceName;
+    private final StringObject member;
+    @Nullable private final StringObject destination;
+
+    /**
+     * Arguments that precede the encoded method arguments, e.g. interface and member of a property get.
+     */
+    private final DbusObject[] fixedArguments;
+    private final Binder<Object>[] argumentEncoders;
+    private final ResponseValidator[] responseValidators;
+    private final RequestInterceptor[] interceptors;
+    @Nullable private final Binder<?> returnBinder;
+
+    private final long timeout;
+    @Nullable private final TimeUnit timeoutUnit;
+
+    @Nullable private final HeaderFieldTemplate headerFieldTemplate;
+
+    /**
+     * Cache to serve property gets from, and the name of the property.
+     */
+    @Nullable private final PropertyCache propertyCache;
+    @Nullable private final String propertyName;
+
+    @Nullable private final CallSiteBuilder.ListenerAdapter listenerAdapter;
+    @Nullable private final MatchRule listenerRule;
+
+    @SuppressWarnings("unchecked")
+    CallPlan(CallSiteBuilder site, @Nullable PropertyCache propertyCache) {
+        bus = site.bus;
+        messageType = site.messageType;
+        objectPath = site.objectPath == null ? null : ObjectPathObject.create(site.objectPath);
+        destination = site.destination == null ? null : StringObject.create(site.destination);
+
+        if (site.getProperty) {
+            interfaceName = StringObject.create(PropertyCache.PROPERTIES_INTERFACE);
+            member = StringObject.create("Get");
+            fixedArguments = new DbusObject[]{
+                    BasicObject.createString(site.interfaceName),
+                    BasicObject.createString(site.member)
+            };
+        } else if (site.getAllProperties) {
+            interfaceName = StringObject.create(PropertyCache.PROPERTIES_INTERFACE);
+            member = StringObject.create("GetAll");
+            fixedArguments = new DbusObject[]{ BasicObject.createString(site.interfaceName) };
+        } else {
+            interfaceName = site.interfaceName == null ? null : StringObject.create(site.interfaceName);
+            member = site.member == null ? null : StringObject.create(site.member);
+            fixedArguments = NO_ARGUMENTS;
+        }
+
+        argumentEncoders = site.argumentBinders.toArray(new Binder[site.argumentBinders.size()]);
+        responseValidators = site.responseValidators.toArray(new ResponseValidator[site.responseValidators.size()]);
+        interceptors = site.interceptors.toArray(new RequestInterceptor[site.interceptors.size()]);
+        returnBinder = site.returnBinder;
+
+        timeout = site.timeout;
+        timeoutUnit = site.timeoutUnit;
+
+        headerFieldTemplate = site.markedWithListener ? null : createHeaderFieldTemplate();
+
+        this.propertyCache = propertyCache;
+        propertyName = propertyCache == null ? null : site.member;
+
+        if (site.markedWithListener) {
+            listenerAdapter = site.listenerAdapter;
+            MatchRule rule = new MatchRule();
+            rule.setMessageType(messageType);
+            rule.setPath(objectPath);
+            if (site.interfaceName != null) rule.setInterfaceName(site.interfaceName);
+            // this breaks some listens and shouldn't really be used anyway
+            //rule.setDestination(destination);
+            if (site.member != null) rule.setMember(site.member);
+            rule.setEavesdrop(site.eavesdrop);
+            listenerRule = rule;
+        } else {
+            listenerAdapter = null;
+            listenerRule = null;
+        }
+    }
+
+    private HeaderFieldTemplate createHeaderFieldTemplate() {
+        Map<HeaderField, DbusObject> fields = new EnumMap<>(HeaderField.class);
+        if (objectPath != null) { fields.put(HeaderField.PATH, objectPath); }
+        if (interfaceName != null) { fields.put(HeaderField.INTERFACE, interfaceName); }
+        if (member != null) { fields.put(HeaderField.MEMBER, member); }
+        if (destination != null) { fields.put(HeaderField.DESTINATION, destination); }
+
+        // the signature is only known in advance if every binder has a fixed type
+        if (fixedArguments.length + argumentEncoders.length > 0) {
+            List<TypeDefinition> types = new ArrayList<>();
+            for (DbusObject fixedArgument : fixedArguments) {
+                types.add(fixedArgument.getType());
+            }
+            try {
+                for (Binder<Object> encoder : argumentEncoders) {
+                    types.add(encoder.getType());
+                }
+                fields.put(HeaderField.SIGNATURE, SignatureObject.create(types));
+            } catch (TypeNotAvailableException ignored) {}
+        }
+        return HeaderFieldTemplate.create(fields);
+    }
+
+    Object invoke(RequestExecutor executor, @Nullable Object[] args) throws Exception {
+        if (listenerRule != null) {
+            assert listenerAdapter != null && args != null;
+            log.trace("Listening with call plan {}", this);
+            executor.listen(bus, listenerRule, listenerAdapter.adapt(args[0]));
+            return null;
+        }
+
+        if (propertyCache != null) {
+            assert returnBinder != null && propertyName != null;
+            DbusObject value = propertyCache.get(propertyName, () -> execute(executor, args).getReply().get(0));
+            return returnBinder.decode(value);
+        }
+
+        Response response = execute(executor, args);
+        if (returnBinder == null) {
+            return null; // void
+        } else {
+            return returnBinder.decode(response.getReply().get(0));
+        }
+    }
+
+    private Response execute(RequestExecutor executor, @Nullable Object[] args) throws Exception {
+        log.trace("Submitting call plan {}", this);
+        Request call = new Call(encodeArguments(args));
+        Response response = interceptors.length == 0 ? send(executor, call) : intercept(executor, call, 0);
+        for (ResponseValidator validator : responseValidators) {
+            validator.validate(response);
+        }
+        return response;
+    }
+
+    private Response intercept(RequestExecutor executor, Request request, int index) throws Exception {
+        if (index == interceptors.length) {
+            return send(executor, request);
+        }
+        return interceptors[index].intercept(request, next -> intercept(executor, next, index + 1));
+    }
+
+    private Response send(RequestExecutor executor, Request request) throws Exception {
+        return timeout > 0 ? executor.execute(request, timeout, timeoutUnit) : executor.execute(request);
+    }
+
+    private List<DbusObject> encodeArguments(@Nullable Object[] args) {
+        DbusObject[] arguments = new DbusObject[fixedArguments.length + argumentEncoders.length];
+        System.arraycopy(fixedArguments, 0, arguments, 0, fixedArguments.length);
+        for (int i = 0; i < argumentEncoders.length; i++) {
+            assert args != null;
+            arguments[fixedArguments.length + i] = argumentEncoders[i].encode(args[i]);
+        }
+        return Arrays.asList(arguments);
+    }
+
+    /**
+     * A single invocation of this plan.
+     */
+    private final class Call implements Request {
+        private final List<DbusObject> arguments;
+
+        Call(List<DbusObject> arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        public String getBus() {
+            return bus;
+        }
+
+        @Override
+        public MessageType getType() {
+            return messageType;
+        }
+
+        @Override
+        public ObjectPathObject getObjectPath() {
+            return objectPath;
+        }
+
+        @Override
+        public StringObject getInterfaceName() {
+            return interfaceName;
+        }
+
+        @Override
+        public StringObject getMember() {
+            return member;
+        }
+
+        @Nullable
+        @Override
+        public StringObject getDestination() {
+            return destination;
+        }
+
+        @Override
+        public List<DbusObject> getArguments() {
+            return arguments;
+        }
+
+        @Override
+        public HeaderFieldTemplate getHeaderFieldTemplate() {
+            return headerFieldTemplate;
+        }
+
+        @Override
+        public String toString() {
+            return "Call(" + CallPlan.this + ", arguments=" + arguments + ")";
+        }
+    }
+}
@@ -10,6 +10,7 @@ import at.yawk.dbus.client.annotation.Bus;
 import at.yawk.dbus.client.annotation.Call;
 import at.yawk.dbus.client.annotation.Destination;
 import at.yawk.dbus.client.annotation.ExceptionMapping;
+import at.yawk.dbus.client.annotation.GetAllProperties;
 import at.yawk.dbus.client.annotation.GetProperty;
 import at.yawk.dbus.client.annotation.Interface;
 import at.yawk.dbus.client.annotation.Listener;
@@ -22,24 +23,23 @@ import at.yawk.dbus.client.annotation.SystemBus;
 import at.yawk.dbus.client.annotation.Timeout;
 import at.yawk.dbus.client.error.PatternResponseValidator;
 import at.yawk.dbus.client.error.ResponseValidator;
-import at.yawk.dbus.client.request.Request;
-import at.yawk.dbus.client.request.RequestExecutor;
-import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.client.introspect.InterfaceDescription;
+import at.yawk.dbus.client.introspect.MemberDescription;
+import at.yawk.dbus.client.introspect.ObjectDescription;
+import at.yawk.dbus.client.introspect.PropertyDescription;
+import at.yawk.dbus.client.request.RequestInterceptor;
 import at.yawk.dbus.databind.DataBinder;
 import at.yawk.dbus.databind.binder.Binder;
 import at.yawk.dbus.databind.binder.PrimitiveAnnotationBinderTransformer;
+import at.yawk.dbus.databind.binder.TypeNotAvailableException;
 import at.yawk.dbus.databind.binder.TypeUtil;
-import at.yawk.dbus.protocol.MatchRule;
 import at.yawk.dbus.protocol.MessageType;
-import at.yawk.dbus.protocol.object.BasicObject;
 import at.yawk.dbus.protocol.object.DbusObject;
-import at.yawk.dbus.protocol.object.ObjectPathObject;
-import at.yawk.dbus.protocol.object.StringObject;
 import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.TypeDefinition;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.AnnotatedType;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -50,12 +50,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
-import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.ToString;
-import lombok.extern.slf4j.Slf4j;
 
 /**
+ * Mutable description of a call site that is decorated from the factory, the interface and finally the method, and
+ * then compiled into an immutable {@link CallPlan}.
+ *
  * @author yawkat
  */
 @ToString(of = {
@@ -64,23 +65,44 @@ import lombok.extern.slf4j.Slf4j;
         "interfaceName",
         "member",
         "destination",
-        "arguments",
 }, doNotUseGetters = true)
-@Slf4j
-class CallSiteBuilder implements Request {
-    @Getter String bus;
+class CallSiteBuilder {
+    String bus;
     MessageType messageType;
     String objectPath;
     String interfaceName;
     String member;
     String destination;
-    List<CallSiteAction> actions = new ArrayList<>();
-    @Getter List<DbusObject> arguments = new ArrayList<>();
     List<ResponseValidator> responseValidators = new ArrayList<>();
+    /**
+     * Interceptors around the call, outermost first.
+     */
+    List<RequestInterceptor> interceptors = new ArrayList<>();
+
+    /**
+     * Encoders for the method parameters, in parameter order.
+     */
+    List<Binder<?>> argumentBinders = new ArrayList<>();
+    /**
+     * Pass interface and member as arguments to {@code org.freedesktop.DBus.Properties.Get} instead of calling them
+     * directly.
+     */
+    boolean getProperty;
+    /**
+     * Serve the property get from a {@link PropertyCache}.
+     */
+    boolean cachedProperty;
+    /**
+     * Fetch all properties of the interface with {@code org.freedesktop.DBus.Properties.GetAll}.
+     */
+    boolean getAllProperties;
 
     boolean markedWithListener;
     boolean eavesdrop;
-    Consumer<List<DbusObject>> listener;
+    /**
+     * Turns the listener argument of a listener method into a consumer of signal bodies.
+     */
+    ListenerAdapter listenerAdapter;
 
     // todo: properly support array returns
     Binder<?> returnBinder;
@@ -89,41 +111,27 @@ class CallSiteBuilder implements Request {
      */
     boolean unwrapReturnVariant;
 
-    // todo: bake these if possible
-    ObjectPathObject objectPathObject;
-    StringObject interfaceObject;
-    StringObject memberObject;
-    StringObject destinationObject;
-
     int timeout = -1;
     TimeUnit timeoutUnit;
 
-    /**
-     * @param childTransient If set to {@code true}, the returned call site will not be decorated from anything but
-     *                       {@link #decorateFromCall(Object[])}.
-     */
-    CallSiteBuilder createChild(boolean childTransient) {
+    CallSiteBuilder createChild() {
         CallSiteBuilder child = new CallSiteBuilder();
         child.bus = bus;
         child.messageType = messageType;
-
         child.objectPath = objectPath;
-        child.objectPathObject = objectPathObject;
-
         child.interfaceName = interfaceName;
-        child.interfaceObject = interfaceObject;
-
         child.destination = destination;
-        child.destinationObject = destinationObject;
-
         child.member = member;
-        child.memberObject = memberObject;
 
-        child.actions = childTransient ? actions : new ArrayList<>(actions);
-        child.responseValidators = childTransient ? responseValidators : new ArrayList<>(responseValidators);
-        child.arguments = new ArrayList<>(arguments);
+        child.responseValidators = new ArrayList<>(responseValidators);
+        child.interceptors = new ArrayList<>(interceptors);
+        child.argumentBinders = new ArrayList<>(argumentBinders);
+        child.getProperty = getProperty;
+        child.cachedProperty = cachedProperty;
+        child.getAllProperties = getAllProperties;
         child.markedWithListener = markedWithListener;
         child.eavesdrop = eavesdrop;
+        child.listenerAdapter = listenerAdapter;
         child.returnBinder = returnBinder;
         child.unwrapReturnVariant = unwrapReturnVariant;
 
@@ -132,37 +140,11 @@ class CallSiteBuilder implements Request {
         return child;
     }
 
-    @Override
-    public MessageType getType() {
-        return messageType;
-    }
-
-    @Override
-    public ObjectPathObject getObjectPath() {
-        if (objectPathObject == null && objectPath != null) {
-            objectPathObject = ObjectPathObject.create(objectPath);
-        }
-        return objectPathObject;
-    }
-
-    @Override
-    public StringObject getInterfaceName() {
-        if (interfaceObject == null) { interfaceObject = StringObject.create(interfaceName); }
-        return interfaceObject;
-    }
-
-    @Override
-    public StringObject getMember() {
-        if (memberObject == null) { memberObject = StringObject.create(member); }
-        return memberObject;
-    }
-
-    @Nullable
-    @Override
-    public StringObject getDestination() {
-        if (destination == null) { return null; }
-        if (destinationObject == null) { destinationObject = StringObject.create(destination); }
-        return destinationObject;
+    /**
+     * Bake this call site into an immutable call plan. Later changes to this builder do not affect the plan.
+     */
+    CallPlan compile(@Nullable PropertyCache propertyCache) {
+        return new CallPlan(this, propertyCache);
     }
 
     void decorateFromClass(Class<?> clazz) {
@@ -184,17 +166,17 @@ class CallSiteBuilder implements Request {
             Type listenerParameter = genericParameterTypes[listenerParameterIndex];
             Class<?> raw = TypeUtil.getRawType(listenerParameter);
             if (raw == Runnable.class) {
-                actions.add((site, args) -> {
-                    Runnable runnable = (Runnable) args[listenerParameterIndex];
-                    site.listener = o -> runnable.run();
-                });
+                listenerAdapter = arg -> {
+                    Runnable runnable = (Runnable) arg;
+                    return o -> runnable.run();
+                };
             } else if (raw == Consumer.class) {
-                actions.add((site, args) -> {
-                    Consumer consumer = (Consumer) args[listenerParameterIndex];
-                    site.listener = o -> consumer.accept(decodeReply(o));
-                });
-                returnBinder = dataBinder.getBinder(
+                Binder<?> binder = dataBinder.getBinder(
                         TypeUtil.getTypeVariable(listenerParameter, Consumer.class, "T"));
+                listenerAdapter = arg -> {
+                    Consumer consumer = (Consumer) arg;
+                    return o -> consumer.accept(binder.decode(o.get(0)));
+                };
             } else if (raw.isInterface()) {
                 // find the non-default non-static method
                 Method targetMethod = null;
@@ -218,24 +200,7 @@ class CallSiteBuilder implements Request {
                 for (AnnotatedType parameterType : targetMethod.getAnnotatedParameterTypes()) {
                     binders.add(dataBinder.getBinder(parameterType.getType(), parameterType));
                 }
-                Method finalTargetMethod = targetMethod;
-                actions.add((site, args) -> {
-                    Object listener = args[listenerParameterIndex];
-                    site.listener = l -> {
-                        // happens sometimes for some reason
-                        if (l.isEmpty() && !binders.isEmpty()) return;
-
-                        Object[] parameters = new Object[binders.size()];
-                        for (int i = 0; i < parameters.length; i++) {
-                            parameters[i] = binders.get(i).decode(l.get(i));
-                        }
-                        try {
-                            finalTargetMethod.invoke(listener, parameters);
-                        } catch (IllegalAccessException | InvocationTargetException e) {
-                            throw new RuntimeException(e);
-                        }
-                    };
-                });
+                listenerAdapter = new FunctionalListenerAdapter(targetMethod, binders);
             } else {
                 throw new IllegalArgumentException("Unsupported listener type " + raw.getName());
             }
@@ -248,12 +213,12 @@ class CallSiteBuilder implements Request {
             for (int i = 0; i < genericParameterTypes.length; i++) {
                 Type parameter = genericParameterTypes[i];
                 Annotation[] annotations = method.getParameterAnnotations()[i];
-                Binder binder = dataBinder.getBinder(parameter, Arrays.asList(annotations));
-                final int finalI = i;
-                actions.add((site, args) -> site.arguments.add(binder.encode(args[finalI])));
+                argumentBinders.add(dataBinder.getBinder(parameter, Arrays.asList(annotations)));
             }
 
-            if (method.getReturnType() != void.class) {
+            if (getAllProperties) {
+                returnBinder = new PropertiesBinder(dataBinder, method.getGenericReturnType());
+            } else if (method.getReturnType() != void.class) {
                 returnBinder = dataBinder.getBinder(method.getGenericReturnType(), method);
                 if (unwrapReturnVariant) {
                     returnBinder = PrimitiveAnnotationBinderTransformer.transformBinder(
@@ -263,6 +228,68 @@ class CallSiteBuilder implements Request {
         }
     }
 
+    /**
+     * Check this call site against the introspection data of the remote object, and bind arguments and return values
+     * of unknown D-Bus type with their declared type.
+     *
+     * @throws IllegalArgumentException if the call site does not match the introspection data.
+     */
+    void decorateFromIntrospection(ObjectDescription object) {
+        if (interfaceName == null) { return; }
+        InterfaceDescription iface = object.getInterface(interfaceName);
+        if (iface == null) {
+            throw new IllegalArgumentException("Remote object " + objectPath + " has no interface " + interfaceName);
+        }
+        if (getAllProperties) { return; }
+        if (member == null) { return; }
+
+        if (getProperty) {
+            PropertyDescription property = iface.getProperties().get(member);
+            if (property == null || !property.isReadable()) {
+                throw new IllegalArgumentException("No readable property " + member + " on " + interfaceName);
+            }
+        } else if (markedWithListener) {
+            if (!iface.getSignals().containsKey(member)) {
+                throw new IllegalArgumentException("No signal " + member + " on " + interfaceName);
+            }
+        } else if (messageType == MessageType.METHOD_CALL) {
+            MemberDescription method = iface.getMethods().get(member);
+            if (method == null) {
+                throw new IllegalArgumentException("No method " + member + " on " + interfaceName);
+            }
+            List<TypeDefinition> inTypes = method.getInTypes();
+            if (inTypes.size() != argumentBinders.size()) {
+                throw new IllegalArgumentException(
+                        "Method " + interfaceName + "." + member + " takes " + inTypes.size() + " arguments, not " +
+                        argumentBinders.size());
+            }
+            for (int i = 0; i < inTypes.size(); i++) {
+                argumentBinders.set(i, bindDeclared(argumentBinders.get(i), inTypes.get(i)));
+            }
+            if (returnBinder != null) {
+                if (method.getOutTypes().isEmpty()) {
+                    throw new IllegalArgumentException("Method " + interfaceName + "." + member + " returns nothing");
+                }
+                returnBinder = bindDeclared(returnBinder, method.getOutTypes().get(0));
+            }
+        }
+    }
+
+    private Binder<?> bindDeclared(Binder<?> binder, TypeDefinition declared) {
+        TypeDefinition type;
+        try {
+            type = binder.getType();
+        } catch (TypeNotAvailableException e) {
+            return new DeclaredTypeBinder(binder, declared);
+        }
+        if (!type.equals(declared)) {
+            throw new IllegalArgumentException(
+                    "Signature mismatch on " + interfaceName + "." + member + ": bound as " +
+                    type.serialize() + " but declared as " + declared.serialize());
+        }
+        return binder;
+    }
+
     private void decorateFromAnnotations(AnnotatedElement element) {
         ifPresent(element, Listener.class, a -> {
             markedWithListener = true;
@@ -284,13 +311,12 @@ class CallSiteBuilder implements Request {
         ifPresent(element, GetProperty.class, a -> {
             this.messageType = MessageType.METHOD_CALL;
             this.unwrapReturnVariant = true;
-
-            actions.add((site, args) -> {
-                site.arguments.add(BasicObject.createString(site.interfaceName));
-                site.arguments.add(BasicObject.createString(site.member));
-                site.interfaceName = "org.freedesktop.DBus.Properties";
-                site.member = "Get";
-            });
+            this.getProperty = true;
+            this.cachedProperty = a.cached();
+        });
+        ifPresent(element, GetAllProperties.class, a -> {
+            this.messageType = MessageType.METHOD_CALL;
+            this.getAllProperties = true;
         });
         ifPresent(element, ExceptionMapping.class, this::decorateFromExceptionMapping);
         ifPresent(element, ExceptionMapping.RepeatableExceptionMapping.class, rep -> {
@@ -318,45 +344,8 @@ class CallSiteBuilder implements Request {
         responseValidators.add(0, validator);
     }
 
-    void decorateFromCall(Object[] args) throws Exception {
-        for (CallSiteAction action : actions) {
-            action.apply(this, args);
-        }
-    }
-
-    Object submit(RequestExecutor executor) throws Exception {
-        log.trace("Submitting call site {}", this);
-        if (markedWithListener) {
-            assert listener != null;
-            MatchRule rule = new MatchRule();
-            rule.setMessageType(getType());
-            rule.setPath(getObjectPath());
-            if (interfaceName != null) rule.setInterfaceName(interfaceName);
-            // this breaks some listens and shouldn't really be used anyway
-            //rule.setDestination(destination);
-            if (member != null) rule.setMember(member);
-            rule.setEavesdrop(eavesdrop);
-            executor.listen(bus, rule, listener);
-            return null;
-        } else {
-            assert listener == null;
-            Response response = timeout > 0 ?
-                    executor.execute(this, timeout, timeoutUnit) :
-                    executor.execute(this);
-            for (ResponseValidator validator : responseValidators) {
-                validator.validate(response);
-            }
-            List<DbusObject> reply = response.getReply();
-            if (returnBinder == null) {
-                return null; // void
-            } else {
-                return decodeReply(reply);
-            }
-        }
-    }
-
-    private Object decodeReply(List<DbusObject> reply) {
-        return returnBinder.decode(reply.get(0));
+    void addInterceptor(RequestInterceptor interceptor) {
+        interceptors.add(interceptor);
     }
 
     private static <A extends Annotation> void ifPresent(AnnotatedElement element, Class<A> annotationClass,
@@ -367,7 +356,7 @@ class CallSiteBuilder implements Request {
         }
     }
 
-    private interface CallSiteAction {
-        void apply(CallSiteBuilder site, Object[] methodArgs) throws Exception;
+    interface ListenerAdapter {
+        Consumer<List<DbusObject>> adapt(Object listener);
     }
 }
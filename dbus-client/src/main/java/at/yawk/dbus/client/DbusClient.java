@@ -7,23 +7,28 @@
 package at.yawk.dbus.client;
 
 import at.yawk.dbus.client.error.RemoteException;
+import at.yawk.dbus.client.request.AsyncRequestInterceptor;
 import at.yawk.dbus.client.request.ChannelRequestExecutor;
 import at.yawk.dbus.client.request.Request;
 import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
 import at.yawk.dbus.client.request.Response;
 import at.yawk.dbus.databind.DataBinder;
 import at.yawk.dbus.protocol.DbusAddress;
 import at.yawk.dbus.protocol.DbusChannel;
 import at.yawk.dbus.protocol.DbusConnector;
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.MatchRule;
 import at.yawk.dbus.protocol.object.DbusObject;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import javax.annotation.Nullable;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Value;
@@ -34,7 +39,15 @@ import net.jcip.annotations.GuardedBy;
  */
 public class DbusClient implements Closeable {
     @Getter private final DataBinder binder = new DataBinder();
-    @Getter private final RmiFactory rootFactory = new RmiFactory(binder, new BusSelectingRequestExecutor());
+    private final InterceptingRequestExecutor interceptingExecutor =
+            new InterceptingRequestExecutor(new BusSelectingRequestExecutor());
+    /**
+     * Executor that runs each request through the {@linkplain #addInterceptor(RequestInterceptor) interceptors} of
+     * this client and sends it to the channel of its bus. Can be used to submit hand-built requests, e.g. a
+     * {@linkplain RequestExecutor#executeBatch(List) batch} of calls.
+     */
+    @Getter private final RequestExecutor executor = interceptingExecutor;
+    @Getter private final RmiFactory rootFactory = new RmiFactory(binder, executor);
 
     // lazily initialized - this is quite heavy (creates a netty Bootstrap) and not all paths use it
     @Getter(lazy = true, value = AccessLevel.PRIVATE)
@@ -44,13 +57,73 @@ public class DbusClient implements Closeable {
     private final Map<String, BusHolder> busMap = new HashMap<>();
     private final ReadWriteLock busMapLock = new ReentrantReadWriteLock();
 
+    private long defaultTimeout = ChannelRequestExecutor.DEFAULT_TIMEOUT_MILLIS;
+    private TimeUnit defaultTimeoutUnit = TimeUnit.MILLISECONDS;
+    private int maxInFlight = 0;
+    private int maxInFlightPerDestination = 0;
+    private boolean failFast = false;
+    private volatile DbusMetrics metrics = DbusMetrics.NONE;
+
+    /**
+     * Set the reply timeout for requests that do not specify their own, for all current and future channels. A timeout
+     * {@code <= 0} disables the default timeout.
+     */
+    public void setDefaultTimeout(long timeout, TimeUnit unit) {
+        busMapLock.writeLock().lock();
+        try {
+            defaultTimeout = timeout;
+            defaultTimeoutUnit = unit;
+            busMap.forEach((name, holder) -> holder.executor.setDefaultTimeout(timeout, unit));
+        } finally {
+            busMapLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Limit the number of requests in flight for all current and future channels.
+     *
+     * @see ChannelRequestExecutor#setInFlightLimit(int, int, boolean)
+     */
+    public void setInFlightLimit(int maxInFlight, int maxInFlightPerDestination, boolean failFast) {
+        busMapLock.writeLock().lock();
+        try {
+            this.maxInFlight = maxInFlight;
+            this.maxInFlightPerDestination = maxInFlightPerDestination;
+            this.failFast = failFast;
+            busMap.forEach((name, holder) -> holder.executor.setInFlightLimit(
+                    maxInFlight, maxInFlightPerDestination, failFast));
+        } finally {
+            busMapLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Report call metrics of all current and future channels, and message and codec metrics of channels connected by
+     * this client from now on, to the given receiver.
+     */
+    public void setMetrics(DbusMetrics metrics) {
+        busMapLock.writeLock().lock();
+        try {
+            this.metrics = metrics;
+            busMap.forEach((name, holder) -> holder.executor.setMetrics(metrics));
+        } finally {
+            busMapLock.writeLock().unlock();
+        }
+    }
+
     /**
      * Add a channel to this client with the given bus name. This channel will be closed with this client.
      */
     public void addChannel(String busName, DbusChannel channel) {
         busMapLock.writeLock().lock();
         try {
-            busMap.put(busName, new BusHolder(channel, new ChannelRequestExecutor(channel)));
+            ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+            executor.setDefaultTimeout(defaultTimeout, defaultTimeoutUnit);
+            executor.setInFlightLimit(maxInFlight, maxInFlightPerDestination, failFast);
+            if (metrics != DbusMetrics.NONE) {
+                executor.setMetrics(metrics);
+            }
+            busMap.put(busName, new BusHolder(channel, executor));
         } finally {
             busMapLock.writeLock().unlock();
         }
@@ -65,22 +138,55 @@ public class DbusClient implements Closeable {
         });
     }
 
+    private DbusConnector connector() {
+        DbusConnector connector = getConnector();
+        connector.setMetrics(metrics);
+        return connector;
+    }
+
     public void connect(String busName, DbusAddress address) throws Exception {
-        addChannel(busName, getConnector().connect(address));
+        addChannel(busName, connector().connect(address));
     }
 
     public void connectSystem() throws Exception {
-        addChannel("system", getConnector().connectSystem());
+        addChannel("system", connector().connectSystem());
     }
 
     public void connectSession() throws Exception {
-        addChannel("session", getConnector().connectSession());
+        addChannel("session", connector().connectSession());
+    }
+
+    /**
+     * Add an interceptor around all method calls submitted through this client from now on: calls of all proxy
+     * instances, including ones created earlier, property cache and introspection lookups, and requests submitted to
+     * the {@linkplain #getExecutor() executor}, batches included. Interceptors added earlier run further out, and
+     * all of them run outside of those added to an {@link RmiFactory}.
+     *
+     * Batches stay pipelined as long as every interceptor of this client is an {@link AsyncRequestInterceptor}, such
+     * as those created by {@link RequestInterceptor#listening}. Once any other interceptor is added, the requests of a
+     * batch are executed one after another, each waiting for the previous response.
+     *
+     * Calls the client makes to the bus itself to manage its state, such as {@code AddMatch} and the
+     * {@code GetNameOwner} lookups behind {@link #getNameOwner(String, String)}, are not intercepted.
+     */
+    public void addInterceptor(RequestInterceptor interceptor) {
+        interceptingExecutor.addInterceptor(interceptor);
     }
 
     public <I> I implement(Class<I> interfaceClass) {
         return rootFactory.createRmiInstance(interfaceClass);
     }
 
+    /**
+     * Get the unique name of the current owner of a bus name.
+     *
+     * @see ChannelRequestExecutor#getNameOwner(String)
+     */
+    @Nullable
+    public String getNameOwner(String busName, String name) throws Exception {
+        return selectBus(busName).getNameOwner(name);
+    }
+
     @Override
     public void close() throws IOException {
         busMapLock.writeLock().lock();
@@ -93,6 +199,22 @@ public class DbusClient implements Closeable {
         }
     }
 
+    private ChannelRequestExecutor selectBus(String busName) {
+        Objects.requireNonNull(busName, "bus");
+
+        BusHolder holder;
+        busMapLock.readLock().lock();
+        try {
+            holder = busMap.get(busName);
+        } finally {
+            busMapLock.readLock().unlock();
+        }
+        if (holder == null) {
+            throw new NoSuchElementException("Not connected to bus " + busName);
+        }
+        return holder.executor;
+    }
+
     @Value
     private static class BusHolder {
         private final DbusChannel channel;
@@ -110,25 +232,50 @@ public class DbusClient implements Closeable {
             return selectBus(request.getBus()).execute(request, timeout, unit);
         }
 
+        @Override
+        public List<CompletableFuture<Response>> executeBatch(List<? extends Request> requests) {
+            // one batch per bus, then put the futures back into request order
+            Map<String, List<Integer>> indicesByBus = new LinkedHashMap<>();
+            for (int i = 0; i < requests.size(); i++) {
+                indicesByBus.computeIfAbsent(requests.get(i).getBus(), b -> new ArrayList<>()).add(i);
+            }
+            List<CompletableFuture<Response>> futures = new ArrayList<>(Collections.nCopies(requests.size(), null));
+            // resolve all buses before sending anything, so that an unknown bus cannot interrupt the submission.
+            // Requests to an unknown bus fail individually.
+            Map<String, ChannelRequestExecutor> executors = new LinkedHashMap<>();
+            indicesByBus.forEach((bus, indices) -> {
+                try {
+                    executors.put(bus, selectBus(bus));
+                } catch (RuntimeException e) {
+                    for (int index : indices) {
+                        CompletableFuture<Response> future = new CompletableFuture<>();
+                        future.completeExceptionally(e);
+                        futures.set(index, future);
+                    }
+                }
+            });
+            executors.forEach((bus, executor) -> {
+                List<Integer> indices = indicesByBus.get(bus);
+                List<Request> batch = new ArrayList<>(indices.size());
+                for (int index : indices) {
+                    batch.add(requests.get(index));
+                }
+                List<CompletableFuture<Response>> batchFutures = executor.executeBatch(batch);
+                for (int i = 0; i < indices.size(); i++) {
+                    futures.set(indices.get(i), batchFutures.get(i));
+                }
+            });
+            return futures;
+        }
+
         @Override
         public Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener) throws RemoteException {
             return selectBus(bus).listen(bus, rule, listener);
         }
 
-        private ChannelRequestExecutor selectBus(String busName) {
-            Objects.requireNonNull(busName, "bus");
-
-            BusHolder holder;
-            busMapLock.readLock().lock();
-            try {
-                holder = busMap.get(busName);
-            } finally {
-                busMapLock.readLock().unlock();
-            }
-            if (holder == null) {
-                throw new NoSuchElementException("Not connected to bus " + busName);
-            }
-            return holder.executor;
+        @Override
+        public Runnable listenNameOwner(String bus, String name, Consumer<String> listener) {
+            return selectBus(bus).listenNameOwner(bus, name, listener);
         }
     }
 }
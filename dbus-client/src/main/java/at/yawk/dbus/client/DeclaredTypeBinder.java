@@ -0,0 +1,73 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.databind.binder.Binder;
+import at.yawk.dbus.databind.binder.PrimitiveAnnotationBinderTransformer;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Function;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Binder for a value whose D-Bus type depends on its runtime Java type (e.g. {@code Object}) but that was declared
+ * with a fixed type by introspection. Encoded values are converted to the declared type the same way {@link
+ * at.yawk.dbus.databind.annotation.Primitive} converts them, so an {@code Integer} passed for a {@code u} parameter is
+ * sent as {@code UINT32}.
+ *
+ * @author yawkat
+ */
+@Immutable
+class DeclaredTypeBinder implements Binder<Object> {
+    private final Binder<Object> binder;
+    private final TypeDefinition declared;
+    /**
+     * Conversions to the declared type by the type the dynamic binder encoded a value as.
+     */
+    private final Map<BasicType, Binder<DbusObject>> conversions = new EnumMap<>(BasicType.class);
+
+    @SuppressWarnings("unchecked")
+    DeclaredTypeBinder(Binder<?> binder, TypeDefinition declared) {
+        this.binder = (Binder<Object>) binder;
+        this.declared = declared;
+        if (declared instanceof BasicType && declared != BasicType.VARIANT) {
+            for (BasicType type : BasicType.values()) {
+                if (type == declared || type == BasicType.VARIANT) { continue; }
+                try {
+                    conversions.put(type, (Binder<DbusObject>) PrimitiveAnnotationBinderTransformer.transformBinder(
+                            Binder.of(type, Function.identity(), Function.identity()), (BasicType) declared));
+                } catch (UnsupportedOperationException ignored) {}
+            }
+        }
+    }
+
+    @Override
+    public TypeDefinition getType() {
+        return declared;
+    }
+
+    @Override
+    public Object decode(DbusObject object) {
+        return binder.decode(object);
+    }
+
+    @Override
+    public DbusObject encode(Object obj) {
+        DbusObject encoded = binder.encode(obj);
+        TypeDefinition type = encoded.getType();
+        if (type.equals(declared)) { return encoded; }
+        Binder<DbusObject> conversion = type instanceof BasicType ? conversions.get(type) : null;
+        if (conversion == null) {
+            throw new IllegalArgumentException(
+                    "Cannot send " + type.serialize() + " where " + declared.serialize() + " is declared");
+        }
+        return conversion.encode(encoded);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.databind.binder.Binder;
+import at.yawk.dbus.protocol.object.DbusObject;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.SneakyThrows;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Listener adapter for arbitrary functional interfaces.
+ *
+ * The single abstract method of the interface is resolved to a {@link MethodHandle} once when the listener method is
+ * decorated. Signals with up to three arguments are then delivered through {@link MethodHandle#invokeExact} without
+ * a parameter array, and exceptions thrown by the listener are propagated unchanged instead of being wrapped.
+ *
+ * @author yawkat
+ */
+@Immutable
+class FunctionalListenerAdapter implements CallSiteBuilder.ListenerAdapter {
+    private final Binder<?>[] binders;
+    /**
+     * {@code (Object listener, Object... parameters) void}, with each parameter passed as a separate argument.
+     */
+    private final MethodHandle target;
+    /**
+     * {@code (Object listener, Object[] parameters) void}, for listeners with many parameters.
+     */
+    private final MethodHandle spreadTarget;
+
+    @SneakyThrows(IllegalAccessException.class)
+    FunctionalListenerAdapter(Method method, List<Binder<?>> binders) {
+        this.binders = binders.toArray(new Binder<?>[binders.size()]);
+
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            method.setAccessible(true);
+        }
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        target = handle.asType(MethodType.genericMethodType(this.binders.length + 1).changeReturnType(void.class));
+        spreadTarget = target.asSpreader(Object[].class, this.binders.length);
+    }
+
+    @Override
+    public Consumer<List<DbusObject>> adapt(Object listener) {
+        return body -> invoke(listener, body);
+    }
+
+    @SneakyThrows
+    private void invoke(Object listener, List<DbusObject> body) {
+        // happens sometimes for some reason
+        if (body.isEmpty() && binders.length != 0) return;
+
+        switch (binders.length) {
+        case 0:
+            target.invokeExact(listener);
+            break;
+        case 1:
+            target.invokeExact(listener, decode(body, 0));
+            break;
+        case 2:
+            target.invokeExact(listener, decode(body, 0), decode(body, 1));
+            break;
+        case 3:
+            target.invokeExact(listener, decode(body, 0), decode(body, 1), decode(body, 2));
+            break;
+        default:
+            Object[] parameters = new Object[binders.length];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = decode(body, i);
+            }
+            spreadTarget.invokeExact(listener, parameters);
+            break;
+        }
+    }
+
+    private Object decode(List<DbusObject> body, int i) {
+        return binders[i].decode(body.get(i));
+    }
+}
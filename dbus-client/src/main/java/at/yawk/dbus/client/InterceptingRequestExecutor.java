@@ -0,0 +1,146 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.error.RemoteException;
+import at.yawk.dbus.client.request.AsyncRequestInterceptor;
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.object.DbusObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Executor that runs every request through a chain of interceptors before passing it to its delegate. This covers
+ * all requests submitted to it: proxy calls, property cache and introspection lookups, and hand-built requests
+ * including batches. Listener registration is passed through unchanged.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@RequiredArgsConstructor
+class InterceptingRequestExecutor implements RequestExecutor {
+    private static final RequestInterceptor[] NO_INTERCEPTORS = new RequestInterceptor[0];
+
+    private final RequestExecutor delegate;
+    @GuardedBy("this")
+    private volatile RequestInterceptor[] interceptors = NO_INTERCEPTORS;
+
+    /**
+     * Add an interceptor around all requests submitted from now on. Interceptors added earlier run further out.
+     */
+    synchronized void addInterceptor(RequestInterceptor interceptor) {
+        RequestInterceptor[] extended = Arrays.copyOf(interceptors, interceptors.length + 1);
+        extended[interceptors.length] = interceptor;
+        interceptors = extended;
+    }
+
+    @Override
+    public Response execute(Request request) throws Exception {
+        return intercept(interceptors, request, 0, -1, null);
+    }
+
+    @Override
+    public Response execute(Request request, long timeout, TimeUnit unit) throws Exception {
+        return intercept(interceptors, request, 0, timeout, unit);
+    }
+
+    /**
+     * Without interceptors, the batch is passed to the delegate as is. If all interceptors are {@link
+     * AsyncRequestInterceptor}s, each request runs through their chain, the requests that reach its end are passed to
+     * the delegate as one batch, and the interceptors see the responses through the futures of that batch. Otherwise,
+     * because plain interceptors run on the calling thread and return the response, the requests go through the chain
+     * one after another and their round trips do not overlap.
+     */
+    @Override
+    public List<CompletableFuture<Response>> executeBatch(List<? extends Request> requests) {
+        RequestInterceptor[] interceptors = this.interceptors;
+        if (interceptors.length == 0) {
+            return delegate.executeBatch(requests);
+        }
+        for (RequestInterceptor interceptor : interceptors) {
+            if (!(interceptor instanceof AsyncRequestInterceptor)) {
+                return RequestExecutor.super.executeBatch(requests);
+            }
+        }
+
+        List<Request> submitted = new ArrayList<>();
+        List<CompletableFuture<Response>> pending = new ArrayList<>();
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            CompletableFuture<Response> future;
+            try {
+                future = interceptAsync(interceptors, request, 0, submitted, pending);
+            } catch (Exception e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+        if (!submitted.isEmpty()) {
+            List<CompletableFuture<Response>> sent = delegate.executeBatch(submitted);
+            for (int i = 0; i < sent.size(); i++) {
+                CompletableFuture<Response> target = pending.get(i);
+                sent.get(i).whenComplete((response, error) -> {
+                    if (error == null) {
+                        target.complete(response);
+                    } else {
+                        target.completeExceptionally(error);
+                    }
+                });
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * @param submitted Requests that reached the end of the chain, to be sent as one batch.
+     * @param pending   The futures returned to the interceptors for the requests in {@code submitted}.
+     */
+    private CompletableFuture<Response> interceptAsync(RequestInterceptor[] interceptors, Request request, int index,
+                                                       List<Request> submitted,
+                                                       List<CompletableFuture<Response>> pending) throws Exception {
+        if (index == interceptors.length) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            submitted.add(request);
+            pending.add(future);
+            return future;
+        }
+        return ((AsyncRequestInterceptor) interceptors[index]).interceptAsync(
+                request, next -> interceptAsync(interceptors, next, index + 1, submitted, pending));
+    }
+
+    private Response intercept(RequestInterceptor[] interceptors, Request request, int index,
+                               long timeout, @Nullable TimeUnit unit) throws Exception {
+        if (index == interceptors.length) {
+            return unit == null ? delegate.execute(request) : delegate.execute(request, timeout, unit);
+        }
+        return interceptors[index].intercept(
+                request, next -> intercept(interceptors, next, index + 1, timeout, unit));
+    }
+
+    @Override
+    public Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener) throws RemoteException {
+        return delegate.listen(bus, rule, listener);
+    }
+
+    @Override
+    public Runnable listenNameOwner(String bus, String name, Consumer<String> listener) throws RemoteException {
+        return delegate.listenNameOwner(bus, name, listener);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.annotation.GetAllProperties;
+import at.yawk.dbus.client.annotation.Member;
+import at.yawk.dbus.databind.DataBinder;
+import at.yawk.dbus.databind.binder.Binder;
+import at.yawk.dbus.databind.binder.PrimitiveAnnotationBinderTransformer;
+import at.yawk.dbus.databind.binder.TypeUtil;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import lombok.SneakyThrows;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Binder from the {@code a{sv}} reply of {@code Properties.GetAll} to a typed view, see {@link GetAllProperties}.
+ *
+ * The property names and their binders are resolved once when the binder is created. Decoding looks up each returned
+ * property by name and decodes it into an interface proxy, the canonical constructor of a record, or the fields of a
+ * new object. Properties missing from the reply are {@code null} (zero for primitive record components, the field
+ * default for objects).
+ *
+ * @author yawkat
+ */
+@Immutable
+class PropertiesBinder implements Binder<Object> {
+    private static final DictTypeDefinition PROPERTIES_TYPE =
+            new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT);
+
+    private final Class<?> type;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final String[] names;
+    private final Binder<?>[] binders;
+
+    /**
+     * Getters of an interface view, or {@code null} if the view is a class.
+     */
+    @Nullable private final Map<Method, Integer> getters;
+    /**
+     * Constructor and fields of a class view, or {@code null} if the view is an interface.
+     */
+    @Nullable private final Constructor<?> constructor;
+    @Nullable private final Field[] fields;
+    /**
+     * {@code (Object[]) -> Object} canonical constructor of a record view, or {@code null} if the view is not a
+     * record.
+     */
+    @Nullable private final MethodHandle recordConstructor;
+    /**
+     * Values passed for components missing from the reply, zero for primitives. {@code null} if the view is not a
+     * record.
+     */
+    @Nullable private final Object[] recordDefaults;
+
+    @SneakyThrows(ReflectiveOperationException.class)
+    PropertiesBinder(DataBinder dataBinder, Type viewType) {
+        type = TypeUtil.getRawType(viewType);
+        List<String> names = new ArrayList<>();
+        List<Binder<?>> binders = new ArrayList<>();
+        Method[] accessors = TypeUtil.getRecordAccessors(type);
+
+        if (type.isInterface()) {
+            getters = new HashMap<>();
+            for (Method method : type.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) || method.isDefault()) { continue; }
+                if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+                    throw new IllegalArgumentException("Property view method " + method + " is not a getter");
+                }
+                getters.put(method, names.size());
+                names.add(propertyName(method, getterName(method.getName())));
+                binders.add(variantBinder(dataBinder.getBinder(method.getGenericReturnType(), method)));
+            }
+            constructor = null;
+            fields = null;
+            recordConstructor = null;
+            recordDefaults = null;
+        } else if (accessors != null) {
+            // records have no no-arg constructor and final fields, so the properties go to the canonical constructor
+            Class<?>[] componentTypes = new Class<?>[accessors.length];
+            recordDefaults = new Object[accessors.length];
+            for (int i = 0; i < accessors.length; i++) {
+                Method accessor = accessors[i];
+                names.add(propertyName(accessor, capitalize(accessor.getName())));
+                binders.add(variantBinder(dataBinder.getBinder(accessor.getGenericReturnType(), accessor)));
+                componentTypes[i] = accessor.getReturnType();
+                if (componentTypes[i].isPrimitive()) {
+                    recordDefaults[i] = Array.get(Array.newInstance(componentTypes[i], 1), 0);
+                }
+            }
+            Constructor<?> canonical = type.getDeclaredConstructor(componentTypes);
+            canonical.setAccessible(true);
+            recordConstructor = MethodHandles.lookup().unreflectConstructor(canonical)
+                    .asSpreader(Object[].class, componentTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            constructor = null;
+            fields = null;
+            getters = null;
+        } else {
+            recordConstructor = null;
+            recordDefaults = null;
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                    names.add(propertyName(field, capitalize(field.getName())));
+                    binders.add(variantBinder(dataBinder.getBinder(field.getGenericType(), field)));
+                }
+            }
+            this.fields = fields.toArray(new Field[fields.size()]);
+            getters = null;
+        }
+
+        this.names = names.toArray(new String[names.size()]);
+        this.binders = binders.toArray(new Binder<?>[binders.size()]);
+        for (int i = 0; i < this.names.length; i++) {
+            if (indices.put(this.names[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate property " + this.names[i] + " in " + type.getName());
+            }
+        }
+    }
+
+    private static Binder<?> variantBinder(Binder<?> binder) {
+        return PrimitiveAnnotationBinderTransformer.transformBinder(binder, BasicType.VARIANT);
+    }
+
+    private static String propertyName(AnnotatedElement element, String defaultName) {
+        Member member = element.getAnnotation(Member.class);
+        return member == null ? defaultName : member.value();
+    }
+
+    private static String getterName(String methodName) {
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            return methodName.substring(3);
+        }
+        if (methodName.startsWith("is") && methodName.length() > 2) {
+            return methodName.substring(2);
+        }
+        return capitalize(methodName);
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    @Override
+    public TypeDefinition getType() {
+        return PROPERTIES_TYPE;
+    }
+
+    @Override
+    @SneakyThrows
+    public Object decode(DbusObject object) {
+        Object[] values = new Object[names.length];
+        for (Map.Entry<DbusObject, DbusObject> entry : object.getEntries().entrySet()) {
+            Integer index = indices.get(entry.getKey().stringValue());
+            if (index != null) {
+                values[index] = binders[index].decode(entry.getValue());
+            }
+        }
+
+        if (getters != null) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class[]{ type }, new View(values));
+        } else if (recordConstructor != null) {
+            assert recordDefaults != null;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) { values[i] = recordDefaults[i]; }
+            }
+            return (Object) recordConstructor.invokeExact(values);
+        } else {
+            assert constructor != null && fields != null;
+            Object view = constructor.newInstance();
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i] != null) {
+                    fields[i].set(view, values[i]);
+                }
+            }
+            return view;
+        }
+    }
+
+    @Override
+    public DbusObject encode(Object obj) {
+        throw new UnsupportedOperationException("Property views cannot be encoded");
+    }
+
+    private final class View implements InvocationHandler {
+        private final Object[] values;
+
+        View(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            assert getters != null;
+            Integer index = getters.get(method);
+            if (index != null) {
+                Object value = values[index];
+                if (value == null && method.getReturnType().isPrimitive()) {
+                    throw new NoSuchElementException("Property " + names[index] + " was not returned");
+                }
+                return value;
+            }
+
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                StringBuilder builder = new StringBuilder(type.getSimpleName()).append('{');
+                for (int i = 0; i < names.length; i++) {
+                    if (i != 0) { builder.append(", "); }
+                    builder.append(names[i]).append('=').append(values[i]);
+                }
+                return builder.append('}').toString();
+            default:
+                throw new UnsupportedOperationException(method.toString());
+            }
+        }
+    }
+}
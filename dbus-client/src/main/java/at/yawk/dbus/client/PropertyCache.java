@@ -0,0 +1,219 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.error.ResponseValidator;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.StringObject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Client-side cache of the properties of one interface of a remote object.
+ *
+ * On first access the cache subscribes to {@code org.freedesktop.DBus.Properties.PropertiesChanged} for the object
+ * and seeds itself with a single {@code GetAll}. After that, reads are served locally. Changed properties are updated
+ * from the signal, and invalidated properties are dropped and fetched again with {@code Get} on the next read.
+ *
+ * The subscription only accepts signals sent by the owner of the destination. When the destination gets a new owner,
+ * the new owner may have different values, so the cache is cleared and seeded again on the next read.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@Slf4j
+class PropertyCache {
+    static final String PROPERTIES_INTERFACE = "org.freedesktop.DBus.Properties";
+
+    private final RequestExecutor executor;
+    private final Key key;
+
+    /**
+     * Held while seeding so only one thread issues {@code GetAll}.
+     */
+    private final Object seedLock = new Object();
+    @GuardedBy("seedLock")
+    private boolean subscribed = false;
+    private volatile boolean seeded = false;
+
+    @GuardedBy("this")
+    private final Map<String, DbusObject> values = new HashMap<>();
+    /**
+     * Number of signals that changed or invalidated each property. Together with {@link #ownerGeneration}, this lets
+     * a {@code Get} that ran without the lock detect that its value may be stale.
+     */
+    @GuardedBy("this")
+    private final Map<String, Long> propertyGenerations = new HashMap<>();
+    /**
+     * Number of owner changes of the destination.
+     */
+    @GuardedBy("this")
+    private long ownerGeneration = 0;
+    /**
+     * Properties that changed or were invalidated while the seeding {@code GetAll} was in flight. Their {@code
+     * GetAll} value may be older than the signal and is ignored. {@code null} if not seeding.
+     */
+    @GuardedBy("this")
+    @Nullable
+    private Set<String> changedDuringSeed = null;
+
+    PropertyCache(RequestExecutor executor, Key key) {
+        this.executor = executor;
+        this.key = key;
+    }
+
+    /**
+     * Get the variant value of the given property.
+     *
+     * @param fetch Fetches the property from the remote object if it is not cached, e.g. because it was invalidated.
+     */
+    DbusObject get(String property, Callable<DbusObject> fetch) throws Exception {
+        ensureSeeded();
+        long generation;
+        synchronized (this) {
+            DbusObject value = values.get(property);
+            if (value != null) { return value; }
+            generation = generation(property);
+        }
+        DbusObject value = fetch.call();
+        synchronized (this) {
+            // a signal or an owner change in the meantime may have made the fetched value stale. Changed values are
+            // already stored, for invalidated ones the next read fetches again.
+            if (generation(property) == generation) {
+                values.put(property, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return A value that changes whenever the given property or the owner changes.
+     */
+    @GuardedBy("this")
+    private long generation(String property) {
+        return ownerGeneration + propertyGenerations.getOrDefault(property, 0L);
+    }
+
+    private void ensureSeeded() throws Exception {
+        if (seeded) { return; }
+        synchronized (seedLock) {
+            if (seeded) { return; }
+
+            long ownerGeneration;
+            synchronized (this) {
+                changedDuringSeed = new HashSet<>();
+                ownerGeneration = this.ownerGeneration;
+            }
+            try {
+                if (!subscribed) {
+                    if (key.getDestination() != null) {
+                        executor.listenNameOwner(key.getBus(), key.getDestination(), owner -> onOwnerChanged());
+                    }
+                    executor.listen(key.getBus(), createRule(), this::onPropertiesChanged);
+                    subscribed = true;
+                }
+
+                log.trace("Seeding property cache {}", key);
+                Response response = executor.execute(new SimpleRequest(
+                        key.getBus(),
+                        MessageType.METHOD_CALL,
+                        key.getPath(),
+                        StringObject.create(PROPERTIES_INTERFACE),
+                        StringObject.create("GetAll"),
+                        key.getDestination() == null ? null : StringObject.create(key.getDestination()),
+                        Collections.singletonList(BasicObject.createString(key.getInterfaceName()))
+                ));
+                ResponseValidator.HANDLE_ERROR.validate(response);
+
+                synchronized (this) {
+                    // if the owner changed, the reply may be from the old owner. Stay unseeded and retry next time.
+                    if (this.ownerGeneration != ownerGeneration) { return; }
+                    assert changedDuringSeed != null;
+                    for (Map.Entry<DbusObject, DbusObject> entry : response.getReply().get(0).getEntries().entrySet()) {
+                        String property = entry.getKey().stringValue();
+                        if (!changedDuringSeed.contains(property)) {
+                            values.put(property, entry.getValue());
+                        }
+                    }
+                    seeded = true;
+                }
+            } finally {
+                synchronized (this) {
+                    changedDuringSeed = null;
+                }
+            }
+        }
+    }
+
+    private MatchRule createRule() {
+        MatchRule rule = new MatchRule();
+        rule.setMessageType(MessageType.SIGNAL);
+        if (key.getDestination() != null) {
+            // a well-known name is resolved to its current unique owner when matching
+            rule.setSender(key.getDestination());
+        }
+        rule.setPath(key.getPath());
+        rule.setInterfaceName(PROPERTIES_INTERFACE);
+        rule.setMember("PropertiesChanged");
+        rule.setArguments(Collections.singletonMap(0, key.getInterfaceName()));
+        return rule;
+    }
+
+    private void onPropertiesChanged(List<DbusObject> body) {
+        // (s interface, a{sv} changed, as invalidated)
+        if (body.size() < 3) { return; }
+        synchronized (this) {
+            for (Map.Entry<DbusObject, DbusObject> entry : body.get(1).getEntries().entrySet()) {
+                String property = entry.getKey().stringValue();
+                values.put(property, entry.getValue());
+                onPropertyChanged(property);
+            }
+            for (DbusObject invalidated : body.get(2).getValues()) {
+                String property = invalidated.stringValue();
+                values.remove(property);
+                onPropertyChanged(property);
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void onPropertyChanged(String property) {
+        propertyGenerations.merge(property, 1L, Long::sum);
+        if (changedDuringSeed != null) { changedDuringSeed.add(property); }
+    }
+
+    private synchronized void onOwnerChanged() {
+        log.trace("Owner of {} changed, clearing property cache", key);
+        ownerGeneration++;
+        values.clear();
+        seeded = false;
+    }
+
+    @Value
+    static class Key {
+        String bus;
+        @Nullable String destination;
+        ObjectPathObject path;
+        String interfaceName;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.RequestExecutor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates implementation classes of RMI interfaces as an alternative to {@link java.lang.reflect.Proxy}. Each
+ * interface method gets its own {@link RmiMethod} field and calls it directly, so there is no lookup of the call plan
+ * by {@link Method} and no megamorphic {@link java.lang.reflect.InvocationHandler} in between, and the JIT can inline
+ * each call site into its plan. Methods without parameters also skip the argument array.
+ *
+ * One class is generated per interface, in a class loader of its own whose parent is the loader of the interface. This
+ * requires the interface and all types in its method signatures to be public; other interfaces are not generated.
+ *
+ * This class needs ASM, which is an optional dependency. {@link RmiFactory} only uses it if ASM is present.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@Slf4j
+final class RmiClassGenerator {
+    private static final String METHOD_TYPE = Type.getInternalName(RmiMethod.class);
+    private static final String METHOD_DESCRIPTOR = Type.getDescriptor(RmiMethod.class);
+
+    private static final ClassValue<Implementation> IMPLEMENTATIONS = new ClassValue<Implementation>() {
+        @Override
+        protected Implementation computeValue(Class<?> type) {
+            try {
+                return generate(type);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                log.debug("Could not generate RMI implementation of {}, falling back to a proxy", type, e);
+                return Implementation.UNAVAILABLE;
+            }
+        }
+    };
+
+    private RmiClassGenerator() {}
+
+    /**
+     * Create an instance of the generated implementation of the given interface.
+     *
+     * @return The instance, or {@code null} if no implementation can be generated for this interface.
+     */
+    @Nullable
+    static Object implement(Class<?> type, Map<Method, CallPlan> plans, RequestExecutor executor) {
+        Implementation implementation = IMPLEMENTATIONS.get(type);
+        if (implementation == Implementation.UNAVAILABLE) { return null; }
+        RmiMethod[] methods = new RmiMethod[implementation.methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = implementation.methods[i];
+            methods[i] = new RmiMethod(plans.get(method), executor, method.getExceptionTypes());
+        }
+        return implementation.newInstance(methods);
+    }
+
+    private static Implementation generate(Class<?> type) throws ReflectiveOperationException {
+        if (!Modifier.isPublic(type.getModifiers()) || type.getName().startsWith("java.")) {
+            return Implementation.UNAVAILABLE;
+        }
+        List<Method> methods = new ArrayList<>();
+        Set<String> signatures = new HashSet<>();
+        for (Method method : type.getMethods()) {
+            if (method.getDeclaringClass() == Object.class ||
+                Modifier.isStatic(method.getModifiers()) ||
+                isObjectMethod(method)) { continue; }
+            if (!isPublic(method.getReturnType())) { return Implementation.UNAVAILABLE; }
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (!isPublic(parameterType)) { return Implementation.UNAVAILABLE; }
+            }
+            // the same method may be inherited from several interfaces
+            if (signatures.add(method.getName() + Type.getMethodDescriptor(method))) {
+                methods.add(method);
+            }
+        }
+
+        String name = type.getName() + "$$RmiImpl";
+        byte[] bytes = generateClass(name.replace('.', '/'), type, methods);
+        Class<?> implementationClass = new RmiClassLoader(type.getClassLoader()).define(name, bytes);
+        MethodHandle constructor = MethodHandles.publicLookup()
+                .findConstructor(implementationClass, MethodType.methodType(void.class, RmiMethod[].class))
+                .asType(MethodType.methodType(Object.class, RmiMethod[].class));
+        log.debug("Generated RMI implementation {}", implementationClass);
+        return new Implementation(methods.toArray(new Method[methods.size()]), constructor);
+    }
+
+    private static byte[] generateClass(String name, Class<?> type, List<Method> methods) {
+        // all generated code is straight-line, so there are no frames to compute
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+                     name, null, "java/lang/Object", new String[]{ Type.getInternalName(type) });
+
+        for (int i = 0; i < methods.size(); i++) {
+            writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "m" + i, METHOD_DESCRIPTOR, null, null)
+                    .visitEnd();
+        }
+
+        MethodVisitor constructor = writer.visitMethod(
+                Opcodes.ACC_PUBLIC, "<init>", "([" + METHOD_DESCRIPTOR + ")V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        for (int i = 0; i < methods.size(); i++) {
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitVarInsn(Opcodes.ALOAD, 1);
+            constructor.visitLdcInsn(i);
+            constructor.visitInsn(Opcodes.AALOAD);
+            constructor.visitFieldInsn(Opcodes.PUTFIELD, name, "m" + i, METHOD_DESCRIPTOR);
+        }
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        for (int i = 0; i < methods.size(); i++) {
+            generateMethod(writer, name, "m" + i, methods.get(i));
+        }
+
+        // equals and hashCode are inherited from Object and thus identity-based like those of the proxies
+        MethodVisitor toString = writer.visitMethod(Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
+        toString.visitCode();
+        toString.visitLdcInsn("RmiProxy[" + type.getName() + "]@");
+        toString.visitVarInsn(Opcodes.ALOAD, 0);
+        toString.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "identityHashCode",
+                                 "(Ljava/lang/Object;)I", false);
+        toString.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "toHexString", "(I)Ljava/lang/String;",
+                                 false);
+        toString.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "concat",
+                                 "(Ljava/lang/String;)Ljava/lang/String;", false);
+        toString.visitInsn(Opcodes.ARETURN);
+        toString.visitMaxs(0, 0);
+        toString.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void generateMethod(ClassWriter writer, String owner, String field, Method method) {
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        MethodVisitor visitor = writer.visitMethod(
+                Opcodes.ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, exceptions);
+        visitor.visitCode();
+        visitor.visitVarInsn(Opcodes.ALOAD, 0);
+        visitor.visitFieldInsn(Opcodes.GETFIELD, owner, field, METHOD_DESCRIPTOR);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            visitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_TYPE, "invoke", "()Ljava/lang/Object;", false);
+        } else {
+            visitor.visitLdcInsn(parameterTypes.length);
+            visitor.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            int slot = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Type parameterType = Type.getType(parameterTypes[i]);
+                visitor.visitInsn(Opcodes.DUP);
+                visitor.visitLdcInsn(i);
+                visitor.visitVarInsn(parameterType.getOpcode(Opcodes.ILOAD), slot);
+                slot += parameterType.getSize();
+                if (parameterTypes[i].isPrimitive()) {
+                    Class<?> wrapper = wrapper(parameterTypes[i]);
+                    visitor.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(wrapper), "valueOf",
+                                            Type.getMethodDescriptor(Type.getType(wrapper), parameterType), false);
+                }
+                visitor.visitInsn(Opcodes.AASTORE);
+            }
+            visitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_TYPE, "invoke",
+                                    "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+        }
+
+        Class<?> returnType = method.getReturnType();
+        Type returnAsmType = Type.getType(returnType);
+        if (returnType == void.class) {
+            visitor.visitInsn(Opcodes.POP);
+        } else if (returnType.isPrimitive()) {
+            String wrapper = Type.getInternalName(wrapper(returnType));
+            visitor.visitTypeInsn(Opcodes.CHECKCAST, wrapper);
+            visitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, wrapper, returnType.getName() + "Value",
+                                    Type.getMethodDescriptor(returnAsmType), false);
+        } else if (returnType != Object.class) {
+            visitor.visitTypeInsn(Opcodes.CHECKCAST, returnAsmType.getInternalName());
+        }
+        visitor.visitInsn(returnAsmType.getOpcode(Opcodes.IRETURN));
+        visitor.visitMaxs(0, 0);
+        visitor.visitEnd();
+    }
+
+    /**
+     * Whether the given method overrides one of the methods of {@link Object} that proxies always answer locally.
+     */
+    private static boolean isObjectMethod(Method method) {
+        switch (method.getName()) {
+        case "equals":
+            return method.getParameterCount() == 1 && method.getParameterTypes()[0] == Object.class;
+        case "hashCode":
+        case "toString":
+            return method.getParameterCount() == 0;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) { type = type.getComponentType(); }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    private static Class<?> wrapper(Class<?> primitive) {
+        return MethodType.methodType(primitive).wrap().returnType();
+    }
+
+    private static final class Implementation {
+        static final Implementation UNAVAILABLE = new Implementation(new Method[0], null);
+
+        /**
+         * The interface methods, in the order the constructor takes their {@link RmiMethod}s.
+         */
+        final Method[] methods;
+        /**
+         * {@code (RmiMethod[]) -> Object}.
+         */
+        @Nullable final MethodHandle constructor;
+
+        Implementation(Method[] methods, @Nullable MethodHandle constructor) {
+            this.methods = methods;
+            this.constructor = constructor;
+        }
+
+        @SneakyThrows
+        Object newInstance(RmiMethod[] methods) {
+            assert constructor != null;
+            return (Object) constructor.invokeExact(methods);
+        }
+    }
+
+    /**
+     * Loader of a generated class. Everything but {@link RmiMethod} is resolved through the loader of the interface.
+     */
+    private static final class RmiClassLoader extends ClassLoader {
+        RmiClassLoader(@Nullable ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(RmiMethod.class.getName())) { return RmiMethod.class; }
+            return super.loadClass(name, resolve);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
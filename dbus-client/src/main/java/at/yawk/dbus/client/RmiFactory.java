@@ -7,14 +7,24 @@
 package at.yawk.dbus.client;
 
 import at.yawk.dbus.databind.DataBinder;
+import at.yawk.dbus.client.annotation.Introspected;
 import at.yawk.dbus.client.error.ResponseValidator;
+import at.yawk.dbus.client.introspect.IntrospectionCache;
+import at.yawk.dbus.client.introspect.ObjectDescription;
 import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -22,14 +32,30 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class RmiFactory {
+    private static final boolean CLASS_GENERATION_AVAILABLE = isClassGenerationAvailable();
+
     private final DataBinder binder;
     private final RequestExecutor executor;
     private final CallSiteBuilder baseSite;
+    /**
+     * Property caches shared by all instances of this factory and its children.
+     */
+    private final ConcurrentMap<PropertyCache.Key, PropertyCache> propertyCaches;
+    /**
+     * Introspection cache shared by this factory and its children.
+     */
+    @Getter private final IntrospectionCache introspectionCache;
+    /**
+     * Whether instances are implemented by {@linkplain RmiClassGenerator generated classes} where possible.
+     */
+    private boolean classGeneration = CLASS_GENERATION_AVAILABLE;
 
     public RmiFactory(DataBinder binder, RequestExecutor executor) {
         this.binder = binder;
         this.executor = executor;
         this.baseSite = new CallSiteBuilder();
+        this.propertyCaches = new ConcurrentHashMap<>();
+        this.introspectionCache = new IntrospectionCache(executor);
         log.trace("Base call site is {}", baseSite);
 
         addValidator(ResponseValidator.HANDLE_ERROR);
@@ -38,7 +64,10 @@ public class RmiFactory {
     public RmiFactory(RmiFactory parent) {
         this.binder = parent.binder;
         this.executor = parent.executor;
-        this.baseSite = parent.baseSite.createChild(false);
+        this.baseSite = parent.baseSite.createChild();
+        this.propertyCaches = parent.propertyCaches;
+        this.introspectionCache = parent.introspectionCache;
+        this.classGeneration = parent.classGeneration;
         log.trace("Inherited call site is {}", baseSite);
     }
 
@@ -46,36 +75,117 @@ public class RmiFactory {
         baseSite.addValidator(validator);
     }
 
+    /**
+     * Add an interceptor around the method calls of instances created from now on by this factory and by children
+     * created from now on. Interceptors added earlier run further out; those of a child run inside those of its
+     * parent.
+     *
+     * These interceptors only wrap the proxy calls of this factory. Property cache seeding and introspection, as well
+     * as requests submitted to the executor directly, bypass them; use {@link DbusClient#addInterceptor} to cover
+     * those too.
+     */
+    public void addInterceptor(RequestInterceptor interceptor) {
+        baseSite.addInterceptor(interceptor);
+    }
+
+    /**
+     * Set whether to implement interfaces with generated classes instead of {@link Proxy}. This is the default if ASM
+     * is present; generated classes are only used for public interfaces whose signatures only use public types.
+     */
+    void setClassGeneration(boolean classGeneration) {
+        this.classGeneration = classGeneration && CLASS_GENERATION_AVAILABLE;
+    }
+
     @SuppressWarnings("unchecked")
     public <I> I createRmiInstance(Class<I> type) {
-        CallSiteBuilder classSite = baseSite.createChild(false);
+        CallSiteBuilder classSite = baseSite.createChild();
         classSite.decorateFromClass(type);
         log.trace("Class call site for {} is {}", classSite, classSite);
+        ObjectDescription description = type.isAnnotationPresent(Introspected.class) ? introspect(classSite) : null;
 
-        Map<Method, CallSiteBuilder> sites = new HashMap<>();
+        Map<Method, CallPlan> plans = new HashMap<>();
         for (Method method : type.getMethods()) {
             if (method.getDeclaringClass() == Object.class ||
                 Modifier.isStatic(method.getModifiers())) { continue; }
 
-            CallSiteBuilder methodSite = classSite.createChild(false);
+            CallSiteBuilder methodSite = classSite.createChild();
             methodSite.decorateFromMethod(binder, method);
-            log.trace("Method call site for {} is {}", method, methodSite);
+            if (description != null) {
+                try {
+                    methodSite.decorateFromIntrospection(description);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Introspection check failed for " + method, e);
+                }
+            }
+            CallPlan plan = methodSite.compile(methodSite.cachedProperty ? getPropertyCache(methodSite) : null);
+            log.trace("Call plan for {} is {}", method, plan);
 
-            sites.put(method, methodSite);
+            plans.put(method, plan);
         }
 
-        InvocationHandler invocationHandler = (proxy, method, args) -> {
-            CallSiteBuilder site = sites.get(method);
-            if (site == null) {
-                // todo: Object methods
-                assert false;
-            }
+        if (classGeneration) {
+            Object instance = RmiClassGenerator.implement(type, plans, executor);
+            if (instance != null) { return (I) instance; }
+        }
+        return (I) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{ type },
+                                          new RmiInvocationHandler(type, plans, executor));
+    }
+
+    private static boolean isClassGenerationAvailable() {
+        try {
+            Class.forName("org.objectweb.asm.ClassWriter", false, RmiFactory.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            log.debug("ASM is not available, RMI instances are implemented with proxies");
+            return false;
+        }
+    }
+
+    @SneakyThrows
+    private ObjectDescription introspect(CallSiteBuilder site) {
+        if (site.objectPath == null) {
+            throw new IllegalArgumentException("Introspected interfaces need an object path");
+        }
+        return introspectionCache.get(site.bus, site.destination, site.objectPath);
+    }
 
-            site = site.createChild(true);
-            site.decorateFromCall(args);
-            return site.submit(executor);
-        };
+    private PropertyCache getPropertyCache(CallSiteBuilder site) {
+        if (site.objectPath == null || site.interfaceName == null) {
+            throw new IllegalArgumentException("Cached properties need an object path and interface");
+        }
+        PropertyCache.Key key = new PropertyCache.Key(
+                site.bus, site.destination, ObjectPathObject.create(site.objectPath), site.interfaceName);
+        return propertyCaches.computeIfAbsent(key, k -> new PropertyCache(executor, k));
+    }
 
-        return (I) Proxy.newProxyInstance(RmiFactory.class.getClassLoader(), new Class[]{ type }, invocationHandler);
+    /**
+     * Dispatches proxy calls to their call plans. {@code equals}, {@code hashCode} and {@code toString} are answered
+     * locally based on proxy identity instead of being sent over the bus.
+     */
+    @RequiredArgsConstructor
+    private static final class RmiInvocationHandler implements InvocationHandler {
+        private final Class<?> type;
+        private final Map<Method, CallPlan> plans;
+        private final RequestExecutor executor;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            CallPlan plan = plans.get(method);
+            if (plan != null) {
+                return plan.invoke(executor, args);
+            }
+
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "RmiProxy[" + type.getName() + "]@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            throw new UnsupportedOperationException("Cannot invoke " + method + " on RMI instance");
+        }
     }
 }
@@ -0,0 +1,52 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.RequestExecutor;
+import java.lang.reflect.UndeclaredThrowableException;
+import javax.annotation.Nullable;
+import net.jcip.annotations.Immutable;
+
+/**
+ * A call plan bound to its executor, called by the methods of {@linkplain RmiClassGenerator generated}
+ * implementations. It is public only so that those implementations, which live in their own class loader, can link
+ * against it; it cannot be created outside of this package.
+ *
+ * Exceptions are reported like {@link java.lang.reflect.Proxy} does: checked exceptions the interface method does not
+ * declare are wrapped in an {@link UndeclaredThrowableException}.
+ *
+ * @author yawkat
+ */
+@Immutable
+public final class RmiMethod {
+    private final CallPlan plan;
+    private final RequestExecutor executor;
+    private final Class<?>[] exceptionTypes;
+
+    RmiMethod(CallPlan plan, RequestExecutor executor, Class<?>[] exceptionTypes) {
+        this.plan = plan;
+        this.executor = executor;
+        this.exceptionTypes = exceptionTypes;
+    }
+
+    public Object invoke() throws Exception {
+        return invoke(null);
+    }
+
+    public Object invoke(@Nullable Object[] args) throws Exception {
+        try {
+            return plan.invoke(executor, args);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            for (Class<?> exceptionType : exceptionTypes) {
+                if (exceptionType.isInstance(e)) { throw e; }
+            }
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
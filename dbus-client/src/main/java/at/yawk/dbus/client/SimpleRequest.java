@@ -0,0 +1,34 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.StringObject;
+import java.util.List;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/**
+ * Request with fixed values, for calls the client makes on its own behalf or that are built by hand, e.g. for
+ * {@link RequestExecutor#executeBatch(List)}.
+ *
+ * @author yawkat
+ */
+@Value
+public class SimpleRequest implements Request {
+    String bus;
+    MessageType type;
+    ObjectPathObject objectPath;
+    StringObject interfaceName;
+    StringObject member;
+    @Nullable StringObject destination;
+    List<DbusObject> arguments;
+}
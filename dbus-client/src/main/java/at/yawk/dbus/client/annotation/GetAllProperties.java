@@ -0,0 +1,26 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Fetch all properties of the interface with a single {@code org.freedesktop.DBus.Properties.GetAll} call.
+ *
+ * The method must return an interface whose getters are the properties, a record whose components are the
+ * properties, or a class with a no-argument constructor whose fields are the properties. Property names are taken from
+ * {@link Member} or derived from the getter, component or field name ({@code getPercentage()} and {@code percentage}
+ * both map to {@code Percentage}).
+ *
+ * @author yawkat
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GetAllProperties {}
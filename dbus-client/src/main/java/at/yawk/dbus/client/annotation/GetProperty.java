@@ -16,4 +16,10 @@ import java.lang.annotation.Target;
  */
 @Target({ ElementType.TYPE, ElementType.METHOD })
 @Retention(RetentionPolicy.RUNTIME)
-public @interface GetProperty {}
+public @interface GetProperty {
+    /**
+     * Serve this property from a client-side cache that is seeded with {@code GetAll} and kept up to date through the
+     * {@code PropertiesChanged} signal. Only use this for properties the remote object announces changes for.
+     */
+    boolean cached() default false;
+}
@@ -0,0 +1,26 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Introspect the remote object when an RMI instance of this interface is created, and check every method against the
+ * introspection data. Arguments and return values whose D-Bus type cannot be derived from their Java type (e.g.
+ * {@code Object}) are bound with the declared type instead.
+ *
+ * The interface must have an {@link ObjectPath}. Creating the instance fails if the object does not exist or does
+ * not declare a called member, or if a signature does not match.
+ *
+ * @author yawkat
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Introspected {}
@@ -14,7 +14,7 @@ import java.lang.annotation.Target;
 /**
  * @author yawkat
  */
-@Target({ ElementType.TYPE, ElementType.METHOD })
+@Target({ ElementType.TYPE, ElementType.METHOD, ElementType.FIELD })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Member {
     String value();
@@ -0,0 +1,23 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Introspection data of a single interface.
+ *
+ * @author yawkat
+ */
+@Value
+public class InterfaceDescription {
+    String name;
+    Map<String, MemberDescription> methods;
+    Map<String, MemberDescription> signals;
+    Map<String, PropertyDescription> properties;
+}
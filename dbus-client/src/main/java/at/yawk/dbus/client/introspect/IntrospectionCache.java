@@ -0,0 +1,135 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import at.yawk.dbus.client.SimpleRequest;
+import at.yawk.dbus.client.error.ResponseValidator;
+import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.StringObject;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Cache of the introspection data of remote objects.
+ *
+ * Every object is introspected at most once. When the owner of a destination changes, the service may have been
+ * replaced by a different implementation, so all cached objects of that destination are dropped.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@Slf4j
+public class IntrospectionCache {
+    private final RequestExecutor executor;
+
+    private final ConcurrentMap<Key, CompletableFuture<ObjectDescription>> descriptions = new ConcurrentHashMap<>();
+    /**
+     * Destinations we already listen to owner changes of.
+     */
+    private final Set<Destination> subscribed = ConcurrentHashMap.newKeySet();
+
+    public IntrospectionCache(RequestExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Get the introspection data of the given object, introspecting it if it is not cached.
+     *
+     * @param destination The destination, or {@code null} on a peer-to-peer connection.
+     */
+    public ObjectDescription get(String bus, @Nullable String destination, String path) throws Exception {
+        Key key = new Key(bus, destination, path);
+        CompletableFuture<ObjectDescription> future = descriptions.get(key);
+        if (future == null) {
+            // subscribe before introspecting so a restart of the service in between is not missed
+            subscribe(new Destination(bus, destination));
+
+            CompletableFuture<ObjectDescription> created = new CompletableFuture<>();
+            future = descriptions.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                try {
+                    created.complete(introspect(key));
+                } catch (Exception e) {
+                    descriptions.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drop all cached objects of the given destination.
+     */
+    public void invalidate(String bus, @Nullable String destination) {
+        descriptions.keySet().removeIf(key -> key.bus.equals(bus) && Objects.equals(key.destination, destination));
+    }
+
+    private ObjectDescription introspect(Key key) throws Exception {
+        log.debug("Introspecting {}", key);
+        Response response = executor.execute(new SimpleRequest(
+                key.bus,
+                MessageType.METHOD_CALL,
+                ObjectPathObject.create(key.path),
+                StringObject.create("org.freedesktop.DBus.Introspectable"),
+                StringObject.create("Introspect"),
+                key.destination == null ? null : StringObject.create(key.destination),
+                Collections.emptyList()
+        ));
+        ResponseValidator.HANDLE_ERROR.validate(response);
+        return IntrospectionParser.parse(response.getReply().get(0).stringValue());
+    }
+
+    private void subscribe(Destination destination) throws Exception {
+        if (destination.name == null) { return; }
+        if (!subscribed.add(destination)) { return; }
+
+        try {
+            executor.listenNameOwner(destination.bus, destination.name, owner -> {
+                log.debug("Owner of {} changed, dropping introspection data", destination.name);
+                invalidate(destination.bus, destination.name);
+            });
+        } catch (Exception e) {
+            subscribed.remove(destination);
+            throw e;
+        }
+    }
+
+    @Value
+    private static class Key {
+        String bus;
+        @Nullable String destination;
+        String path;
+    }
+
+    @Value
+    private static class Destination {
+        String bus;
+        @Nullable String name;
+    }
+}
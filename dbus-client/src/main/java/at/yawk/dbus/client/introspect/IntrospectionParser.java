@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import at.yawk.dbus.protocol.type.MalformedTypeDefinitionException;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import at.yawk.dbus.protocol.type.TypeParser;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import lombok.experimental.UtilityClass;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Parser for the D-Bus introspection XML format.
+ *
+ * @author yawkat
+ */
+@UtilityClass
+public class IntrospectionParser {
+    /**
+     * A document type declaration without an internal subset, at the start of the document.
+     */
+    private static final Pattern EXTERNAL_DOCTYPE =
+            Pattern.compile("^(\\s*(?:<\\?xml[^>]*\\?>)?\\s*)<!DOCTYPE\\s[^\\[>]*>");
+
+    /**
+     * Parse introspection data. The data comes from remote peers, so DTDs and entities are not processed: the usual
+     * {@code <!DOCTYPE node PUBLIC ...>} that only references the introspection DTD is skipped, and any other document
+     * type declaration is rejected.
+     *
+     * @throws IllegalArgumentException if the data is not valid introspection XML.
+     */
+    public static ObjectDescription parse(String xml) {
+        Element root;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setXIncludeAware(false);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // a declaration without internal subset cannot declare entities, and the referenced DTD is never loaded
+            String document = EXTERNAL_DOCTYPE.matcher(xml).replaceFirst("$1");
+            root = builder.parse(new InputSource(new StringReader(document))).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            throw new IllegalArgumentException("Invalid introspection data", e);
+        }
+        if (!root.getTagName().equals("node")) {
+            throw new IllegalArgumentException("Introspection root element must be <node>");
+        }
+
+        Map<String, InterfaceDescription> interfaces = new LinkedHashMap<>();
+        List<String> children = new ArrayList<>();
+        for (Element element : childElements(root)) {
+            switch (element.getTagName()) {
+            case "interface":
+                InterfaceDescription description = parseInterface(element);
+                interfaces.put(description.getName(), description);
+                break;
+            case "node":
+                children.add(element.getAttribute("name"));
+                break;
+            }
+        }
+        return new ObjectDescription(Collections.unmodifiableMap(interfaces), Collections.unmodifiableList(children));
+    }
+
+    private static InterfaceDescription parseInterface(Element element) {
+        Map<String, MemberDescription> methods = new LinkedHashMap<>();
+        Map<String, MemberDescription> signals = new LinkedHashMap<>();
+        Map<String, PropertyDescription> properties = new LinkedHashMap<>();
+        for (Element child : childElements(element)) {
+            String name = child.getAttribute("name");
+            switch (child.getTagName()) {
+            case "method":
+                methods.put(name, parseMember(child, "in"));
+                break;
+            case "signal":
+                // signal arguments are always outgoing
+                signals.put(name, parseMember(child, "out"));
+                break;
+            case "property":
+                String access = child.getAttribute("access");
+                properties.put(name, new PropertyDescription(
+                        name,
+                        parseType(child),
+                        access.equals("read") || access.equals("readwrite"),
+                        access.equals("write") || access.equals("readwrite")
+                ));
+                break;
+            }
+        }
+        return new InterfaceDescription(
+                element.getAttribute("name"),
+                Collections.unmodifiableMap(methods),
+                Collections.unmodifiableMap(signals),
+                Collections.unmodifiableMap(properties)
+        );
+    }
+
+    /**
+     * @param defaultDirection Direction of arguments without a {@code direction} attribute.
+     */
+    private static MemberDescription parseMember(Element element, String defaultDirection) {
+        List<TypeDefinition> in = new ArrayList<>();
+        List<TypeDefinition> out = new ArrayList<>();
+        for (Element arg : childElements(element)) {
+            if (!arg.getTagName().equals("arg")) { continue; }
+            String direction = arg.hasAttribute("direction") ? arg.getAttribute("direction") : defaultDirection;
+            (direction.equals("in") ? in : out).add(parseType(arg));
+        }
+        return new MemberDescription(
+                element.getAttribute("name"),
+                Collections.unmodifiableList(in),
+                Collections.unmodifiableList(out)
+        );
+    }
+
+    private static TypeDefinition parseType(Element element) {
+        String type = element.getAttribute("type");
+        try {
+            return TypeParser.parseTypeDefinition(type);
+        } catch (MalformedTypeDefinitionException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid type '" + type + "' in introspection data", e);
+        }
+    }
+
+    private static List<Element> childElements(Element parent) {
+        List<Element> elements = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+}
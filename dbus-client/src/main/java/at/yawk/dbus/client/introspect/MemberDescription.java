@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Introspection data of a method or signal.
+ *
+ * @author yawkat
+ */
+@Value
+public class MemberDescription {
+    String name;
+    /**
+     * Types of the method parameters. Empty for signals.
+     */
+    List<TypeDefinition> inTypes;
+    /**
+     * Types of the method return values, or of the signal arguments.
+     */
+    List<TypeDefinition> outTypes;
+}
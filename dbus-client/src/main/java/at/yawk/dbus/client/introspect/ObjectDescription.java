@@ -0,0 +1,34 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/**
+ * Parsed introspection data of a remote object, as returned by {@code org.freedesktop.DBus.Introspectable.Introspect}.
+ *
+ * @author yawkat
+ */
+@Value
+public class ObjectDescription {
+    /**
+     * Interfaces of this object by name.
+     */
+    Map<String, InterfaceDescription> interfaces;
+    /**
+     * Names of the child nodes, relative to this object.
+     */
+    List<String> children;
+
+    @Nullable
+    public InterfaceDescription getInterface(String name) {
+        return interfaces.get(name);
+    }
+}
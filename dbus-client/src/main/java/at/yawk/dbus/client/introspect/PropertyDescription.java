@@ -0,0 +1,23 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import lombok.Value;
+
+/**
+ * Introspection data of a property.
+ *
+ * @author yawkat
+ */
+@Value
+public class PropertyDescription {
+    String name;
+    TypeDefinition type;
+    boolean readable;
+    boolean writable;
+}
@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interceptor that can also handle a request without waiting for its response, so that it can wrap the requests of a
+ * {@linkplain RequestExecutor#executeBatch(java.util.List) batch} without serializing their round trips.
+ *
+ * {@link #interceptAsync(Request, AsyncChain)} runs on the calling thread like {@link #intercept(Request, Chain)}, but
+ * callbacks attached to the future of the chain run on whatever thread completes the call.
+ *
+ * @author yawkat
+ */
+public interface AsyncRequestInterceptor extends RequestInterceptor {
+    CompletableFuture<Response> interceptAsync(Request request, AsyncChain chain) throws Exception;
+
+    @FunctionalInterface
+    interface AsyncChain {
+        /**
+         * Pass the request to the next interceptor, or queue it for sending if this is the last one.
+         *
+         * @return A future of the response.
+         */
+        CompletableFuture<Response> proceed(Request request) throws Exception;
+    }
+}
@@ -7,49 +7,191 @@
 package at.yawk.dbus.client.request;
 
 import at.yawk.dbus.protocol.*;
+import at.yawk.dbus.protocol.jfr.FlightRecorderEvents;
 import at.yawk.dbus.protocol.object.BasicObject;
 import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.object.StringObject;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.GuardedBy;
 
 /**
  * @author yawkat
  */
 @Slf4j
 public class ChannelRequestExecutor implements RequestExecutor {
+    /**
+     * Default reply timeout, same as the one used by libdbus.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 25_000;
+
+    /**
+     * Response of requests that get no reply.
+     */
+    private static final Response NO_REPLY = Response.success(Collections.emptyList());
+
     private final DbusChannel channel;
     private final ChannelRequestStateHolder<Response> requestHolder = new ChannelRequestStateHolder<>();
-    private final ListenerHolder listenerHolder = new ListenerHolder();
+    private final NameOwnerCache nameOwners;
+    private final ListenerHolder listenerHolder;
     private final EventThreadWatcher eventThreadWatcher = new EventThreadWatcher();
 
+    private volatile long defaultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MILLIS);
+    private volatile RequestLimiter limiter = RequestLimiter.UNLIMITED;
+    private volatile DbusMetrics metrics = DbusMetrics.NONE;
+    /**
+     * The gauge registered with {@link #metrics}. Kept so the same instance can be unregistered.
+     */
+    private final IntSupplier pendingCallsGauge = this::getPendingRequestCount;
+    private final Object metricsLock = new Object();
+    @GuardedBy("metricsLock")
+    private boolean closed = false;
+
     public ChannelRequestExecutor(DbusChannel channel) {
         this.channel = channel;
+        this.nameOwners = new NameOwnerCache(
+                this::listen,
+                name -> callBus("GetNameOwner", BasicObject.createString(name)));
+        this.listenerHolder = new ListenerHolder(nameOwners);
         channel.closeStage().thenRun(requestHolder.createCleaner());
+        channel.closeStage().thenRun(() -> {
+            synchronized (metricsLock) {
+                closed = true;
+                metrics.unregisterPendingCalls(pendingCallsGauge);
+            }
+        });
         channel.setMessageConsumer(new MessageConsumerImpl());
     }
 
+    /**
+     * Set the timeout used for requests that do not specify their own. A timeout {@code <= 0} disables the default
+     * timeout.
+     */
+    public void setDefaultTimeout(long timeout, TimeUnit unit) {
+        this.defaultTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Limit the number of requests that may await a reply at the same time. Requests over the limit wait in a FIFO
+     * queue until a slot frees up, or, in fail-fast mode, fail with a {@link
+     * java.util.concurrent.RejectedExecutionException}. Time spent waiting counts towards the request timeout.
+     *
+     * Requests that were already submitted keep counting against the previous limits.
+     *
+     * @param maxInFlight               Maximum requests in flight on this channel, or {@code <= 0} for no limit.
+     * @param maxInFlightPerDestination Maximum requests in flight to a single destination, or {@code <= 0} for no
+     *                                  limit.
+     * @param failFast                  Fail requests over the limit instead of queueing them.
+     */
+    public void setInFlightLimit(int maxInFlight, int maxInFlightPerDestination, boolean failFast) {
+        this.limiter = new RequestLimiter(maxInFlight, maxInFlightPerDestination, failFast);
+    }
+
+    /**
+     * Set the receiver of the call latency metrics of this executor and register the pending call gauge with it. The
+     * gauge is unregistered from the previous receiver, and from the current one when the channel closes.
+     */
+    public void setMetrics(DbusMetrics metrics) {
+        synchronized (metricsLock) {
+            DbusMetrics previous = this.metrics;
+            if (previous == metrics) { return; }
+            this.metrics = metrics;
+            if (!closed) {
+                previous.unregisterPendingCalls(pendingCallsGauge);
+                metrics.registerPendingCalls(pendingCallsGauge);
+            }
+        }
+    }
+
+    /**
+     * @return The number of requests that are waiting for an in-flight slot.
+     */
+    public int getQueuedRequestCount() {
+        return limiter.getQueuedCount();
+    }
+
+    /**
+     * @return The number of requests that are still awaiting a reply, including queued requests.
+     */
+    public int getPendingRequestCount() {
+        return requestHolder.getPendingCount();
+    }
+
     @Override
     public Response execute(Request request) throws Exception {
-        return executeLaterChecked(request).get();
+        return await(executeLaterChecked(request, defaultTimeoutNanos, TimeUnit.NANOSECONDS));
     }
 
     @Override
     public Response execute(Request request, long timeout, TimeUnit unit) throws Exception {
-        return executeLaterChecked(request).get(timeout, unit);
+        return await(executeLaterChecked(request, timeout, unit));
+    }
+
+    private CompletableFuture<Response> executeLaterChecked(Request request, long timeout, TimeUnit unit) {
+        eventThreadWatcher.checkLock();
+        return executeLater(request, timeout, unit);
+    }
+
+    private static Response await(CompletableFuture<Response> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // nobody is going to wait for this anymore
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+            throw e;
+        }
     }
 
-    private CompletableFuture<Response> executeLaterChecked(Request request) {
+    /**
+     * Get the unique name of the current owner of the given bus name. Owners of well-known names are cached and kept
+     * up to date from {@code NameOwnerChanged} signals after the first lookup.
+     *
+     * @return The unique name of the owner, or {@code null} if the name has no owner.
+     */
+    @Nullable
+    public String getNameOwner(String name) throws Exception {
+        if (!NameOwnerCache.isTrackable(name)) { return name; }
         eventThreadWatcher.checkLock();
-        return executeLater(request);
+        String owner = nameOwners.track(name).get();
+        return owner.equals(NameOwnerCache.NO_OWNER) ? null : owner;
     }
 
     @Override
     public Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener) {
+        return listen(rule, listener);
+    }
+
+    /**
+     * Listen for owner changes through the owner cache, which shares one {@code NameOwnerChanged} subscription per name
+     * with the owner lookups.
+     */
+    @Override
+    public Runnable listenNameOwner(String bus, String name, Consumer<String> listener) {
+        if (!NameOwnerCache.isTrackable(name)) { return () -> {}; }
+        return nameOwners.listen(name, listener);
+    }
+
+    private Runnable listen(MatchRule rule, Consumer<List<DbusObject>> listener) {
+        String sender = rule.getSender();
+        if (sender != null && NameOwnerCache.isTrackable(sender)) {
+            // resolved asynchronously, messages from the owner match once it is known
+            nameOwners.track(sender);
+        }
+
         String serialized = rule.serialize();
         log.trace("Adding listener {} on match rule {}", listener, serialized);
         StringObject ruleStringObject = BasicObject.createString(serialized);
@@ -62,11 +204,13 @@ public class ChannelRequestExecutor implements RequestExecutor {
         );
         Consumer<DbusMessage> listenerH = msg -> {
             MessageBody body = msg.getBody();
+            Object event = FlightRecorderEvents.beginListenerDispatch();
             eventThreadWatcher.lock();
             try {
                 listener.accept(body == null ? Collections.emptyList() : body.getArguments());
             } finally {
                 eventThreadWatcher.unlock();
+                FlightRecorderEvents.endListenerDispatch(event, msg.getHeader());
             }
         };
         if (listenerHolder.addListener(rule, listenerH)) {
@@ -86,31 +230,122 @@ public class ChannelRequestExecutor implements RequestExecutor {
         };
     }
 
-    private CompletableFuture<Response> executeLater(Request request) {
+    @Override
+    public List<CompletableFuture<Response>> executeBatch(List<? extends Request> requests) {
+        RequestLimiter limiter = this.limiter;
+        List<DbusMessage> messages = new ArrayList<>(requests.size());
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            DbusMessage message = createMessage(request);
+            if (!expectsReply(request)) {
+                messages.add(message);
+                futures.add(CompletableFuture.completedFuture(NO_REPLY));
+                continue;
+            }
+            // register every serial before the first message goes out so no reply can overtake its registration
+            CompletableFuture<Response> future = requestHolder.registerPending(
+                    message.getHeader().getSerial(), defaultTimeoutNanos, TimeUnit.NANOSECONDS);
+            recordCall(request, future);
+            // requests that have to wait for a slot are sent individually later
+            if (limiter.acquire(destinationOf(request), future, () -> channel.write(message))) {
+                messages.add(message);
+            }
+            futures.add(future);
+        }
+        channel.writeAll(messages);
+        return futures;
+    }
+
+    private CompletableFuture<Response> executeLater(Request request, long timeout, TimeUnit unit) {
+        DbusMessage message = createMessage(request);
+        if (!expectsReply(request)) {
+            channel.write(message);
+            return CompletableFuture.completedFuture(NO_REPLY);
+        }
+        CompletableFuture<Response> future = requestHolder.registerPending(
+                message.getHeader().getSerial(), timeout, unit);
+        recordCall(request, future);
+        if (limiter.acquire(destinationOf(request), future, () -> channel.write(message))) {
+            channel.write(message);
+        }
+        return future;
+    }
+
+    /**
+     * Report the outcome of the given call to the metrics receiver and the flight recorder.
+     */
+    private void recordCall(Request request, CompletableFuture<Response> future) {
+        DbusMetrics metrics = this.metrics;
+        Object event = FlightRecorderEvents.beginMethodCall();
+        if (metrics == DbusMetrics.NONE && event == null) { return; }
+        long start = System.nanoTime();
+        String interfaceName = request.getInterfaceName().stringValue();
+        String member = request.getMember().stringValue();
+        future.whenComplete((response, error) -> {
+            metrics.callCompleted(interfaceName, member, System.nanoTime() - start,
+                                  error != null || response.isError());
+            FlightRecorderEvents.endMethodCall(event, destinationOf(request), interfaceName, member,
+                                               response == null ? null : response.getErrorName(), error);
+        });
+    }
+
+    /**
+     * Call a method of the bus daemon.
+     */
+    private CompletableFuture<Response> callBus(String member, DbusObject argument) {
+        DbusMessage message = MessageFactory.methodCall(
+                "/",
+                NameOwnerCache.BUS_NAME,
+                NameOwnerCache.BUS_NAME,
+                member,
+                argument
+        );
         int serial = channel.createSerial();
+        message.getHeader().setSerial(serial);
+        CompletableFuture<Response> future = requestHolder.registerPending(
+                serial, defaultTimeoutNanos, TimeUnit.NANOSECONDS);
+        channel.write(message);
+        return future;
+    }
+
+    /**
+     * Signals get no reply, so nothing should wait for one or hold an in-flight slot.
+     */
+    private static boolean expectsReply(Request request) {
+        return request.getType() == MessageType.METHOD_CALL;
+    }
+
+    @Nullable
+    private static String destinationOf(Request request) {
+        StringObject destination = request.getDestination();
+        return destination == null ? null : destination.stringValue();
+    }
 
+    private DbusMessage createMessage(Request request) {
         MessageHeader header = new MessageHeader();
         header.setMessageType(request.getType());
-        header.setSerial(serial);
+        header.setSerial(channel.createSerial());
 
-        header.addHeader(HeaderField.INTERFACE, request.getInterfaceName());
-        header.addHeader(HeaderField.PATH, request.getObjectPath());
-        header.addHeader(HeaderField.MEMBER, request.getMember());
-        StringObject destination = request.getDestination();
-        if (destination != null) {
-            header.addHeader(HeaderField.DESTINATION, destination);
+        HeaderFieldTemplate template = request.getHeaderFieldTemplate();
+        if (template != null) {
+            template.applyTo(header);
+        } else {
+            header.addHeader(HeaderField.INTERFACE, request.getInterfaceName());
+            header.addHeader(HeaderField.PATH, request.getObjectPath());
+            header.addHeader(HeaderField.MEMBER, request.getMember());
+            StringObject destination = request.getDestination();
+            if (destination != null) {
+                header.addHeader(HeaderField.DESTINATION, destination);
+            }
         }
 
         MessageBody body = new MessageBody();
         body.setArguments(request.getArguments());
 
-        CompletableFuture<Response> future = requestHolder.registerPending(serial);
-
         DbusMessage message = new DbusMessage();
         message.setHeader(header);
         message.setBody(body);
-        channel.write(message);
-        return future;
+        return message;
     }
 
     private class MessageConsumerImpl implements MessageConsumer {
@@ -124,7 +359,8 @@ public class ChannelRequestExecutor implements RequestExecutor {
 
         @Override
         public boolean requireAccept(MessageHeader header) {
-            return true;
+            // only decode bodies someone is waiting for
+            return requestHolder.isPending(getReplySerial(header)) || listenerHolder.wantsMessage(header);
         }
 
         @Override
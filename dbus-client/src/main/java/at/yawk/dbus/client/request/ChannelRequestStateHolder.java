@@ -6,52 +6,110 @@
 
 package at.yawk.dbus.client.request;
 
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.EOFException;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import net.jcip.annotations.GuardedBy;
 
 /**
  * @author yawkat
  */
 class ChannelRequestStateHolder<T> {
+    /**
+     * Timer shared by all state holders. Request timeouts only need coarse precision, so a single wheel with a
+     * 100ms tick is enough for any number of connections.
+     */
+    private static final Timer DEFAULT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("dbus-request-timeout", true), 100, TimeUnit.MILLISECONDS);
+
+    private final Timer timer;
+
     @GuardedBy("this")
     private final Map<Integer, CompletableFuture<T>> pendingFutures = new HashMap<>();
     @GuardedBy("this")
     private boolean running = true;
 
+    ChannelRequestStateHolder() {
+        this(DEFAULT_TIMER);
+    }
+
+    ChannelRequestStateHolder(Timer timer) {
+        this.timer = timer;
+    }
+
     /**
      * Close all pending futures and make this state holder invalid.
      */
-    private synchronized void onHangup() {
-        if (running) {
+    private void onHangup() {
+        List<CompletableFuture<T>> futures;
+        synchronized (this) {
+            if (!running) { return; }
             running = false;
-            pendingFutures.forEach((k, v) -> v.completeExceptionally(new EOFException()));
+            futures = new ArrayList<>(pendingFutures.values());
             pendingFutures.clear();
         }
+        for (CompletableFuture<T> future : futures) {
+            future.completeExceptionally(new EOFException());
+        }
     }
 
     /**
-     * Create a new completable future for the given id.
+     * Create a new completable future for the given id. If the future is not completed within the given timeout, it
+     * is completed exceptionally with a {@link TimeoutException} and the request is evicted. Cancelling the returned
+     * future evicts the request as well.
+     *
+     * @param timeout The timeout, or a value {@code <= 0} for no timeout.
      */
-    CompletableFuture<T> registerPending(int serial) {
+    CompletableFuture<T> registerPending(int serial, long timeout, TimeUnit unit) {
         CompletableFuture<T> future = new CompletableFuture<>();
         synchronized (this) {
             if (!running) { throw new IllegalStateException("Already hung up"); }
             CompletableFuture<T> oldFuture = pendingFutures.putIfAbsent(serial, future);
             if (oldFuture != null) { throw new IllegalArgumentException("Duplicate serial " + serial); }
         }
+
+        Timeout timeoutHandle = null;
+        if (timeout > 0) {
+            timeoutHandle = timer.newTimeout(t -> future.completeExceptionally(new TimeoutException(
+                    "Request " + serial + " timed out after " + unit.toMillis(timeout) + "ms")), timeout, unit);
+        }
+        Timeout finalTimeoutHandle = timeoutHandle;
+        future.whenComplete((value, error) -> {
+            if (finalTimeoutHandle != null) {
+                finalTimeoutHandle.cancel();
+            }
+            // successful completion already removed the entry, exceptional completion (timeout, cancellation) did
+            // not.
+            if (error != null) {
+                evict(serial, future);
+            }
+        });
         return future;
     }
 
+    private synchronized void evict(int serial, CompletableFuture<T> future) {
+        pendingFutures.remove(serial, future);
+    }
+
     /**
      * Complete a request state for the given id if it's still pending.
      */
-    synchronized void complete(int serial, T value) {
-        CompletableFuture<T> future = pendingFutures.remove(serial);
+    void complete(int serial, T value) {
+        CompletableFuture<T> future;
+        synchronized (this) {
+            future = pendingFutures.remove(serial);
+        }
         if (future != null) {
             future.complete(value);
         }
@@ -64,6 +122,13 @@ class ChannelRequestStateHolder<T> {
         return pendingFutures.containsKey(serial);
     }
 
+    /**
+     * @return The number of requests that are still awaiting a reply.
+     */
+    synchronized int getPendingCount() {
+        return pendingFutures.size();
+    }
+
     /**
      * Return a future listener that will invoke {@link #onHangup()} when called. This listener will not hold a strong
      * reference to this state holder.
@@ -6,79 +6,110 @@
 
 package at.yawk.dbus.client.request;
 
+import at.yawk.dbus.protocol.CompiledMatchRule;
 import at.yawk.dbus.protocol.DbusMessage;
 import at.yawk.dbus.protocol.MatchRule;
-import java.util.ArrayList;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.NameOwnerResolver;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
 
 /**
+ * Registry of message listeners by match rule.
+ *
+ * Registration is rare compared to dispatch, so dispatch never takes a lock: the rule index can be read while it is
+ * being modified, and the listener list of each rule is copy-on-write. Changes are serialized and only touch the entry
+ * of their own rule, so adding or removing a listener does not depend on the number of other listeners. A message is
+ * delivered to every listener whose registration completed before dispatch started, and to no listener whose removal
+ * completed before dispatch started.
+ *
  * @author yawkat
  */
 @Slf4j
+@ThreadSafe
 class ListenerHolder {
-    @GuardedBy("lock")
-    private final Map<MatchRule, List<Consumer<DbusMessage>>> listeners = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Resolves well-known sender names of rules to the unique names the bus puts into messages.
+     */
+    private final NameOwnerResolver owners;
+    @GuardedBy("this")
+    private final Map<MatchRule, RuleListeners> rules = new HashMap<>();
+    /**
+     * Modified while holding the lock on {@code this}, read without it.
+     */
+    private final MatchRuleIndex<RuleListeners> index = new MatchRuleIndex<>();
+
+    ListenerHolder() {
+        this(NameOwnerResolver.NONE);
+    }
+
+    ListenerHolder(NameOwnerResolver owners) {
+        this.owners = owners;
+    }
 
     /**
      * @return {@code true} if this was the first listener of this rule and the rule should be registered.
      */
-    public boolean addListener(MatchRule rule, Consumer<DbusMessage> listener) {
-        lock.writeLock().lock();
-        try {
-            List<Consumer<DbusMessage>> forRule = listeners.computeIfAbsent(rule, r -> new ArrayList<>());
-            forRule.add(listener);
-            return forRule.size() == 1;
-        } finally {
-            lock.writeLock().unlock();
+    public synchronized boolean addListener(MatchRule rule, Consumer<DbusMessage> listener) {
+        RuleListeners forRule = rules.get(rule);
+        if (forRule != null) {
+            forRule.listeners.add(listener);
+            return false;
         }
+        forRule = new RuleListeners(rule.compile());
+        forRule.listeners.add(listener);
+        rules.put(rule, forRule);
+        index.add(rule, forRule);
+        return true;
     }
 
     /**
      * @return {@code true} if this was the last listener of this rule and the rule should be unregistered.
      */
-    public boolean removeListener(MatchRule rule, Consumer<DbusMessage> listener) {
-        lock.writeLock().lock();
-        try {
-            List<Consumer<DbusMessage>> consumers = listeners.get(rule);
-            if (consumers != null &&
-                consumers.remove(listener) &&
-                consumers.isEmpty()) {
-
-                listeners.remove(rule);
-                return true;
-            } else {
-                return false;
-            }
-        } finally {
-            lock.writeLock().unlock();
-        }
+    public synchronized boolean removeListener(MatchRule rule, Consumer<DbusMessage> listener) {
+        RuleListeners forRule = rules.get(rule);
+        if (forRule == null || !forRule.listeners.remove(listener)) { return false; }
+        if (!forRule.listeners.isEmpty()) { return false; }
+        rules.remove(rule);
+        index.remove(rule, forRule);
+        return true;
     }
 
     public void post(DbusMessage message) {
         log.trace("recv {}", message);
-        lock.readLock().lock();
-        try {
-            listeners.forEach((rule, listeners) -> {
-                if (rule.matches(message)) {
-                    for (Consumer<DbusMessage> listener : listeners) {
-                        try {
-                            listener.accept(message);
-                        } catch (Throwable t) {
-                            log.error("Exception in listener", t);
-                        }
+        index.forEachCandidate(message, forRule -> {
+            if (forRule.predicate.matches(message, owners)) {
+                for (Consumer<DbusMessage> listener : forRule.listeners) {
+                    try {
+                        listener.accept(message);
+                    } catch (Throwable t) {
+                        log.error("Exception in listener", t);
                     }
                 }
-            });
-        } finally {
-            lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Check whether any listener may be interested in the message with the given header, i.e. whether its body needs
+     * to be decoded for {@link #post(DbusMessage)}.
+     */
+    public boolean wantsMessage(MessageHeader header) {
+        return index.anyCandidate(header, forRule -> forRule.predicate.matchesHeader(header, owners));
+    }
+
+    private static final class RuleListeners {
+        final CompiledMatchRule predicate;
+        final List<Consumer<DbusMessage>> listeners = new CopyOnWriteArrayList<>();
+
+        RuleListeners(CompiledMatchRule predicate) {
+            this.predicate = predicate;
         }
     }
 }
@@ -0,0 +1,235 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageBody;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/**
+ * Index of values by the exact-match fields of a {@link MatchRule} (message type, interface, member and path).
+ *
+ * Every rule is stored under a key containing the fields it specifies, with {@code null} for the fields it leaves
+ * open. The set of fields a rule specifies is its <i>shape</i>. To find the candidates for a message, one lookup is
+ * done per shape that is present in the index, so the cost does not depend on the number of rules.
+ *
+ * Rules with a {@code path_namespace} are instead stored in an {@link ObjectPathTrie} by namespace, and rules with an
+ * {@code arg0namespace} are stored in a trie below their key, so that many namespace rules that only differ in their
+ * namespace do not end up in a linear list. Criteria that are not covered by the index (sender, arguments, the
+ * exact-match fields of namespace rules) still need to be checked on the returned candidates.
+ *
+ * Lookups may run concurrently with {@link #add} and {@link #remove} and never block, but modifications must not run
+ * concurrently with each other. A modification only touches the bucket or trie path of its own rule, and a lookup sees
+ * it either completely or not at all.
+ *
+ * @author yawkat
+ */
+class MatchRuleIndex<V> {
+    private static final int SHAPE_TYPE = 1;
+    private static final int SHAPE_INTERFACE = 1 << 1;
+    private static final int SHAPE_MEMBER = 1 << 2;
+    private static final int SHAPE_PATH = 1 << 3;
+    private static final int SHAPE_COUNT = 1 << 4;
+
+    private final Map<Key, Bucket<V>> entries = new ConcurrentHashMap<>();
+    /**
+     * Number of keys per shape. Only accessed by modifications.
+     */
+    private final int[] shapeCounts = new int[SHAPE_COUNT];
+    /**
+     * The shapes that have at least one key, in ascending order.
+     */
+    private volatile int[] presentShapes = new int[0];
+
+    private final ObjectPathTrie<V> pathNamespaces = new ObjectPathTrie<>();
+
+    void add(MatchRule rule, V value) {
+        ObjectPathObject pathNamespace = rule.getPathNamespace();
+        if (pathNamespace != null) {
+            pathNamespaces.add(pathNamespace, value);
+            return;
+        }
+
+        Key key = Key.of(rule);
+        Bucket<V> bucket = entries.get(key);
+        if (bucket == null) {
+            // fill the bucket before publishing it
+            bucket = new Bucket<>();
+            bucket.add(rule, value);
+            entries.put(key, bucket);
+            if (shapeCounts[key.shape()]++ == 0) {
+                updatePresentShapes();
+            }
+        } else {
+            bucket.add(rule, value);
+        }
+    }
+
+    void remove(MatchRule rule, V value) {
+        ObjectPathObject pathNamespace = rule.getPathNamespace();
+        if (pathNamespace != null) {
+            pathNamespaces.remove(pathNamespace, value);
+            return;
+        }
+
+        Key key = Key.of(rule);
+        Bucket<V> bucket = entries.get(key);
+        if (bucket != null && bucket.remove(rule, value) && bucket.isEmpty()) {
+            entries.remove(key);
+            if (--shapeCounts[key.shape()] == 0) {
+                updatePresentShapes();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty() && pathNamespaces.isEmpty();
+    }
+
+    /**
+     * Pass every value whose rule may match the given message to the given action.
+     */
+    void forEachCandidate(DbusMessage message, Consumer<? super V> action) {
+        MessageBody body = message.getBody();
+        DbusObject arg0 = body == null || body.getArguments() == null || body.getArguments().isEmpty() ?
+                null : body.getArguments().get(0);
+        visit(message.getHeader(), arg0 instanceof ObjectPathObject ? (ObjectPathObject) arg0 : null, false, v -> {
+            action.accept(v);
+            return false;
+        });
+    }
+
+    /**
+     * Test the values whose rule may match a message with the given header until one passes the given predicate.
+     * Since the body is not known yet, all {@code arg0namespace} rules with matching header keys are tested.
+     *
+     * @return {@code true} if any candidate passed the predicate.
+     */
+    boolean anyCandidate(MessageHeader header, Predicate<? super V> predicate) {
+        return visit(header, null, true, predicate);
+    }
+
+    /**
+     * @param headerOnly {@code true} if the body is unknown and {@code arg0} should be ignored.
+     */
+    private boolean visit(MessageHeader header, @Nullable ObjectPathObject arg0, boolean headerOnly,
+                          Predicate<? super V> predicate) {
+        MessageType type = header.getMessageType();
+        Map<HeaderField, DbusObject> fields = header.getHeaderFields();
+        String interfaceName = stringField(fields, HeaderField.INTERFACE);
+        String member = stringField(fields, HeaderField.MEMBER);
+        DbusObject path = fields == null ? null : fields.get(HeaderField.PATH);
+
+        for (int shape : presentShapes) {
+            if ((shape & SHAPE_TYPE) != 0 && type == null) { continue; }
+            if ((shape & SHAPE_INTERFACE) != 0 && interfaceName == null) { continue; }
+            if ((shape & SHAPE_MEMBER) != 0 && member == null) { continue; }
+            if ((shape & SHAPE_PATH) != 0 && path == null) { continue; }
+
+            Bucket<V> bucket = entries.get(new Key(
+                    (shape & SHAPE_TYPE) != 0 ? type : null,
+                    (shape & SHAPE_INTERFACE) != 0 ? interfaceName : null,
+                    (shape & SHAPE_MEMBER) != 0 ? member : null,
+                    (shape & SHAPE_PATH) != 0 ? path : null
+            ));
+            if (bucket != null) {
+                for (V value : bucket.values) {
+                    if (predicate.test(value)) { return true; }
+                }
+                if (headerOnly) {
+                    if (bucket.arg0Namespaces.any(predicate)) { return true; }
+                } else if (arg0 != null) {
+                    if (bucket.arg0Namespaces.anyCovering(arg0, predicate)) { return true; }
+                }
+            }
+        }
+
+        return path instanceof ObjectPathObject &&
+               pathNamespaces.anyCovering((ObjectPathObject) path, predicate);
+    }
+
+    private void updatePresentShapes() {
+        int count = 0;
+        for (int shapeCount : shapeCounts) {
+            if (shapeCount != 0) { count++; }
+        }
+        int[] shapes = new int[count];
+        int i = 0;
+        for (int shape = 0; shape < SHAPE_COUNT; shape++) {
+            if (shapeCounts[shape] != 0) { shapes[i++] = shape; }
+        }
+        presentShapes = shapes;
+    }
+
+    @Nullable
+    private static String stringField(@Nullable Map<HeaderField, DbusObject> fields, HeaderField field) {
+        if (fields == null) { return null; }
+        DbusObject object = fields.get(field);
+        return object == null ? null : object.stringValue();
+    }
+
+    @Value
+    private static class Key {
+        @Nullable MessageType type;
+        @Nullable String interfaceName;
+        @Nullable String member;
+        @Nullable DbusObject path;
+
+        static Key of(MatchRule rule) {
+            return new Key(rule.getMessageType(), rule.getInterfaceName(), rule.getMember(), rule.getPath());
+        }
+
+        int shape() {
+            int shape = 0;
+            if (type != null) { shape |= SHAPE_TYPE; }
+            if (interfaceName != null) { shape |= SHAPE_INTERFACE; }
+            if (member != null) { shape |= SHAPE_MEMBER; }
+            if (path != null) { shape |= SHAPE_PATH; }
+            return shape;
+        }
+    }
+
+    private static final class Bucket<V> {
+        final List<V> values = new CopyOnWriteArrayList<>();
+        final ObjectPathTrie<V> arg0Namespaces = new ObjectPathTrie<>();
+
+        void add(MatchRule rule, V value) {
+            ObjectPathObject arg0Namespace = rule.getArg0Namespace();
+            if (arg0Namespace == null) {
+                values.add(value);
+            } else {
+                arg0Namespaces.add(arg0Namespace, value);
+            }
+        }
+
+        boolean remove(MatchRule rule, V value) {
+            ObjectPathObject arg0Namespace = rule.getArg0Namespace();
+            if (arg0Namespace == null) {
+                return values.remove(value);
+            } else {
+                return arg0Namespaces.remove(arg0Namespace, value);
+            }
+        }
+
+        boolean isEmpty() {
+            return values.isEmpty() && arg0Namespaces.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.NameOwnerResolver;
+import at.yawk.dbus.protocol.object.DbusObject;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Cache of the owners of well-known bus names.
+ *
+ * A name is tracked from its first lookup on: the cache subscribes to {@code NameOwnerChanged} for that name and then
+ * asks the bus with {@code GetNameOwner}. From then on the owner is kept up to date from the signals, and lookups are
+ * served locally. Tracked names stay tracked for the lifetime of the connection. Other components that need to react
+ * to owner changes can {@linkplain #listen(String, Consumer) listen} here instead of subscribing to the signal again.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@Slf4j
+class NameOwnerCache implements NameOwnerResolver {
+    static final String BUS_NAME = "org.freedesktop.DBus";
+    /**
+     * Owner of a name that has no owner, as in {@code NameOwnerChanged}.
+     */
+    static final String NO_OWNER = "";
+    private static final String NAME_HAS_NO_OWNER = "org.freedesktop.DBus.Error.NameHasNoOwner";
+
+    private final BiConsumer<MatchRule, Consumer<List<DbusObject>>> subscribe;
+    private final Function<String, CompletableFuture<Response>> getNameOwner;
+
+    private final ConcurrentMap<String, CompletableFuture<String>> owners = new ConcurrentHashMap<>();
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * @param subscribe    Register a listener for a match rule.
+     * @param getNameOwner Call {@code GetNameOwner} for the given name.
+     */
+    NameOwnerCache(BiConsumer<MatchRule, Consumer<List<DbusObject>>> subscribe,
+                   Function<String, CompletableFuture<Response>> getNameOwner) {
+        this.subscribe = subscribe;
+        this.getNameOwner = getNameOwner;
+    }
+
+    static boolean isTrackable(String name) {
+        // unique names are their own owner, and the bus sends with its well-known name
+        return !name.startsWith(":") && !name.equals(BUS_NAME);
+    }
+
+    /**
+     * Start tracking the given name if it is not tracked yet.
+     *
+     * @return A future of the current owner, or {@link #NO_OWNER}.
+     */
+    CompletableFuture<String> track(String name) {
+        CompletableFuture<String> future = owners.get(name);
+        if (future != null) { return future; }
+        CompletableFuture<String> created = new CompletableFuture<>();
+        future = owners.putIfAbsent(name, created);
+        if (future != null) { return future; }
+
+        log.trace("Tracking owner of {}", name);
+        // subscribe first so no change between the query and the subscription is missed
+        if (subscribed.add(name)) {
+            subscribe.accept(ownerChangedRule(name), this::onNameOwnerChanged);
+        }
+
+        getNameOwner.apply(name).whenComplete((response, error) -> {
+            if (error == null && response.isError()) {
+                if (NAME_HAS_NO_OWNER.equals(response.getErrorName())) {
+                    created.complete(NO_OWNER);
+                    return;
+                }
+                error = new IllegalStateException("GetNameOwner failed: " + response.getErrorName());
+            }
+            if (error != null) {
+                // drop the entry so the next lookup asks again, the subscription stays
+                owners.remove(name, created);
+                created.completeExceptionally(error);
+            } else {
+                // no-op if a signal already delivered a newer owner
+                created.complete(response.getReply().get(0).stringValue());
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Call the given listener whenever the owner of the given name changes, and start tracking the name if it is not
+     * tracked yet.
+     *
+     * @param listener Receives the unique name of the new owner, or {@code null} if the name lost its owner.
+     * @return A runnable that, when called, will unregister this listener.
+     */
+    Runnable listen(String name, Consumer<String> listener) {
+        Consumer<String> wrapped = owner -> listener.accept(owner.equals(NO_OWNER) ? null : owner);
+        listeners.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>()).add(wrapped);
+        track(name);
+        return () -> listeners.get(name).remove(wrapped);
+    }
+
+    /**
+     * The rule for {@code NameOwnerChanged} of the given name.
+     */
+    static MatchRule ownerChangedRule(String name) {
+        MatchRule rule = new MatchRule();
+        rule.setSender(BUS_NAME);
+        rule.setInterfaceName(BUS_NAME);
+        rule.setMember("NameOwnerChanged");
+        rule.setArguments(Collections.singletonMap(0, name));
+        return rule;
+    }
+
+    /**
+     * @return The new owner from a {@code NameOwnerChanged} body, or {@code null} if the body is malformed.
+     */
+    @Nullable
+    static String newOwner(List<DbusObject> body) {
+        // (s name, s old_owner, s new_owner)
+        return body.size() < 3 ? null : body.get(2).stringValue();
+    }
+
+    private void onNameOwnerChanged(List<DbusObject> body) {
+        String newOwner = newOwner(body);
+        if (newOwner == null) { return; }
+        String name = body.get(0).stringValue();
+        log.trace("Owner of {} changed to '{}'", name, newOwner);
+        CompletableFuture<String> future = owners.get(name);
+        if (future == null || !future.complete(newOwner)) {
+            owners.put(name, CompletableFuture.completedFuture(newOwner));
+        }
+        List<Consumer<String>> forName = listeners.get(name);
+        if (forName != null) {
+            for (Consumer<String> listener : forName) {
+                try {
+                    listener.accept(newOwner);
+                } catch (Throwable t) {
+                    log.error("Exception in name owner listener", t);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getOwner(String name) {
+        CompletableFuture<String> future = owners.get(name);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) { return null; }
+        String owner = future.join();
+        return owner.equals(NO_OWNER) ? null : owner;
+    }
+}
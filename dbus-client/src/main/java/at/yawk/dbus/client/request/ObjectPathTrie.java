@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import io.netty.util.AsciiString;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Trie of values by object path namespace, with one node per path element.
+ *
+ * Looking up the namespaces that cover a path walks the path once, so the cost is linear in the path depth and does
+ * not depend on the number of namespaces stored.
+ *
+ * Lookups may run concurrently with modifications and never block, but modifications must not run concurrently with
+ * each other. A lookup sees each modification either completely or not at all.
+ *
+ * @author yawkat
+ */
+class ObjectPathTrie<V> {
+    private final Node<V> root = new Node<>();
+    private int size = 0;
+
+    void add(ObjectPathObject namespace, V value) {
+        Node<V> node = root;
+        AsciiString sequence = AsciiString.of(namespace.getSequence());
+        int start = 1;
+        while (start < sequence.length()) {
+            int end = endOfElement(sequence, start);
+            AsciiString element = sequence.subSequence(start, end, false);
+            Map<AsciiString, Node<V>> children = node.children;
+            if (children == null) {
+                node.children = children = new ConcurrentHashMap<>();
+            }
+            node = children.computeIfAbsent(element, e -> new Node<>());
+            start = end + 1;
+        }
+        List<V> values = node.values;
+        if (values == null) {
+            node.values = values = new CopyOnWriteArrayList<>();
+        }
+        values.add(value);
+        size++;
+    }
+
+    /**
+     * @return {@code true} if the value was present.
+     */
+    boolean remove(ObjectPathObject namespace, V value) {
+        Deque<Node<V>> parents = new ArrayDeque<>();
+        Deque<AsciiString> elements = new ArrayDeque<>();
+        Node<V> node = root;
+        AsciiString sequence = AsciiString.of(namespace.getSequence());
+        int start = 1;
+        while (start < sequence.length()) {
+            int end = endOfElement(sequence, start);
+            AsciiString element = sequence.subSequence(start, end, false);
+            Map<AsciiString, Node<V>> children = node.children;
+            Node<V> child = children == null ? null : children.get(element);
+            if (child == null) { return false; }
+            parents.push(node);
+            elements.push(element);
+            node = child;
+            start = end + 1;
+        }
+        List<V> values = node.values;
+        if (values == null || !values.remove(value)) { return false; }
+        size--;
+        if (values.isEmpty()) {
+            node.values = null;
+        }
+
+        // prune nodes that became empty. Lookups that already hold a pruned node still see it, but it is empty.
+        while (!parents.isEmpty() && node.isEmpty()) {
+            Node<V> parent = parents.pop();
+            Map<AsciiString, Node<V>> children = parent.children;
+            children.remove(elements.pop());
+            if (children.isEmpty()) {
+                parent.children = null;
+            }
+            node = parent;
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Test the values whose namespace is equal to or an ancestor of the given path until one passes the given
+     * predicate.
+     *
+     * @return {@code true} if any value passed the predicate.
+     */
+    boolean anyCovering(ObjectPathObject path, Predicate<? super V> predicate) {
+        Node<V> node = root;
+        AsciiString sequence = AsciiString.of(path.getSequence());
+        int start = 1;
+        while (true) {
+            if (anyValue(node, predicate)) { return true; }
+            Map<AsciiString, Node<V>> children = node.children;
+            if (start >= sequence.length() || children == null) { return false; }
+            int end = endOfElement(sequence, start);
+            node = children.get(sequence.subSequence(start, end, false));
+            if (node == null) { return false; }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Test all values until one passes the given predicate.
+     *
+     * @return {@code true} if any value passed the predicate.
+     */
+    boolean any(Predicate<? super V> predicate) {
+        return any(root, predicate);
+    }
+
+    private static <V> boolean any(Node<V> node, Predicate<? super V> predicate) {
+        if (anyValue(node, predicate)) { return true; }
+        Map<AsciiString, Node<V>> children = node.children;
+        if (children != null) {
+            for (Node<V> child : children.values()) {
+                if (any(child, predicate)) { return true; }
+            }
+        }
+        return false;
+    }
+
+    private static <V> boolean anyValue(Node<V> node, Predicate<? super V> predicate) {
+        List<V> values = node.values;
+        if (values != null) {
+            for (V value : values) {
+                if (predicate.test(value)) { return true; }
+            }
+        }
+        return false;
+    }
+
+    private static int endOfElement(AsciiString sequence, int start) {
+        int end = sequence.indexOf('/', start);
+        return end == -1 ? sequence.length() : end;
+    }
+
+    private static final class Node<V> {
+        @Nullable volatile List<V> values;
+        @Nullable volatile Map<AsciiString, Node<V>> children;
+
+        boolean isEmpty() {
+            return values == null && children == null;
+        }
+    }
+}
@@ -6,6 +6,7 @@
 
 package at.yawk.dbus.client.request;
 
+import at.yawk.dbus.protocol.HeaderFieldTemplate;
 import at.yawk.dbus.protocol.MessageType;
 import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.object.ObjectPathObject;
@@ -31,4 +32,13 @@ public interface Request {
     StringObject getDestination();
 
     List<DbusObject> getArguments();
+
+    /**
+     * Template of header fields that are shared by all requests of this call site. If present, it must contain the
+     * path, interface, member and destination of this request, and may contain the signature of its arguments.
+     */
+    @Nullable
+    default HeaderFieldTemplate getHeaderFieldTemplate() {
+        return null;
+    }
 }
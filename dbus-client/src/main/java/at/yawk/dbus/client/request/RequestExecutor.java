@@ -9,7 +9,9 @@ package at.yawk.dbus.client.request;
 import at.yawk.dbus.client.error.RemoteException;
 import at.yawk.dbus.protocol.MatchRule;
 import at.yawk.dbus.protocol.object.DbusObject;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -27,10 +29,75 @@ public interface RequestExecutor {
      */
     Response execute(Request request, long timeout, TimeUnit unit) throws Exception;
 
+    /**
+     * Submit all given requests without waiting for replies in between, so that their round trips overlap. Requests
+     * use the default timeout.
+     *
+     * The default implementation executes the requests one after another.
+     *
+     * @return One future per request, in request order, that completes with its response as soon as it arrives.
+     */
+    default List<CompletableFuture<Response>> executeBatch(List<? extends Request> requests) {
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            try {
+                future.complete(execute(request));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    /**
+     * Like {@link #executeBatch(List)}, but aggregate the responses.
+     *
+     * @return A future of all responses in request order. It completes once every reply has arrived, or exceptionally
+     * as soon as any request fails. Error replies are not failures, they are included in the list.
+     */
+    default CompletableFuture<List<Response>> executeAll(List<? extends Request> requests) {
+        List<CompletableFuture<Response>> futures = executeBatch(requests);
+        CompletableFuture<List<Response>> all = new CompletableFuture<>();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenRun(() -> {
+            List<Response> responses = new ArrayList<>(futures.size());
+            for (CompletableFuture<Response> future : futures) {
+                responses.add(future.join());
+            }
+            all.complete(responses);
+        });
+        for (CompletableFuture<Response> future : futures) {
+            future.whenComplete((response, error) -> {
+                if (error != null) { all.completeExceptionally(error); }
+            });
+        }
+        return all;
+    }
+
     /**
      * Add a listener for messages of the given rule.
      *
      * @return A runnable that, when called, will unregister this listener.
      */
     Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener) throws RemoteException;
+
+    /**
+     * Add a listener for changes of the owner of the given bus name. Unique names and the bus itself never get a new
+     * owner, so nothing is registered for them.
+     *
+     * The default implementation listens to {@code NameOwnerChanged} of the name.
+     *
+     * @param listener Receives the unique name of the new owner, or {@code null} if the name lost its owner.
+     * @return A runnable that, when called, will unregister this listener.
+     */
+    default Runnable listenNameOwner(String bus, String name, Consumer<String> listener) throws RemoteException {
+        if (!NameOwnerCache.isTrackable(name)) { return () -> {}; }
+        return listen(bus, NameOwnerCache.ownerChangedRule(name), body -> {
+            String owner = NameOwnerCache.newOwner(body);
+            if (owner != null) {
+                listener.accept(owner.equals(NameOwnerCache.NO_OWNER) ? null : owner);
+            }
+        });
+    }
 }
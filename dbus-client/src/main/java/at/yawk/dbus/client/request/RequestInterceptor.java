@@ -0,0 +1,89 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hook around the execution of method calls. Interceptors form a chain: each one gets the request and decides whether
+ * and with which request to {@linkplain Chain#proceed(Request) proceed}, so it can observe the call, replace the
+ * request, or answer it without sending anything (e.g. from a cache).
+ *
+ * Interceptors run on the calling thread, before response validation, so error replies are passed through as
+ * responses and only transport failures and timeouts are thrown. Because they wait for the response, a batch can only
+ * pass through them one request at a time; interceptors that should keep batches pipelined implement {@link
+ * AsyncRequestInterceptor}.
+ *
+ * @author yawkat
+ */
+@FunctionalInterface
+public interface RequestInterceptor {
+    Response intercept(Request request, Chain chain) throws Exception;
+
+    /**
+     * Create an interceptor that reports every call to the given listener. It is an {@link AsyncRequestInterceptor},
+     * so it keeps batches pipelined; the completion methods of the listener are then called on the thread that
+     * completes the call.
+     */
+    static RequestInterceptor listening(RequestListener listener) {
+        return new AsyncRequestInterceptor() {
+            @Override
+            public Response intercept(Request request, Chain chain) throws Exception {
+                listener.beforeSend(request);
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = chain.proceed(request);
+                } catch (TimeoutException e) {
+                    listener.onTimeout(request, System.nanoTime() - start);
+                    throw e;
+                } catch (Exception e) {
+                    listener.onError(request, e, System.nanoTime() - start);
+                    throw e;
+                }
+                listener.onReply(request, response, System.nanoTime() - start);
+                return response;
+            }
+
+            @Override
+            public CompletableFuture<Response> interceptAsync(Request request, AsyncChain chain) throws Exception {
+                listener.beforeSend(request);
+                long start = System.nanoTime();
+                CompletableFuture<Response> future;
+                try {
+                    future = chain.proceed(request);
+                } catch (Exception e) {
+                    listener.onError(request, e, System.nanoTime() - start);
+                    throw e;
+                }
+                return future.whenComplete((response, error) -> {
+                    long nanos = System.nanoTime() - start;
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause == null) {
+                        listener.onReply(request, response, nanos);
+                    } else if (cause instanceof TimeoutException) {
+                        listener.onTimeout(request, nanos);
+                    } else {
+                        listener.onError(request, cause instanceof Exception ?
+                                (Exception) cause : new ExecutionException(cause), nanos);
+                    }
+                });
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface Chain {
+        /**
+         * Pass the request to the next interceptor, or send it if this is the last one.
+         */
+        Response proceed(Request request) throws Exception;
+    }
+}
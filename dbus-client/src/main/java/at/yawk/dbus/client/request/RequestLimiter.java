@@ -0,0 +1,162 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Bounds the number of requests of a channel that are awaiting a reply, both in total and per destination.
+ *
+ * Requests over the limit either fail immediately or wait in a FIFO queue. When a request completes, the queue is
+ * scanned in order and every waiting request that fits is sent, so a request whose destination is saturated does not
+ * hold up requests to other destinations behind it.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+class RequestLimiter {
+    /**
+     * Limiter that never limits.
+     */
+    static final RequestLimiter UNLIMITED = new RequestLimiter(0, 0, false);
+
+    private final int maxInFlight;
+    private final int maxInFlightPerDestination;
+    private final boolean failFast;
+
+    @GuardedBy("this")
+    private int inFlight = 0;
+    @GuardedBy("this")
+    private final Map<String, Integer> inFlightByDestination = new HashMap<>();
+    @GuardedBy("this")
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+
+    /**
+     * @param maxInFlight               Maximum requests in flight, or {@code <= 0} for no limit.
+     * @param maxInFlightPerDestination Maximum requests in flight to a single destination, or {@code <= 0} for no
+     *                                  limit.
+     * @param failFast                  Whether to fail requests over the limit instead of queueing them.
+     */
+    RequestLimiter(int maxInFlight, int maxInFlightPerDestination, boolean failFast) {
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerDestination = maxInFlightPerDestination;
+        this.failFast = failFast;
+    }
+
+    private boolean isUnlimited() {
+        return maxInFlight <= 0 && maxInFlightPerDestination <= 0;
+    }
+
+    /**
+     * Acquire a slot for a request. The slot is released when the given future completes.
+     *
+     * @param future The reply future of the request.
+     * @param send   Sends the request if it had to wait for a slot.
+     * @return {@code true} if the request got a slot and should be sent right away by the caller, {@code false} if it
+     * was queued (and {@code send} will be called later) or rejected (and {@code future} was failed).
+     */
+    boolean acquire(@Nullable String destination, CompletableFuture<?> future, Runnable send) {
+        if (isUnlimited()) { return true; }
+
+        boolean started;
+        synchronized (this) {
+            // waiters that fit are started as soon as a slot frees, so anything that fits now is not overtaking
+            started = fits(destination);
+            if (started) {
+                start(destination);
+            } else if (!failFast) {
+                queue.add(new Waiter(destination, future, send));
+                return false;
+            }
+        }
+        if (started) {
+            future.whenComplete((v, e) -> release(destination));
+            return true;
+        }
+        future.completeExceptionally(new RejectedExecutionException(
+                "Too many requests in flight" + (destination == null ? "" : " to " + destination)));
+        return false;
+    }
+
+    /**
+     * @return The number of requests that are waiting for a slot.
+     */
+    synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    @GuardedBy("this")
+    private boolean fits(@Nullable String destination) {
+        if (maxInFlight > 0 && inFlight >= maxInFlight) { return false; }
+        if (maxInFlightPerDestination > 0 && destination != null) {
+            Integer count = inFlightByDestination.get(destination);
+            if (count != null && count >= maxInFlightPerDestination) { return false; }
+        }
+        return true;
+    }
+
+    @GuardedBy("this")
+    private void start(@Nullable String destination) {
+        inFlight++;
+        if (destination != null) {
+            inFlightByDestination.merge(destination, 1, Integer::sum);
+        }
+    }
+
+    private void release(@Nullable String destination) {
+        List<Waiter> started = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (destination != null) {
+                inFlightByDestination.computeIfPresent(destination, (k, count) -> count == 1 ? null : count - 1);
+            }
+
+            for (Iterator<Waiter> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if (maxInFlight > 0 && inFlight >= maxInFlight) { break; }
+                Waiter waiter = iterator.next();
+                if (waiter.future.isDone()) {
+                    // timed out or cancelled while waiting
+                    iterator.remove();
+                } else if (fits(waiter.destination)) {
+                    iterator.remove();
+                    start(waiter.destination);
+                    started.add(waiter);
+                }
+            }
+        }
+        // outside the lock: completion listeners may run inline, and the channel write may be slow
+        for (Waiter waiter : started) {
+            waiter.future.whenComplete((v, e) -> release(waiter.destination));
+            if (!waiter.future.isDone()) {
+                waiter.send.run();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        @Nullable final String destination;
+        final CompletableFuture<?> future;
+        final Runnable send;
+
+        Waiter(@Nullable String destination, CompletableFuture<?> future, Runnable send) {
+            this.destination = destination;
+            this.future = future;
+            this.send = send;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+/**
+ * Observer of method calls, installed with {@link RequestInterceptor#listening(RequestListener)}. Exactly one of the
+ * completion methods is called for every call that was passed to {@link #beforeSend(Request)}.
+ *
+ * @author yawkat
+ */
+public interface RequestListener {
+    default void beforeSend(Request request) {}
+
+    /**
+     * A reply arrived. This includes error replies.
+     */
+    default void onReply(Request request, Response response, long nanos) {}
+
+    /**
+     * The call failed without a reply, e.g. because the connection was closed.
+     */
+    default void onError(Request request, Exception error, long nanos) {}
+
+    default void onTimeout(Request request, long nanos) {}
+}
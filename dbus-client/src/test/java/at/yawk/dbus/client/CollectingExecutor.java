@@ -30,6 +30,8 @@ import org.testng.internal.EclipseInterface;
 class CollectingExecutor implements RequestExecutor {
     private final Function<Request, Response> delegate;
     private final List<Request> requests = new ArrayList<>();
+    final List<Consumer<List<DbusObject>>> listeners = new ArrayList<>();
+    final List<MatchRule> rules = new ArrayList<>();
 
     void assertEquals(Request... requests) {
         boolean match = requests.length == this.requests.size();
@@ -63,6 +65,12 @@ class CollectingExecutor implements RequestExecutor {
 
     @Override
     public Runnable listen(String bus, MatchRule rule, Consumer<List<DbusObject>> listener) throws RemoteException {
-        throw new UnsupportedOperationException();
+        listeners.add(listener);
+        rules.add(rule);
+        return () -> {
+            int i = listeners.indexOf(listener);
+            listeners.remove(i);
+            rules.remove(i);
+        };
     }
 }
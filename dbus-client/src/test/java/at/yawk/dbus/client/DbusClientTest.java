@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.DbusChannel;
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.MessageType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class DbusClientTest {
+    @Test
+    public void testBatchWithUnknownBus() throws Exception {
+        DbusClient client = new DbusClient();
+        WritingChannel channel = new WritingChannel();
+        client.addChannel("session", channel);
+
+        List<CompletableFuture<Response>> futures = client.getExecutor().executeBatch(Arrays.asList(
+                request("session", "A"), request("missing", "B"), request("session", "C")));
+
+        // the requests to the known bus are still sent and reach the caller
+        Assert.assertEquals(futures.size(), 3);
+        Assert.assertEquals(channel.written.size(), 2);
+        Assert.assertFalse(futures.get(0).isDone());
+        Assert.assertFalse(futures.get(2).isDone());
+        try {
+            futures.get(1).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NoSuchElementException);
+        }
+        client.close();
+    }
+
+    private static Request request(String bus, String member) {
+        return new RequestImpl()
+                .bus(bus)
+                .type(MessageType.METHOD_CALL)
+                .objectPath("/path")
+                .interfaceName("at.yawk")
+                .destination("org.example")
+                .member(member);
+    }
+
+    private static class WritingChannel implements DbusChannel {
+        final List<DbusMessage> written = new ArrayList<>();
+        private final AtomicInteger nextSerial = new AtomicInteger(1);
+        private final CompletableFuture<?> closeFuture = new CompletableFuture<>();
+
+        @Override
+        public void setMessageConsumer(MessageConsumer consumer) {}
+
+        @Override
+        public int createSerial() {
+            return nextSerial.getAndIncrement();
+        }
+
+        @Override
+        public void write(DbusMessage message) {
+            written.add(message);
+        }
+
+        @Override
+        public void disconnect() {
+            close();
+        }
+
+        @Override
+        public void close() {
+            closeFuture.complete(null);
+        }
+
+        @Override
+        public CompletionStage<?> closeStage() {
+            return closeFuture;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.Request;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.client.request.RequestListener;
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DictObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class InterceptingRequestExecutorTest {
+    private List<String> events;
+    private CollectingExecutor delegate;
+    private InterceptingRequestExecutor executor;
+
+    @BeforeMethod
+    public void setUp() {
+        events = new ArrayList<>();
+        delegate = new CollectingExecutor(request -> Response.success(Collections.emptyList()));
+        executor = new InterceptingRequestExecutor(delegate);
+        executor.addInterceptor((request, chain) -> {
+            events.add("outer " + request.getMember().stringValue());
+            return chain.proceed(request);
+        });
+        executor.addInterceptor((request, chain) -> {
+            events.add("inner " + request.getMember().stringValue());
+            return chain.proceed(request);
+        });
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        executor.execute(request("A"));
+        executor.execute(request("B"), 1, TimeUnit.SECONDS);
+        Assert.assertEquals(events, Arrays.asList("outer A", "inner A", "outer B", "inner B"));
+        delegate.assertEquals(request("A"), request("B"));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<Response> responses = executor.executeAll(Arrays.asList(request("A"), request("B"))).get();
+        Assert.assertEquals(responses.size(), 2);
+        Assert.assertEquals(events, Arrays.asList("outer A", "inner A", "outer B", "inner B"));
+        delegate.assertEquals(request("A"), request("B"));
+    }
+
+    @Test
+    public void testBatchPipelined() throws Exception {
+        List<List<Request>> batches = new ArrayList<>();
+        List<CompletableFuture<Response>> sent = new ArrayList<>();
+        executor = new InterceptingRequestExecutor(new CollectingExecutor(request -> {
+            throw new AssertionError("Batched requests should not be executed one by one");
+        }) {
+            @Override
+            public List<CompletableFuture<Response>> executeBatch(List<? extends Request> requests) {
+                batches.add(new ArrayList<>(requests));
+                List<CompletableFuture<Response>> futures = new ArrayList<>();
+                for (Request ignored : requests) {
+                    futures.add(new CompletableFuture<>());
+                }
+                sent.addAll(futures);
+                return futures;
+            }
+        });
+        executor.addInterceptor(RequestInterceptor.listening(new RequestListener() {
+            @Override
+            public void beforeSend(Request request) {
+                events.add("before " + request.getMember().stringValue());
+            }
+
+            @Override
+            public void onReply(Request request, Response response, long nanos) {
+                events.add("reply " + request.getMember().stringValue());
+            }
+
+            @Override
+            public void onError(Request request, Exception error, long nanos) {
+                events.add("error " + request.getMember().stringValue());
+            }
+
+            @Override
+            public void onTimeout(Request request, long nanos) {
+                events.add("timeout " + request.getMember().stringValue());
+            }
+        }));
+
+        List<CompletableFuture<Response>> futures =
+                executor.executeBatch(Arrays.asList(request("A"), request("B"), request("C")));
+        // all requests are sent as one batch before any response arrived
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0).size(), 3);
+        Assert.assertEquals(events, Arrays.asList("before A", "before B", "before C"));
+
+        Response response = Response.success(Collections.emptyList());
+        sent.get(1).complete(response);
+        sent.get(0).completeExceptionally(new TimeoutException());
+        sent.get(2).completeExceptionally(new IOException());
+        Assert.assertEquals(events.subList(3, events.size()), Arrays.asList("reply B", "timeout A", "error C"));
+        Assert.assertSame(futures.get(1).get(), response);
+        Assert.assertTrue(futures.get(0).isCompletedExceptionally());
+        Assert.assertTrue(futures.get(2).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testReplaceRequest() throws Exception {
+        executor.addInterceptor((request, chain) -> chain.proceed(request("Replaced")));
+        executor.execute(request("A"));
+        delegate.assertEquals(request("Replaced"));
+    }
+
+    @Test
+    public void testPropertyCacheIntercepted() throws Exception {
+        delegate = new CollectingExecutor(request -> Response.success(Collections.singletonList(DictObject.create(
+                new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT),
+                Collections.singletonMap(BasicObject.createString("Seeded"),
+                                         VariantObject.create(BasicObject.createString("value")))))));
+        executor = new InterceptingRequestExecutor(delegate);
+        executor.addInterceptor((request, chain) -> {
+            events.add(request.getMember().stringValue());
+            return chain.proceed(request);
+        });
+        PropertyCache cache = new PropertyCache(executor, new PropertyCache.Key(
+                "bus", "org.example.Service", ObjectPathObject.create("/path"), "at.yawk"));
+
+        cache.get("Seeded", () -> { throw new AssertionError(); });
+        Assert.assertEquals(events, Collections.singletonList("GetAll"));
+    }
+
+    private static Request request(String member) {
+        return new RequestImpl()
+                .bus("bus")
+                .type(MessageType.METHOD_CALL)
+                .objectPath("/path")
+                .interfaceName("at.yawk")
+                .member(member)
+                .arguments(BasicObject.createString("arg"));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client;
+
+import at.yawk.dbus.client.request.Response;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.object.ArrayObject;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.DictObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class PropertyCacheTest {
+    private static final String DESTINATION = "org.example.Service";
+    private static final DictTypeDefinition PROPERTIES_TYPE =
+            new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT);
+
+    private AtomicInteger getAllCount;
+    private CollectingExecutor executor;
+    private PropertyCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        getAllCount = new AtomicInteger();
+        // answers every request as GetAll with a value that counts the seeds
+        executor = new CollectingExecutor(request -> Response.success(Collections.singletonList(DictObject.create(
+                PROPERTIES_TYPE,
+                Collections.singletonMap(BasicObject.createString("Seeded"),
+                                         variant("seed" + getAllCount.incrementAndGet()))))));
+        cache = new PropertyCache(executor, new PropertyCache.Key(
+                "bus", DESTINATION, ObjectPathObject.create("/path"), "at.yawk"));
+    }
+
+    @Test
+    public void testRuleSender() throws Exception {
+        cache.get("Seeded", () -> { throw new AssertionError(); });
+
+        MatchRule propertiesRule = executor.rules.stream()
+                .filter(rule -> "PropertiesChanged".equals(rule.getMember()))
+                .findAny().get();
+        Assert.assertEquals(propertiesRule.getSender(), DESTINATION);
+    }
+
+    @Test
+    public void testOwnerChange() throws Exception {
+        Assert.assertEquals(cache.get("Seeded", () -> { throw new AssertionError(); }), variant("seed1"));
+        Assert.assertEquals(getAllCount.get(), 1);
+
+        nameOwnerChanged(":1.2");
+        Assert.assertEquals(cache.get("Seeded", () -> { throw new AssertionError(); }), variant("seed2"));
+        Assert.assertEquals(getAllCount.get(), 2);
+    }
+
+    @Test
+    public void testInvalidatedDuringFetch() throws Exception {
+        AtomicInteger fetchCount = new AtomicInteger();
+        // the property is invalidated while the first fetch is in flight, so its value must not be stored
+        DbusObject first = cache.get("Other", () -> {
+            fetchCount.incrementAndGet();
+            propertiesChanged(null, "Other");
+            return variant("stale");
+        });
+        Assert.assertEquals(first, variant("stale"));
+        Assert.assertEquals(cache.get("Other", () -> {
+            fetchCount.incrementAndGet();
+            return variant("fresh");
+        }), variant("fresh"));
+        Assert.assertEquals(cache.get("Other", () -> { throw new AssertionError(); }), variant("fresh"));
+        Assert.assertEquals(fetchCount.get(), 2);
+    }
+
+    @Test
+    public void testChangedDuringFetch() throws Exception {
+        cache.get("Other", () -> {
+            propertiesChanged("Other", null);
+            return variant("stale");
+        });
+        Assert.assertEquals(cache.get("Other", () -> { throw new AssertionError(); }), variant("changed"));
+    }
+
+    /**
+     * @param changed     A property that changed to {@code "changed"}, or {@code null}.
+     * @param invalidated A property that was invalidated, or {@code null}.
+     */
+    private void propertiesChanged(@Nullable String changed, @Nullable String invalidated) {
+        DictObject changedObject = DictObject.create(PROPERTIES_TYPE, changed == null ?
+                Collections.emptyMap() :
+                Collections.singletonMap(BasicObject.createString(changed), variant("changed")));
+        ArrayObject invalidatedObject = ArrayObject.create(
+                new ArrayTypeDefinition(BasicType.STRING),
+                invalidated == null ?
+                        Collections.emptyList() :
+                        Collections.singletonList(BasicObject.createString(invalidated)));
+        listener("PropertiesChanged").accept(Arrays.asList(
+                BasicObject.createString("at.yawk"), changedObject, invalidatedObject));
+    }
+
+    private void nameOwnerChanged(String newOwner) {
+        listener("NameOwnerChanged").accept(Arrays.asList(
+                BasicObject.createString(DESTINATION), BasicObject.createString(":1.1"),
+                BasicObject.createString(newOwner)));
+    }
+
+    private Consumer<List<DbusObject>> listener(String member) {
+        for (int i = 0; i < executor.rules.size(); i++) {
+            if (member.equals(executor.rules.get(i).getMember())) {
+                return executor.listeners.get(i);
+            }
+        }
+        throw new AssertionError("No listener for " + member);
+    }
+
+    private static DbusObject variant(String value) {
+        return VariantObject.create(BasicObject.createString(value));
+    }
+}
@@ -42,6 +42,8 @@ class RequestImpl implements Request {
     @SneakyThrows
     public static boolean requestsEqual(Request a, Request b) {
         for (Method method : Request.class.getDeclaredMethods()) {
+            // default methods are encoding hints that do not change the request
+            if (method.isDefault()) { continue; }
             if (!Objects.equals(method.invoke(a), method.invoke(b))) {
                 return false;
             }
@@ -9,14 +9,31 @@ package at.yawk.dbus.client;
 import at.yawk.dbus.client.annotation.*;
 import at.yawk.dbus.client.request.Request;
 import at.yawk.dbus.client.request.RequestExecutor;
+import at.yawk.dbus.client.request.RequestInterceptor;
+import at.yawk.dbus.client.request.RequestListener;
 import at.yawk.dbus.client.request.Response;
 import at.yawk.dbus.databind.DataBinder;
 import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.ArrayObject;
 import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.DictObject;
 import at.yawk.dbus.protocol.object.VariantObject;
+import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import lombok.Lombok;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -25,11 +42,12 @@ import org.testng.annotations.Test;
  */
 public class RmiFactoryTest {
     private CollectingExecutor executor;
+    private RmiFactory factory;
     private A instance;
 
     private void setUp(Function<Request, Response> executor) {
         this.executor = new CollectingExecutor(executor);
-        RmiFactory factory = new RmiFactory(new DataBinder(), this.executor);
+        factory = new RmiFactory(new DataBinder(), this.executor);
         instance = factory.createRmiInstance(A.class);
     }
 
@@ -50,6 +68,154 @@ public class RmiFactoryTest {
         );
     }
 
+    @Test
+    public void testCachedProperty() {
+        DictTypeDefinition propertiesType = new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT);
+        setUp(request -> {
+            if (request.getMember().stringValue().equals("GetAll")) {
+                return Response.success(Collections.singletonList(DictObject.create(
+                        propertiesType,
+                        Collections.singletonMap(BasicObject.createString("Cached"),
+                                                 VariantObject.create(BasicObject.createString("a"))))));
+            } else {
+                return Response.success(Collections.singletonList(
+                        VariantObject.create(BasicObject.createString("fetched"))));
+            }
+        });
+        RequestImpl getAll = new RequestImpl()
+                .type(MessageType.METHOD_CALL)
+                .objectPath("/path")
+                .interfaceName("org.freedesktop.DBus.Properties")
+                .member("GetAll")
+                .arguments(BasicObject.createString("at.yawk"));
+
+        Assert.assertEquals(instance.getCached(), "a");
+        Assert.assertEquals(instance.getCached(), "a");
+        executor.assertEquals(getAll);
+
+        Assert.assertEquals(executor.listeners.size(), 1);
+        ArrayTypeDefinition invalidatedType = new ArrayTypeDefinition(BasicType.STRING);
+        executor.listeners.get(0).accept(Arrays.asList(
+                BasicObject.createString("at.yawk"),
+                DictObject.create(propertiesType, Collections.singletonMap(
+                        BasicObject.createString("Cached"), VariantObject.create(BasicObject.createString("b")))),
+                ArrayObject.create(invalidatedType, Collections.emptyList())
+        ));
+        Assert.assertEquals(instance.getCached(), "b");
+        executor.assertEquals(getAll);
+
+        executor.listeners.get(0).accept(Arrays.asList(
+                BasicObject.createString("at.yawk"),
+                DictObject.create(propertiesType, Collections.emptyMap()),
+                ArrayObject.create(invalidatedType, Collections.singletonList(BasicObject.createString("Cached")))
+        ));
+        Assert.assertEquals(instance.getCached(), "fetched");
+        Assert.assertEquals(instance.getCached(), "fetched");
+        executor.assertEquals(
+                getAll,
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("org.freedesktop.DBus.Properties")
+                        .member("Get")
+                        .arguments(BasicObject.createString("at.yawk"),
+                                   BasicObject.createString("Cached"))
+        );
+    }
+
+    @Test
+    public void testGetAllProperties() {
+        setUp(request -> Response.success(Collections.singletonList(allProperties())));
+
+        Properties properties = instance.getAll();
+        Assert.assertEquals(properties.name(), "hi");
+        Assert.assertEquals(properties.getCount(), 5);
+        Assert.assertNull(properties.getMissing());
+        Assert.assertTrue(properties.toString().contains("Test=hi"));
+        executor.assertEquals(
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("org.freedesktop.DBus.Properties")
+                        .member("GetAll")
+                        .arguments(BasicObject.createString("at.yawk"))
+        );
+    }
+
+    @Test
+    public void testGetAllPropertiesBean() {
+        setUp(request -> Response.success(Collections.singletonList(allProperties())));
+
+        PropertiesBean properties = instance.getAllBean();
+        Assert.assertEquals(properties.name, "hi");
+        Assert.assertEquals(properties.count, 5);
+        Assert.assertEquals(properties.missing, "default");
+    }
+
+    private static DictObject allProperties() {
+        Map<DbusObject, DbusObject> entries = new LinkedHashMap<>();
+        entries.put(BasicObject.createString("Test"), VariantObject.create(BasicObject.createString("hi")));
+        entries.put(BasicObject.createString("Count"), VariantObject.create(BasicObject.createInt32(5)));
+        entries.put(BasicObject.createString("Unknown"), VariantObject.create(BasicObject.createBoolean(true)));
+        return DictObject.create(new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT), entries);
+    }
+
+    private static final String INTROSPECTION =
+            "<node>" +
+            "<interface name=\"at.yawk\">" +
+            "<method name=\"Echo\"><arg type=\"u\"/><arg direction=\"out\" type=\"s\"/></method>" +
+            "<signal name=\"Changed\"/>" +
+            "<property name=\"Test\" type=\"s\" access=\"read\"/>" +
+            "</interface>" +
+            "</node>";
+
+    @Test
+    public void testIntrospected() {
+        setUp(request -> request.getMember().stringValue().equals("Introspect") ?
+                Response.success(Collections.singletonList(BasicObject.createString(INTROSPECTION))) :
+                Response.success(Collections.singletonList(BasicObject.createString("ok"))));
+        Introspected introspected = factory.createRmiInstance(Introspected.class);
+
+        Assert.assertEquals(introspected.echo(5), "ok");
+        executor.assertEquals(
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("org.freedesktop.DBus.Introspectable")
+                        .member("Introspect"),
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Echo")
+                        // bound as declared, not as the int32 the Integer would default to
+                        .arguments(BasicObject.createUint32(5))
+        );
+
+        // introspection data is cached
+        factory.createRmiInstance(Introspected.class);
+        Assert.assertEquals(executor.listeners.size(), 0);
+        executor.assertEquals(
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("org.freedesktop.DBus.Introspectable")
+                        .member("Introspect"),
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Echo")
+                        .arguments(BasicObject.createUint32(5))
+        );
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIntrospectedMismatch() {
+        setUp(request -> Response.success(Collections.singletonList(BasicObject.createString(INTROSPECTION))));
+        factory.createRmiInstance(IntrospectedMismatch.class);
+    }
+
     @Test
     public void testCall() {
         setUp(request -> Response.success(Collections.emptyList()));
@@ -65,6 +231,77 @@ public class RmiFactoryTest {
         );
     }
 
+    @Test
+    public void testCallRepeated() {
+        setUp(request -> Response.success(Collections.emptyList()));
+
+        instance.doSomething("a");
+        instance.doSomething("b");
+        executor.assertEquals(
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Something")
+                        .arguments(BasicObject.createString("a")),
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Something")
+                        .arguments(BasicObject.createString("b"))
+        );
+    }
+
+    @Test
+    public void testInterceptors() {
+        setUp(request -> Response.error("Hi", Collections.emptyList()));
+        List<String> events = new ArrayList<>();
+        factory.addInterceptor((request, chain) -> {
+            events.add("outer " + request.getMember().stringValue());
+            return chain.proceed(request);
+        });
+        factory.addInterceptor(RequestInterceptor.listening(new RequestListener() {
+            @Override
+            public void beforeSend(Request request) {
+                events.add("before");
+            }
+
+            @Override
+            public void onReply(Request request, Response response, long nanos) {
+                events.add("reply " + response.getErrorName());
+            }
+        }));
+        A intercepted = factory.createRmiInstance(A.class);
+
+        try {
+            intercepted.doSomething("arg");
+            Assert.fail();
+        } catch (NoSuchElementException expected) {}
+        // validation happens after the interceptors saw the error reply
+        Assert.assertEquals(events, Arrays.asList("outer Something", "before", "reply Hi"));
+
+        // instances created before the interceptors were added are not intercepted
+        events.clear();
+        try {
+            instance.doSomething("arg");
+            Assert.fail();
+        } catch (NoSuchElementException expected) {}
+        Assert.assertEquals(events, Collections.emptyList());
+    }
+
+    @Test
+    public void testInterceptorAnswers() {
+        setUp(request -> {
+            throw new AssertionError("Should not be sent");
+        });
+        factory.addInterceptor((request, chain) -> Response.success(
+                Collections.singletonList(VariantObject.create(BasicObject.createString("local")))));
+
+        Assert.assertEquals(factory.createRmiInstance(A.class).getTest(), "local");
+        executor.assertEquals();
+    }
+
     @Test
     public void testSignal() {
         setUp(request -> Response.success(Collections.emptyList()));
@@ -80,6 +317,39 @@ public class RmiFactoryTest {
         );
     }
 
+    @Test
+    public void testObjectMethods() {
+        setUp(request -> {
+            throw new AssertionError("Object methods should not be sent over the bus");
+        });
+
+        Assert.assertEquals(instance, instance);
+        Assert.assertNotEquals(instance, new Object());
+        Assert.assertEquals(instance.hashCode(), System.identityHashCode(instance));
+        Assert.assertTrue(instance.toString().contains(A.class.getName()));
+    }
+
+    @Test
+    public void testFunctionalListener() {
+        setUp(request -> Response.success(Collections.emptyList()));
+
+        StringBuilder received = new StringBuilder();
+        instance.onChanged((name, count) -> received.append(name).append(count));
+        Assert.assertEquals(executor.listeners.size(), 1);
+        executor.listeners.get(0).accept(Arrays.asList(BasicObject.createString("a"), BasicObject.createInt32(5)));
+        Assert.assertEquals(received.toString(), "a5");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testFunctionalListenerException() {
+        setUp(request -> Response.success(Collections.emptyList()));
+
+        instance.onChanged((name, count) -> {
+            throw new IllegalStateException();
+        });
+        executor.listeners.get(0).accept(Arrays.asList(BasicObject.createString("a"), BasicObject.createInt32(5)));
+    }
+
     @Test(expectedExceptions = NoSuchElementException.class,
             expectedExceptionsMessageRegExp = "Hi")
     public void testException() {
@@ -87,6 +357,96 @@ public class RmiFactoryTest {
         instance.doSomething("arg");
     }
 
+    @Test
+    public void testGeneratedImplementation() {
+        setUp(request -> Response.success(Collections.singletonList(BasicObject.createInt32(5))));
+        Generated generated = factory.createRmiInstance(Generated.class);
+
+        Assert.assertFalse(Proxy.isProxyClass(generated.getClass()));
+        Assert.assertSame(factory.createRmiInstance(Generated.class).getClass(), generated.getClass());
+        // package-private interfaces cannot be implemented outside of their class loader
+        Assert.assertTrue(Proxy.isProxyClass(instance.getClass()));
+
+        Assert.assertEquals(generated.lookup("a", 7L, 0.5), 5);
+        generated.signal("b");
+        executor.assertEquals(
+                new RequestImpl()
+                        .type(MessageType.METHOD_CALL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Lookup")
+                        .arguments(BasicObject.createString("a"), BasicObject.createInt64(7),
+                                   BasicObject.createDouble(0.5)),
+                new RequestImpl()
+                        .type(MessageType.SIGNAL)
+                        .objectPath("/path")
+                        .interfaceName("at.yawk")
+                        .member("Signal")
+                        .arguments(BasicObject.createString("b"))
+        );
+
+        Assert.assertEquals(generated, generated);
+        Assert.assertNotEquals(generated, factory.createRmiInstance(Generated.class));
+        Assert.assertEquals(generated.hashCode(), System.identityHashCode(generated));
+        Assert.assertTrue(generated.toString().contains(Generated.class.getName()));
+    }
+
+    @Test
+    public void testGeneratedProperty() {
+        setUp(request -> Response.success(Collections.singletonList(
+                VariantObject.create(BasicObject.createString("hi")))));
+        Assert.assertEquals(factory.createRmiInstance(Generated.class).getTest(), "hi");
+    }
+
+    @Test
+    public void testGeneratedCheckedException() {
+        setUp(request -> {
+            throw Lombok.sneakyThrow(new TimeoutException());
+        });
+        Generated generated = factory.createRmiInstance(Generated.class);
+
+        try {
+            generated.lookup("a", 7L, 0.5);
+            Assert.fail();
+        } catch (UndeclaredThrowableException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        try {
+            generated.lookupOrTimeout("a");
+            Assert.fail();
+        } catch (TimeoutException expected) {}
+    }
+
+    @Test
+    public void testClassGenerationDisabled() {
+        setUp(request -> Response.success(Collections.singletonList(BasicObject.createInt32(5))));
+        factory.setClassGeneration(false);
+        Generated proxy = new RmiFactory(factory).createRmiInstance(Generated.class);
+
+        Assert.assertTrue(Proxy.isProxyClass(proxy.getClass()));
+        Assert.assertEquals(proxy.lookup("a", 7L, 0.5), 5);
+    }
+
+    @ObjectPath("/path")
+    @Interface("at.yawk")
+    public interface Generated {
+        @Member("Lookup")
+        @Call
+        int lookup(String name, long flags, double weight);
+
+        @Member("Lookup")
+        @Call
+        int lookupOrTimeout(String name) throws TimeoutException;
+
+        @Member("Test")
+        @GetProperty
+        String getTest();
+
+        @Member("Signal")
+        @Signal
+        void signal(String arg);
+    }
+
     @ObjectPath("/path")
     @Interface("at.yawk")
     interface A {
@@ -94,6 +454,16 @@ public class RmiFactoryTest {
         @GetProperty
         String getTest();
 
+        @Member("Cached")
+        @GetProperty(cached = true)
+        String getCached();
+
+        @GetAllProperties
+        Properties getAll();
+
+        @GetAllProperties
+        PropertiesBean getAllBean();
+
         @Member("Something")
         @Call
         @ExceptionMapping(pattern = "H.", exception = NoSuchElementException.class)
@@ -102,6 +472,56 @@ public class RmiFactoryTest {
         @Member("Signal")
         @Signal
         void signal(String arg);
+
+        @Member("Changed")
+        @Listener
+        void onChanged(ChangeListener listener);
+    }
+
+    interface Properties {
+        @Member("Test")
+        String name();
+
+        int getCount();
+
+        String getMissing();
+    }
+
+    static class PropertiesBean {
+        @Member("Test")
+        String name;
+        int count;
+        String missing = "default";
+    }
+
+    @at.yawk.dbus.client.annotation.Introspected
+    @ObjectPath("/path")
+    @Interface("at.yawk")
+    interface Introspected {
+        @Member("Echo")
+        @Call
+        Object echo(Object value);
+
+        @Member("Test")
+        @GetProperty
+        Object getTest();
+
+        @Member("Changed")
+        @Listener
+        void onChanged(Runnable listener);
+    }
+
+    @at.yawk.dbus.client.annotation.Introspected
+    @ObjectPath("/path")
+    @Interface("at.yawk")
+    interface IntrospectedMismatch {
+        @Member("Echo")
+        @Call
+        String echo(String value);
+    }
+
+    interface ChangeListener {
+        void changed(String name, int count);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.introspect;
+
+import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class IntrospectionParserTest {
+    static final String XML =
+            "<!DOCTYPE node PUBLIC \"-//freedesktop//DTD D-BUS Object Introspection 1.0//EN\"\n" +
+            " \"http://www.freedesktop.org/standards/dbus/1.0/introspect.dtd\">\n" +
+            "<node>\n" +
+            "  <interface name=\"at.yawk\">\n" +
+            "    <method name=\"Echo\">\n" +
+            "      <arg name=\"value\" type=\"u\"/>\n" +
+            "      <arg name=\"result\" direction=\"out\" type=\"s\"/>\n" +
+            "    </method>\n" +
+            "    <signal name=\"Changed\">\n" +
+            "      <arg name=\"names\" type=\"as\"/>\n" +
+            "    </signal>\n" +
+            "    <property name=\"Test\" type=\"a{sv}\" access=\"read\"/>\n" +
+            "  </interface>\n" +
+            "  <node name=\"child\"/>\n" +
+            "</node>\n";
+
+    @Test
+    public void testParse() {
+        ObjectDescription object = IntrospectionParser.parse(XML);
+        Assert.assertEquals(object.getChildren(), Collections.singletonList("child"));
+
+        InterfaceDescription iface = object.getInterface("at.yawk");
+        Assert.assertNotNull(iface);
+        Assert.assertEquals(iface.getMethods().get("Echo"), new MemberDescription(
+                "Echo", Collections.singletonList(BasicType.UINT32), Collections.singletonList(BasicType.STRING)));
+        Assert.assertEquals(iface.getSignals().get("Changed"), new MemberDescription(
+                "Changed", Collections.emptyList(),
+                Collections.singletonList(new ArrayTypeDefinition(BasicType.STRING))));
+        Assert.assertEquals(iface.getProperties().get("Test"), new PropertyDescription(
+                "Test", new DictTypeDefinition(BasicType.STRING, BasicType.VARIANT), true, false));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidType() {
+        IntrospectionParser.parse("<node><interface name=\"a.b\"><property name=\"X\" type=\"a\"/></interface></node>");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidXml() {
+        IntrospectionParser.parse("<node><interface>");
+    }
+
+    @Test
+    public void testExternalEntityNotResolved() throws Exception {
+        // declares an entity, so a resolved parameter entity becomes visible in attribute values
+        Path secret = Files.createTempFile("introspection", ".dtd");
+        try {
+            Files.write(secret, "<!ENTITY leaked \"secret\">".getBytes(StandardCharsets.UTF_8));
+            String uri = secret.toUri().toString();
+            assertNotResolved("<?xml version=\"1.0\"?>\n" +
+                              "<!DOCTYPE node [<!ENTITY xxe SYSTEM \"" + uri + "\">]>\n" +
+                              "<node><node name=\"&xxe;\"/></node>");
+            assertNotResolved("<!DOCTYPE node [<!ENTITY % xxe SYSTEM \"" + uri + "\"> %xxe;]>\n" +
+                              "<node><node name=\"&leaked;\"/></node>");
+            assertNotResolved("<!DOCTYPE node SYSTEM \"" + uri + "\" [<!ELEMENT node ANY>]>\n" +
+                              "<node><node name=\"&leaked;\"/></node>");
+        } finally {
+            Files.delete(secret);
+        }
+    }
+
+    private static void assertNotResolved(String xml) {
+        ObjectDescription object;
+        try {
+            object = IntrospectionParser.parse(xml);
+        } catch (IllegalArgumentException e) {
+            // rejected
+            return;
+        }
+        Assert.assertFalse(object.toString().contains("secret"), object.toString());
+    }
+}
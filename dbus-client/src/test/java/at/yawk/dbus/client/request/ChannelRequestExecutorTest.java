@@ -0,0 +1,343 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.client.SimpleRequest;
+import at.yawk.dbus.protocol.DbusChannel;
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.DbusMetrics;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageBody;
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.object.StringObject;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class ChannelRequestExecutorTest {
+    @Test
+    public void testBatch() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+
+        CompletableFuture<List<Response>> all = executor.executeAll(Arrays.asList(request("A"), request("B")));
+        Assert.assertEquals(channel.batches.size(), 1);
+        List<DbusMessage> batch = channel.batches.get(0);
+        Assert.assertEquals(batch.size(), 2);
+        Assert.assertEquals(executor.getPendingRequestCount(), 2);
+
+        // replies arrive out of order
+        channel.reply(batch.get(1), "b");
+        Assert.assertFalse(all.isDone());
+        channel.reply(batch.get(0), "a");
+        List<Response> responses = all.get();
+        Assert.assertEquals(responses.get(0).getReply(), Collections.singletonList(BasicObject.createString("a")));
+        Assert.assertEquals(responses.get(1).getReply(), Collections.singletonList(BasicObject.createString("b")));
+        Assert.assertEquals(executor.getPendingRequestCount(), 0);
+    }
+
+    @Test
+    public void testBatchFailure() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+
+        CompletableFuture<List<Response>> all = executor.executeAll(Arrays.asList(request("A"), request("B")));
+        channel.reply(channel.batches.get(0).get(0), "a");
+        channel.close();
+        try {
+            all.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof EOFException);
+        }
+    }
+
+    @Test
+    public void testBatchLimited() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+        executor.setInFlightLimit(1, 0, false);
+
+        CompletableFuture<List<Response>> all = executor.executeAll(Arrays.asList(request("A"), request("B")));
+        Assert.assertEquals(channel.batches.size(), 1);
+        Assert.assertEquals(channel.batches.get(0).size(), 1);
+        Assert.assertEquals(executor.getQueuedRequestCount(), 1);
+
+        channel.reply(channel.batches.get(0).get(0), "a");
+        Assert.assertEquals(channel.batches.size(), 2);
+        Assert.assertEquals(executor.getQueuedRequestCount(), 0);
+        channel.reply(channel.batches.get(1).get(0), "b");
+        Assert.assertEquals(all.get().size(), 2);
+    }
+
+    @Test(timeOut = 10000)
+    public void testSignal() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+        executor.setInFlightLimit(1, 0, true);
+
+        // signals get no reply, so they neither wait for one nor take an in-flight slot
+        Assert.assertEquals(executor.execute(request(MessageType.SIGNAL, "A")).getReply(), Collections.emptyList());
+        Assert.assertEquals(executor.executeAll(Arrays.asList(request("B"), request(MessageType.SIGNAL, "C")))
+                                    .getNow(null), null);
+        Assert.assertEquals(channel.batches.size(), 2);
+        Assert.assertEquals(channel.batches.get(1).size(), 2);
+        Assert.assertEquals(executor.getPendingRequestCount(), 1);
+        // B holds the only slot
+        Assert.assertTrue(executor.executeAll(Collections.singletonList(request("D"))).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSenderResolution() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+
+        MatchRule rule = new MatchRule();
+        rule.setSender("org.example.Service");
+        rule.setInterfaceName("org.example.Service");
+        List<String> received = new ArrayList<>();
+        executor.listen("test", rule, body -> received.add(body.get(0).stringValue()));
+
+        channel.reply(channel.sent("GetNameOwner"), ":1.5");
+        channel.deliver(signal(":1.5", "org.example.Service", "a"));
+        channel.deliver(signal(":1.6", "org.example.Service", "b"));
+        Assert.assertEquals(received, Collections.singletonList("a"));
+
+        channel.deliver(signal("org.freedesktop.DBus", "org.freedesktop.DBus",
+                               "org.example.Service", ":1.5", ":1.6"));
+        channel.deliver(signal(":1.5", "org.example.Service", "c"));
+        channel.deliver(signal(":1.6", "org.example.Service", "d"));
+        Assert.assertEquals(received, Arrays.asList("a", "d"));
+        Assert.assertEquals(executor.getNameOwner("org.example.Service"), ":1.6");
+        Assert.assertEquals(executor.getNameOwner(":1.7"), ":1.7");
+    }
+
+    @Test
+    public void testNameOwnerListener() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+
+        List<String> owners = new ArrayList<>();
+        Runnable unregister = executor.listenNameOwner("test", "org.example.Service", owners::add);
+        MatchRule rule = new MatchRule();
+        rule.setSender("org.example.Service");
+        executor.listen("test", rule, body -> {});
+        // the owner listener and the sender resolution share one subscription
+        Assert.assertEquals(channel.count("AddMatch"), 2);
+
+        channel.deliver(signal("org.freedesktop.DBus", "org.freedesktop.DBus",
+                               "org.example.Service", "", ":1.6"));
+        channel.deliver(signal("org.freedesktop.DBus", "org.freedesktop.DBus",
+                               "org.example.Service", ":1.6", ""));
+        unregister.run();
+        channel.deliver(signal("org.freedesktop.DBus", "org.freedesktop.DBus",
+                               "org.example.Service", "", ":1.7"));
+        Assert.assertEquals(owners, Arrays.asList(":1.6", null));
+        Assert.assertEquals(executor.getNameOwner("org.example.Service"), ":1.7");
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+        List<String> calls = new ArrayList<>();
+        IntSupplier[] pending = new IntSupplier[1];
+        executor.setMetrics(new DbusMetrics() {
+            @Override
+            public void callCompleted(String interfaceName, String member, long nanos, boolean failed) {
+                Assert.assertTrue(nanos >= 0);
+                calls.add(interfaceName + "." + member + (failed ? " failed" : ""));
+            }
+
+            @Override
+            public void registerPendingCalls(IntSupplier pendingCalls) {
+                pending[0] = pendingCalls;
+            }
+        });
+
+        CompletableFuture<List<Response>> all = executor.executeAll(Arrays.asList(request("A"), request("B")));
+        Assert.assertEquals(pending[0].getAsInt(), 2);
+        channel.reply(channel.batches.get(0).get(1), "b");
+        channel.close();
+        Assert.assertTrue(all.isCompletedExceptionally());
+        Assert.assertEquals(calls, Arrays.asList("org.example.Test.B", "org.example.Test.A failed"));
+        Assert.assertEquals(pending[0].getAsInt(), 0);
+    }
+
+    @Test
+    public void testPendingCallsGaugeRegistration() throws Exception {
+        RecordingChannel channel = new RecordingChannel();
+        ChannelRequestExecutor executor = new ChannelRequestExecutor(channel);
+        List<IntSupplier> first = new ArrayList<>();
+        List<IntSupplier> second = new ArrayList<>();
+        DbusMetrics firstMetrics = gaugeMetrics(first);
+        DbusMetrics secondMetrics = gaugeMetrics(second);
+
+        executor.setMetrics(firstMetrics);
+        executor.setMetrics(firstMetrics);
+        Assert.assertEquals(first.size(), 1);
+
+        executor.setMetrics(secondMetrics);
+        Assert.assertEquals(first.size(), 0);
+        Assert.assertEquals(second.size(), 1);
+
+        channel.close();
+        Assert.assertEquals(second.size(), 0);
+        executor.setMetrics(firstMetrics);
+        Assert.assertEquals(first.size(), 0);
+    }
+
+    /**
+     * Metrics that keep the currently registered pending call gauges in the given list.
+     */
+    private static DbusMetrics gaugeMetrics(List<IntSupplier> gauges) {
+        return new DbusMetrics() {
+            @Override
+            public void registerPendingCalls(IntSupplier pendingCalls) {
+                gauges.add(pendingCalls);
+            }
+
+            @Override
+            public void unregisterPendingCalls(IntSupplier pendingCalls) {
+                Assert.assertTrue(gauges.remove(pendingCalls));
+            }
+        };
+    }
+
+    private static DbusMessage signal(String sender, String interfaceName, String... arguments) {
+        List<DbusObject> body = new ArrayList<>();
+        for (String argument : arguments) {
+            body.add(BasicObject.createString(argument));
+        }
+        DbusMessage message = MessageFactory.methodCall(
+                "/", null, interfaceName, "NameOwnerChanged", body.toArray(new DbusObject[body.size()]));
+        message.getHeader().setMessageType(MessageType.SIGNAL);
+        message.getHeader().setSerial(1);
+        message.getHeader().addHeader(HeaderField.SENDER, BasicObject.createString(sender));
+        return message;
+    }
+
+    private static SimpleRequest request(String member) {
+        return request(MessageType.METHOD_CALL, member);
+    }
+
+    private static SimpleRequest request(MessageType type, String member) {
+        return new SimpleRequest(
+                "test",
+                type,
+                ObjectPathObject.create("/path"),
+                StringObject.create("org.example.Test"),
+                StringObject.create(member),
+                null,
+                Collections.emptyList()
+        );
+    }
+
+    private static class RecordingChannel implements DbusChannel {
+        final List<List<DbusMessage>> batches = new ArrayList<>();
+        private final AtomicInteger nextSerial = new AtomicInteger(1);
+        private final CompletableFuture<?> closeFuture = new CompletableFuture<>();
+        private MessageConsumer consumer;
+
+        void reply(DbusMessage call, String value) {
+            MessageHeader header = new MessageHeader();
+            header.setMessageType(MessageType.METHOD_RETURN);
+            header.setSerial(createSerial());
+            header.addHeader(HeaderField.REPLY_SERIAL, BasicObject.createUint32(call.getHeader().getSerial()));
+            MessageBody body = new MessageBody();
+            body.setArguments(Collections.singletonList(BasicObject.createString(value)));
+            DbusMessage reply = new DbusMessage();
+            reply.setHeader(header);
+            reply.setBody(body);
+            Assert.assertTrue(consumer.requireAccept(header));
+            consumer.accept(reply);
+        }
+
+        DbusMessage sent(String member) {
+            for (List<DbusMessage> batch : batches) {
+                for (DbusMessage message : batch) {
+                    if (message.getHeader().getHeaderFields().get(HeaderField.MEMBER).stringValue().equals(member)) {
+                        return message;
+                    }
+                }
+            }
+            throw new AssertionError("No " + member + " call sent");
+        }
+
+        int count(String member) {
+            int count = 0;
+            for (List<DbusMessage> batch : batches) {
+                for (DbusMessage message : batch) {
+                    if (message.getHeader().getHeaderFields().get(HeaderField.MEMBER).stringValue().equals(member)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        void deliver(DbusMessage message) {
+            if (consumer.requireAccept(message.getHeader())) {
+                consumer.accept(message);
+            }
+        }
+
+        @Override
+        public void setMessageConsumer(MessageConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public int createSerial() {
+            return nextSerial.getAndIncrement();
+        }
+
+        @Override
+        public void write(DbusMessage message) {
+            writeAll(Collections.singletonList(message));
+        }
+
+        @Override
+        public void writeAll(List<DbusMessage> messages) {
+            batches.add(messages);
+        }
+
+        @Override
+        public void disconnect() {
+            close();
+        }
+
+        @Override
+        public void close() {
+            closeFuture.complete(null);
+        }
+
+        @Override
+        public CompletionStage<?> closeStage() {
+            return closeFuture;
+        }
+    }
+}
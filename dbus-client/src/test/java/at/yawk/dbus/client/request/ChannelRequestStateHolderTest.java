@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import java.io.EOFException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class ChannelRequestStateHolderTest {
+    @Test
+    public void testComplete() throws Exception {
+        ChannelRequestStateHolder<String> holder = new ChannelRequestStateHolder<>();
+        CompletableFuture<String> future = holder.registerPending(1, 0, TimeUnit.SECONDS);
+        Assert.assertTrue(holder.isPending(1));
+
+        holder.complete(1, "a");
+        Assert.assertEquals(future.get(), "a");
+        Assert.assertFalse(holder.isPending(1));
+        Assert.assertEquals(holder.getPendingCount(), 0);
+    }
+
+    @Test(timeOut = 5000L)
+    public void testTimeoutEvicts() throws Exception {
+        ChannelRequestStateHolder<String> holder = new ChannelRequestStateHolder<>();
+        CompletableFuture<String> future = holder.registerPending(1, 10, TimeUnit.MILLISECONDS);
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertFalse(holder.isPending(1));
+
+        // late replies are ignored
+        holder.complete(1, "a");
+        Assert.assertEquals(holder.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testCancelEvicts() {
+        ChannelRequestStateHolder<String> holder = new ChannelRequestStateHolder<>();
+        CompletableFuture<String> future = holder.registerPending(1, 1, TimeUnit.HOURS);
+        future.cancel(false);
+        Assert.assertFalse(holder.isPending(1));
+    }
+
+    @Test
+    public void testHangup() throws Exception {
+        ChannelRequestStateHolder<String> holder = new ChannelRequestStateHolder<>();
+        CompletableFuture<String> a = holder.registerPending(1, 1, TimeUnit.HOURS);
+        CompletableFuture<String> b = holder.registerPending(2, 0, TimeUnit.HOURS);
+        holder.createCleaner().run();
+
+        Assert.assertEquals(holder.getPendingCount(), 0);
+        for (CompletableFuture<String> future : new CompletableFuture[]{ a, b }) {
+            try {
+                future.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof EOFException);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class ListenerHolderTest {
+    private static final int POSTERS = 2;
+    private static final int MESSAGES_PER_POSTER = 20000;
+    private static final int CHURNERS = 4;
+    private static final int MANY_RULES = 20000;
+
+    @Test
+    public void testAddRemove() {
+        ListenerHolder holder = new ListenerHolder();
+        MatchRule rule = rule("a.b");
+        List<DbusMessage> received = new ArrayList<>();
+        Consumer<DbusMessage> first = received::add;
+        Consumer<DbusMessage> second = received::add;
+
+        Assert.assertTrue(holder.addListener(rule, first));
+        Assert.assertFalse(holder.addListener(rule, second));
+        DbusMessage message = signal("a.b", 1);
+        Assert.assertTrue(holder.wantsMessage(message.getHeader()));
+        holder.post(message);
+        Assert.assertEquals(received.size(), 2);
+
+        Assert.assertFalse(holder.removeListener(rule, first));
+        Assert.assertFalse(holder.removeListener(rule, first));
+        Assert.assertTrue(holder.removeListener(rule, second));
+        Assert.assertFalse(holder.wantsMessage(message.getHeader()));
+        holder.post(message);
+        Assert.assertEquals(received.size(), 2);
+    }
+
+    /**
+     * Registering a rule must not rebuild the state of all other rules, or this takes minutes instead of milliseconds.
+     */
+    @Test(timeOut = 10000L)
+    public void testManyRules() {
+        ListenerHolder holder = new ListenerHolder();
+        MatchRule[] rules = new MatchRule[MANY_RULES];
+        AtomicInteger[] counts = new AtomicInteger[MANY_RULES];
+        List<Consumer<DbusMessage>> listeners = new ArrayList<>();
+        for (int i = 0; i < MANY_RULES; i++) {
+            rules[i] = rule("a.b");
+            // alternate between exact paths and path namespaces so that both parts of the index grow
+            if (i % 2 == 0) {
+                rules[i].setPath(ObjectPathObject.create("/device" + i));
+            } else {
+                rules[i].setPathNamespace(ObjectPathObject.create("/device" + i));
+            }
+            counts[i] = new AtomicInteger();
+            AtomicInteger count = counts[i];
+            Consumer<DbusMessage> listener = m -> count.incrementAndGet();
+            listeners.add(listener);
+            Assert.assertTrue(holder.addListener(rules[i], listener));
+        }
+
+        holder.post(signal("a.b", "/device42", 1));
+        holder.post(signal("a.b", "/device43/child", 2));
+        for (int i = 0; i < MANY_RULES; i++) {
+            Assert.assertEquals(counts[i].get(), i == 42 || i == 43 ? 1 : 0, "rule " + i);
+        }
+
+        for (int i = 0; i < MANY_RULES; i++) {
+            Assert.assertTrue(holder.removeListener(rules[i], listeners.get(i)));
+        }
+        Assert.assertFalse(holder.wantsMessage(signal("a.b", "/device42", 3).getHeader()));
+    }
+
+    @Test(timeOut = 60000L)
+    public void testConcurrentChurn() throws Exception {
+        ListenerHolder holder = new ListenerHolder();
+        MatchRule stableRule = rule("a.b");
+        // one counter per serial for the listener that stays registered the whole time
+        AtomicInteger[] stableCounts = new AtomicInteger[POSTERS * MESSAGES_PER_POSTER];
+        for (int i = 0; i < stableCounts.length; i++) {
+            stableCounts[i] = new AtomicInteger();
+        }
+        holder.addListener(stableRule, m -> stableCounts[m.getHeader().getSerial()].incrementAndGet());
+
+        ExecutorService executor = Executors.newFixedThreadPool(POSTERS + CHURNERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean posting = new AtomicBoolean(true);
+            AtomicInteger duplicates = new AtomicInteger();
+
+            List<Future<?>> churners = new ArrayList<>();
+            for (int c = 0; c < CHURNERS; c++) {
+                // half of the churners share the stable rule, the others use a distinct rule that matches the same
+                // messages, so that the index changes as well
+                MatchRule churnRule = c % 2 == 0 ? stableRule : rule("a.b", "org.example.Churn" + c);
+                boolean sharedRule = churnRule == stableRule;
+                churners.add(executor.submit(() -> {
+                    start.await();
+                    while (posting.get()) {
+                        ConcurrentMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+                        Consumer<DbusMessage> listener = m -> {
+                            if (seen.putIfAbsent(m.getHeader().getSerial(), true) != null) {
+                                duplicates.incrementAndGet();
+                            }
+                        };
+                        Assert.assertEquals(holder.addListener(churnRule, listener), !sharedRule);
+                        Thread.yield();
+                        Assert.assertEquals(holder.removeListener(churnRule, listener), !sharedRule);
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> posters = new ArrayList<>();
+            for (int p = 0; p < POSTERS; p++) {
+                int offset = p * MESSAGES_PER_POSTER;
+                posters.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < MESSAGES_PER_POSTER; i++) {
+                        int serial = offset + i;
+                        holder.post(signal("a.b", serial));
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> poster : posters) {
+                poster.get();
+            }
+            posting.set(false);
+            for (Future<?> churner : churners) {
+                churner.get();
+            }
+
+            Assert.assertEquals(duplicates.get(), 0);
+            for (int i = 0; i < stableCounts.length; i++) {
+                Assert.assertEquals(stableCounts[i].get(), 1, "serial " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static MatchRule rule(String interfaceName) {
+        MatchRule rule = new MatchRule();
+        rule.setMessageType(MessageType.SIGNAL);
+        rule.setInterfaceName(interfaceName);
+        return rule;
+    }
+
+    private static MatchRule rule(String interfaceName, String sender) {
+        MatchRule rule = rule(interfaceName);
+        rule.setMember("Signal");
+        // messages in this test have no sender header, so this does not affect matching
+        rule.setSender(sender);
+        return rule;
+    }
+
+    private static DbusMessage signal(String interfaceName, int serial) {
+        return signal(interfaceName, "/", serial);
+    }
+
+    private static DbusMessage signal(String interfaceName, String path, int serial) {
+        DbusMessage message = MessageFactory.methodCall(path, null, interfaceName, "Signal");
+        message.getHeader().setMessageType(MessageType.SIGNAL);
+        message.getHeader().setSerial(serial);
+        return message;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MatchRule;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class MatchRuleIndexTest {
+    @Test
+    public void testCandidates() {
+        MatchRuleIndex<String> index = new MatchRuleIndex<>();
+
+        MatchRule all = new MatchRule();
+        index.add(all, "all");
+
+        MatchRule signals = new MatchRule();
+        signals.setMessageType(MessageType.SIGNAL);
+        index.add(signals, "signals");
+
+        MatchRule member = new MatchRule();
+        member.setMessageType(MessageType.SIGNAL);
+        member.setInterfaceName("org.freedesktop.DBus");
+        member.setMember("NameAcquired");
+        index.add(member, "member");
+
+        MatchRule path = new MatchRule();
+        path.setMessageType(MessageType.SIGNAL);
+        path.setPath(ObjectPathObject.create("/org/freedesktop/DBus"));
+        index.add(path, "path");
+
+        MatchRule otherPath = new MatchRule();
+        otherPath.setMessageType(MessageType.SIGNAL);
+        otherPath.setPath(ObjectPathObject.create("/org/freedesktop/UPower"));
+        index.add(otherPath, "otherPath");
+
+        Assert.assertEquals(
+                candidates(index, signal("/org/freedesktop/DBus", "org.freedesktop.DBus", "NameAcquired")),
+                Arrays.asList("all", "member", "path", "signals"));
+        Assert.assertEquals(
+                candidates(index, signal("/org/freedesktop/DBus", "org.freedesktop.DBus", "NameLost")),
+                Arrays.asList("all", "path", "signals"));
+
+        MessageHeader reply = new MessageHeader();
+        reply.setMessageType(MessageType.METHOD_RETURN);
+        reply.addHeader(HeaderField.REPLY_SERIAL, BasicObject.createUint32(1));
+        Assert.assertEquals(candidates(index, reply), Collections.singletonList("all"));
+
+        index.remove(all, "all");
+        Assert.assertEquals(candidates(index, reply), Collections.emptyList());
+
+        index.remove(signals, "signals");
+        index.remove(member, "member");
+        index.remove(path, "path");
+        index.remove(otherPath, "otherPath");
+        Assert.assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testNamespaces() {
+        MatchRuleIndex<String> index = new MatchRuleIndex<>();
+
+        for (String device : new String[]{ "sda", "sdb", "sdc" }) {
+            MatchRule rule = new MatchRule();
+            rule.setMessageType(MessageType.SIGNAL);
+            rule.setPathNamespace(ObjectPathObject.create("/org/freedesktop/UDisks2/block_devices/" + device));
+            index.add(rule, device);
+        }
+        MatchRule root = new MatchRule();
+        root.setPathNamespace(ObjectPathObject.create("/"));
+        index.add(root, "root");
+
+        MatchRule arg0 = new MatchRule();
+        arg0.setMessageType(MessageType.SIGNAL);
+        arg0.setMember("InterfacesAdded");
+        arg0.setArg0Namespace(ObjectPathObject.create("/org/freedesktop/UDisks2/drives"));
+        index.add(arg0, "drives");
+
+        Assert.assertEquals(
+                candidates(index, signal("/org/freedesktop/UDisks2/block_devices/sdb/part1", "a.b", "Changed")),
+                Arrays.asList("root", "sdb"));
+        Assert.assertEquals(
+                candidates(index, signal("/org/freedesktop/UDisks2/block_devices", "a.b", "Changed")),
+                Collections.singletonList("root"));
+
+        DbusMessage added = signal("/org/freedesktop/UDisks2", "a.b", "InterfacesAdded",
+                                   ObjectPathObject.create("/org/freedesktop/UDisks2/drives/disk1"));
+        Assert.assertEquals(candidates(index, added), Arrays.asList("drives", "root"));
+        Assert.assertTrue(index.anyCandidate(added.getHeader(), "drives"::equals));
+        DbusMessage otherAdded = signal("/org/freedesktop/UDisks2", "a.b", "InterfacesAdded",
+                                        ObjectPathObject.create("/org/freedesktop/UDisks2/jobs/1"));
+        Assert.assertEquals(candidates(index, otherAdded), Collections.singletonList("root"));
+
+        index.remove(root, "root");
+        index.remove(arg0, "drives");
+        Assert.assertEquals(candidates(index, added), Collections.emptyList());
+    }
+
+    private static DbusMessage signal(String path, String interfaceName, String member, DbusObject... arguments) {
+        DbusMessage message = MessageFactory.methodCall(path, null, interfaceName, member, arguments);
+        message.getHeader().setMessageType(MessageType.SIGNAL);
+        return message;
+    }
+
+    private static List<String> candidates(MatchRuleIndex<String> index, MessageHeader header) {
+        DbusMessage message = new DbusMessage();
+        message.setHeader(header);
+        return candidates(index, message);
+    }
+
+    private static List<String> candidates(MatchRuleIndex<String> index, DbusMessage message) {
+        List<String> candidates = new ArrayList<>();
+        index.forEachCandidate(message, candidates::add);
+        Collections.sort(candidates);
+        return candidates;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.client.request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class RequestLimiterTest {
+    @Test
+    public void testQueueInOrder() {
+        RequestLimiter limiter = new RequestLimiter(1, 0, false);
+        List<String> sent = new ArrayList<>();
+
+        CompletableFuture<Void> a = new CompletableFuture<>();
+        CompletableFuture<Void> b = new CompletableFuture<>();
+        CompletableFuture<Void> c = new CompletableFuture<>();
+        Assert.assertTrue(limiter.acquire("x", a, () -> sent.add("a")));
+        Assert.assertFalse(limiter.acquire("x", b, () -> sent.add("b")));
+        Assert.assertFalse(limiter.acquire("y", c, () -> sent.add("c")));
+        Assert.assertEquals(limiter.getQueuedCount(), 2);
+
+        a.complete(null);
+        Assert.assertEquals(sent, Arrays.asList("b"));
+        b.complete(null);
+        Assert.assertEquals(sent, Arrays.asList("b", "c"));
+        Assert.assertEquals(limiter.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void testPerDestination() {
+        RequestLimiter limiter = new RequestLimiter(0, 1, false);
+        List<String> sent = new ArrayList<>();
+
+        CompletableFuture<Void> a = new CompletableFuture<>();
+        Assert.assertTrue(limiter.acquire("x", a, () -> sent.add("a")));
+        Assert.assertFalse(limiter.acquire("x", new CompletableFuture<>(), () -> sent.add("b")));
+        // a saturated destination does not block others
+        Assert.assertTrue(limiter.acquire("y", new CompletableFuture<>(), () -> sent.add("c")));
+        Assert.assertTrue(limiter.acquire(null, new CompletableFuture<>(), () -> sent.add("d")));
+
+        a.completeExceptionally(new Exception());
+        Assert.assertEquals(sent, Arrays.asList("b"));
+    }
+
+    @Test
+    public void testSkipCancelled() {
+        RequestLimiter limiter = new RequestLimiter(1, 0, false);
+        List<String> sent = new ArrayList<>();
+
+        CompletableFuture<Void> a = new CompletableFuture<>();
+        CompletableFuture<Void> b = new CompletableFuture<>();
+        Assert.assertTrue(limiter.acquire(null, a, () -> sent.add("a")));
+        Assert.assertFalse(limiter.acquire(null, b, () -> sent.add("b")));
+        Assert.assertFalse(limiter.acquire(null, new CompletableFuture<>(), () -> sent.add("c")));
+
+        b.cancel(false);
+        a.complete(null);
+        Assert.assertEquals(sent, Arrays.asList("c"));
+    }
+
+    @Test
+    public void testFailFast() throws InterruptedException {
+        RequestLimiter limiter = new RequestLimiter(1, 0, true);
+        CompletableFuture<Void> a = new CompletableFuture<>();
+        CompletableFuture<Void> b = new CompletableFuture<>();
+        Assert.assertTrue(limiter.acquire(null, a, Assert::fail));
+        Assert.assertFalse(limiter.acquire(null, b, Assert::fail));
+        try {
+            b.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        a.complete(null);
+        Assert.assertTrue(limiter.acquire(null, new CompletableFuture<>(), Assert::fail));
+    }
+}
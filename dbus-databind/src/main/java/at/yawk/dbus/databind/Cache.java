@@ -6,40 +6,32 @@
 
 package at.yawk.dbus.databind;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
+import net.jcip.annotations.ThreadSafe;
 
 /**
+ * Lock-free memoizing cache. Lookups of existing entries never block.
+ *
+ * Values are created outside of the map because factories recursively look up other entries of the same cache, which
+ * {@link ConcurrentMap#computeIfAbsent} does not allow. Threads racing on a missing key may each run the factory, but
+ * all of them return the value that was published first, so factories must be side-effect free.
+ *
  * @author yawkat
  */
+@ThreadSafe
 class Cache<K, V> {
-    private final Map<K, V> entries = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
 
     V computeIfAbsent(K key, Function<K, V> factory) {
-        lock.readLock().lock();
-        try {
-            V v = entries.get(key);
-            if (v != null) { return v; }
-        } finally {
-            lock.readLock().unlock();
-        }
-
-        lock.writeLock().lock();
-        try {
-            // recheck
-            V v = entries.get(key);
-            if (v == null) {
-                v = factory.apply(key);
-                entries.put(key, Objects.requireNonNull(v));
-            }
-            return v;
-        } finally {
-            lock.writeLock().unlock();
+        V v = entries.get(key);
+        if (v == null) {
+            V created = Objects.requireNonNull(factory.apply(key));
+            v = entries.putIfAbsent(key, created);
+            if (v == null) { v = created; }
         }
+        return v;
     }
 }
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import lombok.Value;
 
 /**
  * @author yawkat
@@ -23,9 +24,21 @@ import java.util.Optional;
 public class DataBinder implements BinderFactoryContext {
     private final List<BinderFactory> binderFactories = new ArrayList<>();
 
-    private final Cache<Class<? extends Annotation>, Optional<AnnotationBinderTransformer<?>>> transformerCache =
-            new Cache<>();
+    private final ClassValue<Optional<AnnotationBinderTransformer<?>>> transformers =
+            new ClassValue<Optional<AnnotationBinderTransformer<?>>>() {
+                @Override
+                protected Optional<AnnotationBinderTransformer<?>> computeValue(Class<?> annotationClass) {
+                    Transformer transformerAnnotation = annotationClass.getAnnotation(Transformer.class);
+                    if (transformerAnnotation == null) { return Optional.empty(); }
+                    try {
+                        return Optional.of(transformerAnnotation.value().newInstance());
+                    } catch (InstantiationException | IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
     private final Cache<Type, Binder<?>> binderCache = new Cache<>();
+    private final Cache<TransformedBinderKey, Binder<?>> transformedBinderCache = new Cache<>();
     private final Cache<Type, Binder<?>> defaultEncoderCache = new Cache<>();
     private final Cache<TypeDefinition, Binder<?>> defaultDecoderCache = new Cache<>();
 
@@ -33,29 +46,14 @@ public class DataBinder implements BinderFactoryContext {
         binderFactories.add(PrimitiveBinderFactory.getInstance());
         binderFactories.add(ArrayBinderFactory.getInstance());
         binderFactories.add(DictBinderFactory.getInstance());
+        binderFactories.add(StructBinderFactory.getInstance());
         binderFactories.add(ObjectBinderFactory.getInstance());
     }
 
-    private <A extends Annotation> Optional<AnnotationBinderTransformer<?>> getBinderTransformer(
-            Class<A> annotationClass) {
-        return transformerCache.computeIfAbsent(
-                annotationClass,
-                ac -> {
-                    Transformer transformerAnnotation = ac.getAnnotation(Transformer.class);
-                    if (transformerAnnotation == null) { return Optional.empty(); }
-                    try {
-                        return Optional.of(transformerAnnotation.value().newInstance());
-                    } catch (InstantiationException | IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-        );
-    }
-
     @SuppressWarnings("unchecked")
     private Binder<?> applyBinderTransforms(Binder<?> binder, List<Annotation> annotations) {
         for (Annotation annotation : annotations) {
-            Optional<AnnotationBinderTransformer<?>> transformer = getBinderTransformer(annotation.annotationType());
+            Optional<AnnotationBinderTransformer<?>> transformer = transformers.get(annotation.annotationType());
             if (transformer.isPresent()) {
                 binder = ((AnnotationBinderTransformer) transformer.get()).wrap(annotation, binder);
             }
@@ -71,9 +69,22 @@ public class DataBinder implements BinderFactoryContext {
         return getBinder(type, Arrays.asList(metaElement.getAnnotations()));
     }
 
+    @Override
     public Binder<?> getBinder(Type type, List<Annotation> annotations) {
-        Binder<?> baseBinder = getBinder(type);
-        return applyBinderTransforms(baseBinder, annotations);
+        List<Annotation> transforming = null;
+        for (Annotation annotation : annotations) {
+            if (transformers.get(annotation.annotationType()).isPresent()) {
+                if (transforming == null) { transforming = new ArrayList<>(annotations.size()); }
+                transforming.add(annotation);
+            }
+        }
+        if (transforming == null) {
+            return getBinder(type);
+        }
+        return transformedBinderCache.computeIfAbsent(
+                new TransformedBinderKey(type, transforming),
+                key -> applyBinderTransforms(getBinder(key.getType()), key.getAnnotations())
+        );
     }
 
     @SuppressWarnings("unchecked")
@@ -123,4 +134,26 @@ public class DataBinder implements BinderFactoryContext {
     public Binder<Object> getDefaultBinder() {
         return getBinder(Object.class);
     }
+
+    /**
+     * Resolve the binders of the given types ahead of time, so that the first calls that use them do not have to.
+     * Binders of component types are resolved along with them.
+     *
+     * @throws UnsupportedOperationException if one of the types cannot be bound.
+     */
+    public void prewarm(Iterable<? extends Type> types) {
+        for (Type type : types) {
+            getBinder(type);
+        }
+    }
+
+    /**
+     * Cache key of a binder with annotation transforms applied. Annotations compare by value, so equal annotations on
+     * different elements share the binder.
+     */
+    @Value
+    private static class TransformedBinderKey {
+        Type type;
+        List<Annotation> annotations;
+    }
 }
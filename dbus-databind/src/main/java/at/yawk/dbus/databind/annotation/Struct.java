@@ -0,0 +1,28 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind the annotated class to a dbus struct. The struct members are the fields annotated with {@link StructMember}, in
+ * the order of their indices.
+ *
+ * Decoding uses a constructor that takes all members in that order if there is one, and otherwise the no-argument
+ * constructor followed by setting the (then non-final) member fields.
+ *
+ * Records do not need this annotation: they are always bound to a struct of their components.
+ *
+ * @author yawkat
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Struct {
+}
@@ -0,0 +1,27 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Member field of a {@link Struct} class. Other annotations of the field, such as {@link Primitive}, apply to the
+ * member binder.
+ *
+ * @author yawkat
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StructMember {
+    /**
+     * Position of this member in the struct. The indices of a struct must be {@code 0} to {@code n - 1}.
+     */
+    int value();
+}
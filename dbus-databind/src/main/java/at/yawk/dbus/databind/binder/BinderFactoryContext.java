@@ -7,7 +7,9 @@
 package at.yawk.dbus.databind.binder;
 
 import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.List;
 
 /**
  * @author yawkat
@@ -18,6 +20,11 @@ public interface BinderFactoryContext {
      */
     Binder<?> getBinder(Type type);
 
+    /**
+     * Get a binder that may encode and decode the given type, with the transforms of the given annotations applied.
+     */
+    Binder<?> getBinder(Type type, List<Annotation> annotations);
+
     /**
      * Get a binder that may encode (not necessarily decode to!) the given type.
      */
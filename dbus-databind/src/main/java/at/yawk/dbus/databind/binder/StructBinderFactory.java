@@ -0,0 +1,310 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.databind.binder;
+
+import at.yawk.dbus.databind.annotation.Struct;
+import at.yawk.dbus.databind.annotation.StructMember;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.StructObject;
+import at.yawk.dbus.protocol.type.StructTypeDefinition;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Binds records and {@link Struct} classes to dbus structs.
+ *
+ * Members, their binders and the method handles that read and construct instances are resolved once when the binder
+ * is created, so encoding and decoding do no reflective lookups.
+ *
+ * @author yawkat
+ */
+public class StructBinderFactory implements BinderFactory {
+    @Getter
+    private static final StructBinderFactory instance = new StructBinderFactory();
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private StructBinderFactory() {}
+
+    @Nullable
+    @Override
+    public Binder<?> getBinder(BinderFactoryContext ctx, Type type) {
+        if (!(type instanceof Class<?>)) { return null; }
+        Class<?> rawType = (Class<?>) type;
+        Method[] accessors = TypeUtil.getRecordAccessors(rawType);
+        if (accessors != null) {
+            return recordBinder(ctx, rawType, accessors);
+        }
+        if (rawType.isAnnotationPresent(Struct.class)) {
+            return structClassBinder(ctx, rawType);
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Binder<?> getDefaultDecodeBinder(BinderFactoryContext ctx, TypeDefinition typeDefinition) {
+        if (typeDefinition instanceof StructTypeDefinition) {
+            List<TypeDefinition> members = ((StructTypeDefinition) typeDefinition).getMembers();
+            Binder<?>[] memberBinders = new Binder<?>[members.size()];
+            for (int i = 0; i < memberBinders.length; i++) {
+                memberBinders[i] = ctx.getDefaultDecodeBinder(members.get(i));
+            }
+            return new ListBinder((StructTypeDefinition) typeDefinition, memberBinders);
+        }
+
+        return null;
+    }
+
+    @SneakyThrows(ReflectiveOperationException.class)
+    private static Binder<?> recordBinder(BinderFactoryContext ctx, Class<?> type, Method[] accessors) {
+        Binder<?>[] memberBinders = new Binder<?>[accessors.length];
+        MethodHandle[] getters = new MethodHandle[accessors.length];
+        Class<?>[] memberTypes = new Class<?>[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            Method accessor = accessors[i];
+            accessor.setAccessible(true);
+            memberBinders[i] = ctx.getBinder(accessor.getGenericReturnType(), Arrays.asList(accessor.getAnnotations()));
+            getters[i] = LOOKUP.unreflect(accessor);
+            memberTypes[i] = accessor.getReturnType();
+        }
+        Constructor<?> canonical = type.getDeclaredConstructor(memberTypes);
+        canonical.setAccessible(true);
+        return new StructBinder(memberBinders, getters, LOOKUP.unreflectConstructor(canonical), null);
+    }
+
+    @SneakyThrows(ReflectiveOperationException.class)
+    private static Binder<?> structClassBinder(BinderFactoryContext ctx, Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<Field> members = new ArrayList<>();
+        // members in declaration order, superclass members first
+        List<Field> declared = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                StructMember member = field.getAnnotation(StructMember.class);
+                if (member == null) { continue; }
+                declared.add(field);
+                int index = member.value();
+                while (members.size() <= index) { members.add(null); }
+                if (members.set(index, field) != null) {
+                    throw new IllegalArgumentException("Duplicate struct member index " + index + " in " + type);
+                }
+            }
+        }
+        if (members.isEmpty() || members.contains(null)) {
+            throw new IllegalArgumentException("Struct member indices of " + type + " must be 0 to n-1");
+        }
+
+        Binder<?>[] memberBinders = new Binder<?>[members.size()];
+        MethodHandle[] getters = new MethodHandle[members.size()];
+        Class<?>[] memberTypes = new Class<?>[members.size()];
+        for (int i = 0; i < memberBinders.length; i++) {
+            Field field = members.get(i);
+            field.setAccessible(true);
+            memberBinders[i] = ctx.getBinder(field.getGenericType(), Arrays.asList(field.getAnnotations()));
+            getters[i] = LOOKUP.unreflectGetter(field);
+            memberTypes[i] = field.getType();
+        }
+
+        // constructor parameters follow declaration order, so a constructor can only be used when the member indices
+        // follow it too. Otherwise, same-typed members would silently be swapped.
+        Constructor<?> constructor = members.equals(declared) ? findConstructor(type, memberTypes) : null;
+        MethodHandle[] setters = null;
+        if (constructor == null) {
+            try {
+                constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(
+                        "Struct " + type + " needs a no-args constructor or a constructor taking all members, with " +
+                        "member indices in declaration order", e);
+            }
+            setters = new MethodHandle[members.size()];
+            for (int i = 0; i < setters.length; i++) {
+                Field field = members.get(i);
+                if (Modifier.isFinal(field.getModifiers())) {
+                    throw new IllegalArgumentException(
+                            "Struct " + type + " has final member " + field.getName() + " but no constructor taking " +
+                            "all members with member indices in declaration order");
+                }
+                setters[i] = LOOKUP.unreflectSetter(field);
+            }
+        }
+        constructor.setAccessible(true);
+        return new StructBinder(memberBinders, getters, LOOKUP.unreflectConstructor(constructor), setters);
+    }
+
+    @Nullable
+    private static Constructor<?> findConstructor(Class<?> type, Class<?>[] parameterTypes) {
+        try {
+            return type.getDeclaredConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Immutable
+    private static class StructBinder implements Binder<Object> {
+        private final Binder[] memberBinders;
+        @Nullable private final StructTypeDefinition structType;
+        /**
+         * {@code (Object) -> Object} for each member.
+         */
+        private final MethodHandle[] getters;
+        /**
+         * {@code (Object[]) -> Object} taking all members if {@link #setters} is {@code null}, otherwise {@code () ->
+         * Object}.
+         */
+        private final MethodHandle constructor;
+        /**
+         * {@code (Object, Object) -> void} for each member, or {@code null} if the constructor takes all members.
+         */
+        @Nullable private final MethodHandle[] setters;
+
+        StructBinder(Binder<?>[] memberBinders, MethodHandle[] getters, MethodHandle constructor,
+                     @Nullable MethodHandle[] setters) {
+            this.memberBinders = memberBinders;
+            this.getters = new MethodHandle[getters.length];
+            for (int i = 0; i < getters.length; i++) {
+                this.getters[i] = getters[i].asType(MethodType.methodType(Object.class, Object.class));
+            }
+            if (setters == null) {
+                this.constructor = constructor.asSpreader(Object[].class, memberBinders.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+                this.setters = null;
+            } else {
+                this.constructor = constructor.asType(MethodType.methodType(Object.class));
+                this.setters = new MethodHandle[setters.length];
+                for (int i = 0; i < setters.length; i++) {
+                    this.setters[i] = setters[i].asType(
+                            MethodType.methodType(void.class, Object.class, Object.class));
+                }
+            }
+
+            StructTypeDefinition structType;
+            try {
+                List<TypeDefinition> memberTypes = new ArrayList<>(memberBinders.length);
+                for (Binder<?> memberBinder : memberBinders) {
+                    memberTypes.add(memberBinder.getType());
+                }
+                structType = new StructTypeDefinition(memberTypes);
+            } catch (TypeNotAvailableException e) {
+                structType = null;
+            }
+            this.structType = structType;
+        }
+
+        @Override
+        public TypeDefinition getType() {
+            if (structType == null) { throw new TypeNotAvailableException(); }
+            return structType;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        @SneakyThrows
+        public Object decode(DbusObject object) {
+            List<DbusObject> values = object.getValues();
+            if (values.size() != memberBinders.length) {
+                throw new IllegalArgumentException(
+                        "Expected struct with " + memberBinders.length + " members, got " + object.getType());
+            }
+            if (setters == null) {
+                Object[] members = new Object[memberBinders.length];
+                for (int i = 0; i < members.length; i++) {
+                    members[i] = memberBinders[i].decode(values.get(i));
+                }
+                return (Object) constructor.invokeExact(members);
+            } else {
+                Object struct = (Object) constructor.invokeExact();
+                for (int i = 0; i < setters.length; i++) {
+                    setters[i].invokeExact(struct, memberBinders[i].decode(values.get(i)));
+                }
+                return struct;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        @SneakyThrows
+        public DbusObject encode(Object obj) {
+            List<DbusObject> values = new ArrayList<>(memberBinders.length);
+            for (int i = 0; i < memberBinders.length; i++) {
+                values.add(memberBinders[i].encode((Object) getters[i].invokeExact(obj)));
+            }
+            if (structType != null) {
+                return StructObject.create(structType, values);
+            }
+            List<TypeDefinition> memberTypes = new ArrayList<>(values.size());
+            for (DbusObject value : values) {
+                memberTypes.add(value.getType());
+            }
+            return StructObject.create(new StructTypeDefinition(memberTypes), values);
+        }
+    }
+
+    /**
+     * Binder of a struct of a known type to the list of its members.
+     */
+    @Immutable
+    private static class ListBinder implements Binder<List<Object>> {
+        private final StructTypeDefinition structType;
+        private final Binder[] memberBinders;
+
+        ListBinder(StructTypeDefinition structType, Binder<?>[] memberBinders) {
+            this.structType = structType;
+            this.memberBinders = memberBinders;
+        }
+
+        @Override
+        public TypeDefinition getType() {
+            return structType;
+        }
+
+        @Override
+        public List<Object> decode(DbusObject object) {
+            List<DbusObject> values = object.getValues();
+            List<Object> members = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                members.add(memberBinders[i].decode(values.get(i)));
+            }
+            return Collections.unmodifiableList(members);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public DbusObject encode(List<Object> obj) {
+            if (obj.size() != memberBinders.length) {
+                throw new IllegalArgumentException(
+                        "Expected " + memberBinders.length + " members for struct " + structType + ", got " +
+                        obj.size());
+            }
+            List<DbusObject> values = new ArrayList<>(memberBinders.length);
+            for (int i = 0; i < memberBinders.length; i++) {
+                values.add(memberBinders[i].encode(obj.get(i)));
+            }
+            return StructObject.create(structType, values);
+        }
+    }
+}
@@ -9,6 +9,8 @@ package at.yawk.dbus.databind.binder;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 
 /**
@@ -23,6 +25,40 @@ public class TypeUtil {
      * - ParameterizedType
      */
 
+    // records are detected reflectively so that this also builds and runs on runtimes without them
+    @Nullable private static final Method IS_RECORD = findMethod(Class.class, "isRecord");
+    @Nullable private static final Method GET_RECORD_COMPONENTS = findMethod(Class.class, "getRecordComponents");
+    @Nullable private static final Method GET_ACCESSOR = GET_RECORD_COMPONENTS == null ?
+            null : findMethod(GET_RECORD_COMPONENTS.getReturnType().getComponentType(), "getAccessor");
+
+    @Nullable
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the accessors of the components of the given record. Annotations on record components that may target
+     * methods are present on their accessor.
+     *
+     * @return The accessors in component order, or {@code null} if the type is not a record.
+     */
+    @Nullable
+    @SneakyThrows(ReflectiveOperationException.class)
+    public static Method[] getRecordAccessors(Class<?> type) {
+        if (IS_RECORD == null || !(boolean) IS_RECORD.invoke(type)) { return null; }
+        assert GET_RECORD_COMPONENTS != null && GET_ACCESSOR != null;
+        Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+        Method[] accessors = new Method[components.length];
+        for (int i = 0; i < components.length; i++) {
+            accessors[i] = (Method) GET_ACCESSOR.invoke(components[i]);
+        }
+        return accessors;
+    }
+
     public static Class<?> getRawType(Type type) {
         if (type instanceof Class<?>) {
             return (Class<?>) type;
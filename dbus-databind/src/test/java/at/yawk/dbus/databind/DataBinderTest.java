@@ -7,19 +7,29 @@
 package at.yawk.dbus.databind;
 
 import at.yawk.dbus.databind.annotation.Primitive;
+import at.yawk.dbus.databind.annotation.Struct;
+import at.yawk.dbus.databind.annotation.StructMember;
 import at.yawk.dbus.databind.binder.Binder;
 import at.yawk.dbus.protocol.object.*;
 import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
 import at.yawk.dbus.protocol.type.BasicType;
 import at.yawk.dbus.protocol.type.DictTypeDefinition;
+import at.yawk.dbus.protocol.type.StructTypeDefinition;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
 import org.mockito.Mockito;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 /**
  * @author yawkat
@@ -121,6 +131,161 @@ public class DataBinderTest {
         testConvert(Object.class, arrayObject, Arrays.asList("a", "b"));
     }
 
+    @Test
+    public void testStructConstructor() {
+        StructObject struct = StructObject.create(
+                new StructTypeDefinition(Arrays.asList(BasicType.STRING, BasicType.UINT32,
+                                                       new ArrayTypeDefinition(BasicType.STRING))),
+                Arrays.asList(BasicObject.createString("a"), BasicObject.createUint32(5),
+                              ArrayObject.create(new ArrayTypeDefinition(BasicType.STRING),
+                                                 Collections.singletonList(BasicObject.createString("b")))));
+        assertEquals(binder.getBinder(Immutable.class).getType().serialize(), "(suas)");
+        testConvert(Immutable.class, struct, new Immutable("a", 5, Collections.singletonList("b")));
+    }
+
+    @Test
+    public void testStructFields() {
+        StructObject struct = StructObject.create(
+                new StructTypeDefinition(Arrays.asList(BasicType.INT32, BasicType.STRING)),
+                Arrays.asList(BasicObject.createInt32(5), BasicObject.createString("a")));
+        Mutable mutable = new Mutable();
+        mutable.name = "a";
+        mutable.value = 5;
+        testConvert(Mutable.class, struct, mutable);
+
+        // nested in a container
+        ArrayObject array = ArrayObject.create(new ArrayTypeDefinition(struct.getType()),
+                                               Collections.singletonList(struct));
+        testConvert(Mutable[].class, array, new Mutable[]{ mutable });
+        // not bindable to a type, decodes to the list of members
+        assertEquals(binder.getDefaultBinder().decode(struct), Arrays.asList(5, "a"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStructDefaultBinder() {
+        StructTypeDefinition type = new StructTypeDefinition(Arrays.asList(BasicType.INT32, BasicType.STRING));
+        StructObject struct = StructObject.create(
+                type, Arrays.asList(BasicObject.createInt32(5), BasicObject.createString("a")));
+        Binder<Object> defaultBinder = (Binder<Object>) binder.getDefaultDecodeBinder(type);
+        assertEquals(defaultBinder.getType(), type);
+        assertEquals(defaultBinder.encode(defaultBinder.decode(struct)), struct);
+    }
+
+    @Test
+    public void testStructIndicesOutOfDeclarationOrder() {
+        StructObject struct = StructObject.create(
+                new StructTypeDefinition(Arrays.asList(BasicType.STRING, BasicType.STRING)),
+                Arrays.asList(BasicObject.createString("S"), BasicObject.createString("F")));
+        // the all-args constructor takes the members in declaration order, so it must not be used
+        testConvert(Swapped.class, struct, new Swapped("F", "S"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testStructIndicesOutOfDeclarationOrderWithoutSetters() {
+        binder.getBinder(SwappedImmutable.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testStructMissingMember() {
+        @Struct
+        class A {
+            @StructMember(1) int value;
+        }
+        binder.getBinder(A.class);
+    }
+
+    @Test
+    public void testTransformedBinderCached() {
+        Primitive primitive = Mockito.mock(Primitive.class, Mockito.withSettings());
+        Mockito.<Object>when(primitive.annotationType()).thenReturn(Primitive.class);
+        Mockito.when(primitive.value()).thenReturn(BasicType.UINT64);
+        Deprecated unrelated = Mockito.mock(Deprecated.class);
+        Mockito.<Object>when(unrelated.annotationType()).thenReturn(Deprecated.class);
+
+        Binder<?> transformed = binder.getBinder(int.class, Arrays.asList(unrelated, primitive));
+        assertEquals(transformed.getType(), BasicType.UINT64);
+        assertSame(binder.getBinder(int.class, Collections.singletonList(primitive)), transformed);
+        // annotations without a transformer do not change the binder
+        assertSame(binder.getBinder(int.class, Collections.singletonList(unrelated)), binder.getBinder(int.class));
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        class A {
+            List<Map<String, long[]>> field;
+        }
+        Type type = A.class.getDeclaredField("field").getGenericType();
+        binder.prewarm(Collections.singletonList(type));
+        Binder<?> prewarmed = binder.getBinder(type);
+        assertEquals(prewarmed.getType().serialize(), "aa{sax}");
+        assertSame(binder.getBinder(type), prewarmed);
+    }
+
+    @Test(timeOut = 10000)
+    public void testConcurrentResolution() throws Exception {
+        class A {
+            Map<String, List<Set<String>>> field;
+        }
+        Type type = A.class.getDeclaredField("field").getGenericType();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Binder<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return binder.getBinder(type);
+                }));
+            }
+            start.countDown();
+            // racing resolutions all end up with the first published binder
+            for (Future<Binder<?>> future : futures) {
+                assertSame(future.get(), binder.getBinder(type));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Struct
+    @Value
+    private static class Immutable {
+        @StructMember(0) String name;
+        @StructMember(1) @Primitive(BasicType.UINT32) int value;
+        @StructMember(2) List<String> tags;
+    }
+
+    @Struct
+    @EqualsAndHashCode
+    private static class Mutable {
+        @StructMember(1) String name;
+        @StructMember(0) int value;
+        // not a member
+        String comment;
+    }
+
+    @Struct
+    @EqualsAndHashCode
+    private static class Swapped {
+        @StructMember(1) String first;
+        @StructMember(0) String second;
+
+        Swapped() {}
+
+        Swapped(String first, String second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    @Struct
+    @Value
+    private static class SwappedImmutable {
+        @StructMember(1) String first;
+        @StructMember(0) String second;
+    }
+
     private void testConvert(Type javaType, DbusObject dbusRepresentation, Object javaRepresentation,
                              Annotation... annotations) {
         assertEquals(decode(javaType, dbusRepresentation, annotations), javaRepresentation);
@@ -0,0 +1,204 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol;
+
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.ObjectPathObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Immutable, pre-processed form of a {@link MatchRule} for repeated matching.
+ *
+ * All values are captured when compiling, so later changes to the source rule are not reflected. Argument filters are
+ * flattened into arrays ordered by argument index, and string and path comparisons work on the already decoded values
+ * without converting them. The header part of the rule can be checked on its own with {@link
+ * #matchesHeader(MessageHeader)}, before the message body is decoded.
+ *
+ * @author yawkat
+ */
+@Immutable
+public final class CompiledMatchRule {
+    private static final int[] NO_INDICES = new int[0];
+
+    @Nullable private final MessageType messageType;
+    @Nullable private final String sender;
+    @Nullable private final String interfaceName;
+    @Nullable private final String member;
+    @Nullable private final ObjectPathObject path;
+    @Nullable private final ObjectPathObject pathNamespace;
+
+    private final int[] argumentIndices;
+    private final String[] argumentValues;
+    private final int[] argumentPathIndices;
+    private final ObjectPathObject[] argumentPathValues;
+    private final String[] argumentPathStrings;
+    @Nullable private final ObjectPathObject arg0Namespace;
+    /**
+     * One more than the highest argument index this rule inspects.
+     */
+    private final int minimumArgumentCount;
+
+    CompiledMatchRule(MatchRule rule) {
+        messageType = rule.getMessageType();
+        sender = rule.getSender();
+        interfaceName = rule.getInterfaceName();
+        member = rule.getMember();
+        path = rule.getPath();
+        pathNamespace = rule.getPathNamespace();
+
+        Map<Integer, String> arguments = sorted(rule.getArguments());
+        argumentIndices = new int[arguments.size()];
+        argumentValues = new String[arguments.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : arguments.entrySet()) {
+            argumentIndices[i] = entry.getKey();
+            argumentValues[i] = entry.getValue();
+            i++;
+        }
+
+        Map<Integer, ObjectPathObject> argumentPaths = sorted(rule.getArgumentPaths());
+        argumentPathIndices = new int[argumentPaths.size()];
+        argumentPathValues = new ObjectPathObject[argumentPaths.size()];
+        argumentPathStrings = new String[argumentPaths.size()];
+        i = 0;
+        for (Map.Entry<Integer, ObjectPathObject> entry : argumentPaths.entrySet()) {
+            argumentPathIndices[i] = entry.getKey();
+            argumentPathValues[i] = entry.getValue();
+            argumentPathStrings[i] = entry.getValue().stringValue();
+            i++;
+        }
+
+        arg0Namespace = rule.getArg0Namespace();
+
+        int minimumArgumentCount = arg0Namespace == null ? 0 : 1;
+        if (argumentIndices.length > 0) {
+            minimumArgumentCount = Math.max(minimumArgumentCount, argumentIndices[argumentIndices.length - 1] + 1);
+        }
+        if (argumentPathIndices.length > 0) {
+            minimumArgumentCount = Math.max(minimumArgumentCount,
+                                            argumentPathIndices[argumentPathIndices.length - 1] + 1);
+        }
+        this.minimumArgumentCount = minimumArgumentCount;
+    }
+
+    private static <V> Map<Integer, V> sorted(@Nullable Map<Integer, V> map) {
+        return map == null ? Collections.emptyMap() : new TreeMap<>(map);
+    }
+
+    /**
+     * @return {@code true} if this rule has criteria that need the message body.
+     */
+    public boolean needsBody() {
+        return minimumArgumentCount > 0;
+    }
+
+    public boolean matches(DbusMessage message) {
+        return matches(message, NameOwnerResolver.NONE);
+    }
+
+    /**
+     * @param owners Resolver for a well-known {@code sender} of this rule.
+     */
+    public boolean matches(DbusMessage message, NameOwnerResolver owners) {
+        if (!matchesHeader(message.getHeader(), owners)) { return false; }
+        if (!needsBody()) { return true; }
+        MessageBody body = message.getBody();
+        return body != null && matchesBody(body.getArguments());
+    }
+
+    /**
+     * Check the header criteria of this rule. If this returns {@code false}, the message cannot match this rule.
+     */
+    public boolean matchesHeader(MessageHeader header) {
+        return matchesHeader(header, NameOwnerResolver.NONE);
+    }
+
+    /**
+     * Check the header criteria of this rule. If this returns {@code false}, the message cannot match this rule.
+     *
+     * @param owners Resolver for a well-known {@code sender} of this rule.
+     */
+    public boolean matchesHeader(MessageHeader header, NameOwnerResolver owners) {
+        if (messageType != null && header.getMessageType() != messageType) { return false; }
+
+        Map<HeaderField, DbusObject> fields = header.getHeaderFields();
+        if (fields == null) {
+            return interfaceName == null && member == null && path == null && pathNamespace == null;
+        }
+
+        if (sender != null) {
+            DbusObject senderObject = fields.get(HeaderField.SENDER);
+            if (senderObject != null && !matchesSender(senderObject.stringValue(), owners)) { return false; }
+        }
+        if (interfaceName != null && !equalsString(interfaceName, fields.get(HeaderField.INTERFACE))) {
+            return false;
+        }
+        if (member != null && !equalsString(member, fields.get(HeaderField.MEMBER))) {
+            return false;
+        }
+        if (path != null || pathNamespace != null) {
+            DbusObject pathObject = fields.get(HeaderField.PATH);
+            if (!(pathObject instanceof ObjectPathObject)) { return false; }
+            if (path != null && !path.equals(pathObject)) { return false; }
+            if (pathNamespace != null && !((ObjectPathObject) pathObject).isInNamespace(pathNamespace)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesSender(String actual, NameOwnerResolver owners) {
+        // the bus itself sends with its well-known name, everyone else with their unique name
+        if (sender.equals(actual)) { return true; }
+        if (sender.startsWith(":")) { return false; }
+        return actual.equals(owners.getOwner(sender));
+    }
+
+    private boolean matchesBody(List<DbusObject> body) {
+        if (body.size() < minimumArgumentCount) { return false; }
+
+        for (int i = 0; i < argumentIndices.length; i++) {
+            DbusObject argument = body.get(argumentIndices[i]);
+            // argN only matches string arguments
+            if (argument.getType() != BasicType.STRING ||
+                !argumentValues[i].equals(argument.stringValue())) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < argumentPathIndices.length; i++) {
+            DbusObject argument = body.get(argumentPathIndices[i]);
+            if (argument.getType() == BasicType.OBJECT_PATH) {
+                if (!argumentPathValues[i].equals(argument)) { return false; }
+            } else if (argument.getType() == BasicType.STRING) {
+                if (!argumentPathStrings[i].equals(argument.stringValue())) { return false; }
+            } else {
+                return false;
+            }
+        }
+
+        if (arg0Namespace != null) {
+            DbusObject argument = body.get(0);
+            if (!(argument instanceof ObjectPathObject) ||
+                !((ObjectPathObject) argument).isInNamespace(arg0Namespace)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean equalsString(String expected, @Nullable DbusObject actual) {
+        return actual != null && expected.equals(actual.stringValue());
+    }
+}
@@ -7,6 +7,7 @@
 package at.yawk.dbus.protocol;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.concurrent.CompletionStage;
 
 /**
@@ -25,6 +26,14 @@ public interface DbusChannel extends Closeable {
      */
     void write(DbusMessage message);
 
+    /**
+     * Send all given messages to this channel in order and flush them together, so that many small messages can
+     * share a single socket write. Serials are created as in {@link #write(DbusMessage)}.
+     */
+    default void writeAll(List<DbusMessage> messages) {
+        messages.forEach(this::write);
+    }
+
     /**
      * Gracefully disconnect this channel.
      */
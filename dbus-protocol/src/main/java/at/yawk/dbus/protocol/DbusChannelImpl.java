@@ -9,6 +9,7 @@ package at.yawk.dbus.protocol;
 import io.netty.channel.Channel;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -42,10 +43,23 @@ class DbusChannelImpl implements DbusChannel {
 
     @Override
     public void write(DbusMessage message) {
+        assignSerial(message);
+        channel.writeAndFlush(message, channel.voidPromise());
+    }
+
+    @Override
+    public void writeAll(List<DbusMessage> messages) {
+        for (DbusMessage message : messages) {
+            assignSerial(message);
+            channel.write(message, channel.voidPromise());
+        }
+        channel.flush();
+    }
+
+    private void assignSerial(DbusMessage message) {
         if (message.getHeader().getSerial() == 0) {
             message.getHeader().setSerial(createSerial());
         }
-        channel.writeAndFlush(message, channel.voidPromise());
     }
 
     @Override
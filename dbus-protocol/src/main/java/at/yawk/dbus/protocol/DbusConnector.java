@@ -9,6 +9,8 @@ package at.yawk.dbus.protocol;
 import at.yawk.dbus.protocol.auth.AuthClient;
 import at.yawk.dbus.protocol.auth.mechanism.AuthMechanism;
 import at.yawk.dbus.protocol.auth.mechanism.ExternalAuthMechanism;
+import at.yawk.dbus.protocol.capture.CaptureHandler;
+import at.yawk.dbus.protocol.capture.CaptureWriter;
 import at.yawk.dbus.protocol.codec.DbusMainProtocol;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.Unpooled;
@@ -26,6 +28,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.concurrent.CompletionStage;
+import javax.annotation.Nullable;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -40,6 +43,15 @@ public class DbusConnector {
      */
     @Setter private MessageConsumer initialConsumer = MessageConsumer.DISCARD;
     @Setter private AuthMechanism authMechanism;
+    /**
+     * Receiver of the message and codec metrics of connections made after this is set.
+     */
+    @Setter private DbusMetrics metrics = DbusMetrics.NONE;
+    /**
+     * If set, the raw data of connections made after this is set is recorded to this writer, starting with the
+     * authentication.
+     */
+    @Setter @Nullable private CaptureWriter captureWriter;
 
     public DbusConnector() {
         bootstrap = new Bootstrap();
@@ -67,12 +79,20 @@ public class DbusConnector {
         Channel channel = localBootstrap.connect(address).sync().channel();
 
         AuthClient authClient = new AuthClient();
-        if (LoggingInboundAdapter.isEnabled()) {
-            channel.pipeline().addLast(new LoggingInboundAdapter());
-        }
+        CaptureWriter captureWriter = this.captureWriter;
+        // handlers added from outside the event loop are only set up later on the event loop, and writes issued
+        // before that would bypass the auth codec, so build the pipeline on the event loop and wait for it.
+        channel.eventLoop().submit(() -> {
+            if (LoggingInboundAdapter.isEnabled()) {
+                channel.pipeline().addLast(new LoggingInboundAdapter());
+            }
+            if (captureWriter != null) {
+                channel.pipeline().addLast(new CaptureHandler(captureWriter));
+            }
 
-        channel.pipeline().addLast("auth", authClient);
-        channel.config().setAutoRead(true);
+            channel.pipeline().addLast("auth", authClient);
+            channel.config().setAutoRead(true);
+        }).sync();
         log.trace("Pipeline is now {}", channel.pipeline());
 
         // I really don't get why dbus does this
@@ -84,8 +104,9 @@ public class DbusConnector {
         CompletionStage<?> completionPromise = authClient.startAuth(channel, authMechanism);
 
         SwappableMessageConsumer swappableConsumer = new SwappableMessageConsumer(initialConsumer);
+        DbusMetrics metrics = this.metrics;
         completionPromise.toCompletableFuture().thenRun(() -> {
-            channel.pipeline().replace("auth", "main", new DbusMainProtocol(swappableConsumer));
+            channel.pipeline().replace("auth", "main", new DbusMainProtocol(swappableConsumer, metrics));
             log.trace("Pipeline is now {}", channel.pipeline());
         }).get();
 
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol;
+
+import java.util.function.IntSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Receiver of connection metrics. Implementations adapt these callbacks to the metrics library in use; all methods
+ * default to doing nothing.
+ *
+ * Message and codec callbacks run on the event loop of the connection. {@link #callCompleted} runs on the thread
+ * that completes the call. Implementations must therefore be thread safe and should not block. One instance may be
+ * shared by several connections.
+ *
+ * @author yawkat
+ */
+public interface DbusMetrics {
+    /**
+     * Metrics receiver that discards everything.
+     */
+    DbusMetrics NONE = new DbusMetrics() {};
+
+    /**
+     * A message was encoded for sending.
+     *
+     * @param type  The message type.
+     * @param bytes The size of the message including header and body.
+     */
+    default void messageSent(MessageType type, int bytes) {}
+
+    /**
+     * A message header was received. This is called for every message, including those whose body is skipped
+     * because nobody is interested in it.
+     *
+     * @param type  The message type, or {@code null} if it is not known to us.
+     * @param bytes The size of the message including header and body.
+     */
+    default void messageReceived(@Nullable MessageType type, int bytes) {}
+
+    /**
+     * The header of an outgoing message was encoded.
+     */
+    default void headerEncoded(long nanos) {}
+
+    /**
+     * The header of an incoming message was decoded. Not called while the header is still incomplete.
+     */
+    default void headerDecoded(long nanos) {}
+
+    /**
+     * The body of an outgoing message was encoded.
+     */
+    default void bodyEncoded(long nanos) {}
+
+    /**
+     * The body of an incoming message was decoded.
+     */
+    default void bodyDecoded(long nanos) {}
+
+    /**
+     * A method call completed.
+     *
+     * @param nanos  Time from submitting the call until the reply, error or timeout.
+     * @param failed Whether the call ended in an error reply, a timeout or some other failure.
+     */
+    default void callCompleted(String interfaceName, String member, long nanos, boolean failed) {}
+
+    /**
+     * Register a gauge of the calls of a connection that are awaiting a reply. Called once when this receiver is set on
+     * a connection. Setting the same receiver again does not register a second gauge.
+     */
+    default void registerPendingCalls(IntSupplier pendingCalls) {}
+
+    /**
+     * Remove a gauge registered with {@link #registerPendingCalls(IntSupplier)}. Called with the same supplier
+     * instance when the connection closes or switches to another receiver.
+     */
+    default void unregisterPendingCalls(IntSupplier pendingCalls) {}
+}
@@ -78,7 +78,7 @@ public class DbusUtil {
 
     public static void validateConnectionName(@Nonnull String name) {
         if (!name.matches("([a-zA-Z_][\\w-]*\\.)+([a-zA-Z_][\\w-]*)") &&
-            !name.matches(":[\\w-]+")) {
+            !name.matches(":[\\w-]+(\\.[\\w-]+)*")) {
             throw new IllegalArgumentException("Invalid connection name: " + name);
         }
     }
@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol;
+
+import at.yawk.dbus.protocol.object.AlignableByteBuf;
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.object.StructObject;
+import at.yawk.dbus.protocol.object.VariantObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.StructTypeDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.ToString;
+import net.jcip.annotations.Immutable;
+
+/**
+ * Set of header fields that is shared by many messages, for example the path, interface, member, destination and
+ * signature of a method that is called repeatedly.
+ *
+ * The fields are serialized once when the template is created. A header the template was {@linkplain
+ * #applyTo(MessageHeader) applied to} is encoded by copying these bytes instead of serializing each field again, as
+ * long as the header fields still hold the template's values.
+ *
+ * The encoded fields start with a struct and are therefore 8-byte aligned. The header field array always starts at
+ * offset 16 of a message, so the bytes can be copied to the start of the array without adjusting any padding.
+ *
+ * @author yawkat
+ */
+@Immutable
+@ToString(of = "fields")
+public final class HeaderFieldTemplate {
+    private static final StructTypeDefinition HEADER_FIELD_TYPE =
+            new StructTypeDefinition(Arrays.asList(BasicType.BYTE, BasicType.VARIANT));
+
+    private final Map<HeaderField, DbusObject> fields;
+    private final byte[] encodedBigEndian;
+    private final byte[] encodedLittleEndian;
+
+    private HeaderFieldTemplate(Map<HeaderField, DbusObject> fields) {
+        this.fields = fields;
+        this.encodedBigEndian = encode(fields, ByteOrder.BIG_ENDIAN);
+        this.encodedLittleEndian = encode(fields, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static HeaderFieldTemplate create(Map<HeaderField, DbusObject> fields) {
+        for (Map.Entry<HeaderField, DbusObject> entry : fields.entrySet()) {
+            if (!entry.getValue().getType().equals(entry.getKey().getType())) {
+                throw new IllegalArgumentException(
+                        "Invalid header type on " + entry.getKey() + ": got " + entry.getValue().getType() +
+                        " but expected " + entry.getKey().getType());
+            }
+        }
+        EnumMap<HeaderField, DbusObject> copy = new EnumMap<>(HeaderField.class);
+        copy.putAll(fields);
+        return new HeaderFieldTemplate(Collections.unmodifiableMap(copy));
+    }
+
+    private static byte[] encode(Map<HeaderField, DbusObject> fields, ByteOrder order) {
+        ByteBuf buffer = Unpooled.buffer().order(order);
+        AlignableByteBuf aligned = AlignableByteBuf.fromAlignedBuffer(buffer, 8);
+        for (Map.Entry<HeaderField, DbusObject> entry : fields.entrySet()) {
+            StructObject.create(HEADER_FIELD_TYPE, Arrays.asList(
+                    BasicObject.createByte(entry.getKey().getId()),
+                    VariantObject.create(entry.getValue())
+            )).serialize(aligned);
+        }
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    public Map<HeaderField, DbusObject> getFields() {
+        return fields;
+    }
+
+    /**
+     * Add the fields of this template to the given header and mark the header as using this template.
+     */
+    public void applyTo(MessageHeader header) {
+        for (Map.Entry<HeaderField, DbusObject> entry : fields.entrySet()) {
+            header.addHeader(entry.getKey(), entry.getValue());
+        }
+        header.setHeaderFieldTemplate(this);
+    }
+
+    /**
+     * @return {@code true} if every field of this template is still present in the given header with the same value
+     * instance, i.e. the pre-encoded fields can be used for it.
+     */
+    public boolean isIntact(MessageHeader header) {
+        Map<HeaderField, DbusObject> headerFields = header.getHeaderFields();
+        if (headerFields == null) { return fields.isEmpty(); }
+        for (Map.Entry<HeaderField, DbusObject> entry : fields.entrySet()) {
+            if (headerFields.get(entry.getKey()) != entry.getValue()) { return false; }
+        }
+        return true;
+    }
+
+    public boolean contains(HeaderField field) {
+        return fields.containsKey(field);
+    }
+
+    /**
+     * Write the encoded header field structs in the byte order of the given buffer. The write position must be
+     * 8-byte aligned relative to the start of the message.
+     */
+    public void writeEncodedFields(ByteBuf out) {
+        out.writeBytes(out.order() == ByteOrder.BIG_ENDIAN ? encodedBigEndian : encodedLittleEndian);
+    }
+}
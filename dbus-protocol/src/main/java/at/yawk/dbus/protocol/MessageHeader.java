@@ -11,12 +11,15 @@ import at.yawk.dbus.protocol.object.SignatureObject;
 import java.nio.ByteOrder;
 import java.util.EnumMap;
 import java.util.Map;
+import javax.annotation.Nullable;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 /**
  * @author yawkat
  */
 @Data
+@EqualsAndHashCode(exclude = "headerFieldTemplate")
 public class MessageHeader {
     /**
      * Byte order of the message. Ignored for writing.
@@ -30,6 +33,11 @@ public class MessageHeader {
     private long messageBodyLength;
     private int serial;
     private Map<HeaderField, DbusObject> headerFields;
+    /**
+     * Template whose pre-encoded fields may be used when writing this header. Only used if the header fields still
+     * hold the template's values.
+     */
+    @Nullable private HeaderFieldTemplate headerFieldTemplate;
 
     /**
      * Add a header field, creating the header map if necessary.
@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol;
+
+import javax.annotation.Nullable;
+
+/**
+ * Resolves well-known bus names to the unique name of their current owner. Used to match the {@code sender} of a
+ * {@link MatchRule}, since the bus always sets the {@link HeaderField#SENDER} header to a unique name.
+ *
+ * Implementations are called while dispatching messages and must not block.
+ *
+ * @author yawkat
+ */
+@FunctionalInterface
+public interface NameOwnerResolver {
+    /**
+     * Resolver that knows no owners, i.e. senders are only compared literally.
+     */
+    NameOwnerResolver NONE = name -> null;
+
+    /**
+     * @return The unique name of the current owner of the given well-known name, or {@code null} if the name has no
+     * owner or its owner is not known.
+     */
+    @Nullable
+    String getOwner(String name);
+}
@@ -8,6 +8,7 @@ package at.yawk.dbus.protocol.auth;
 
 import at.yawk.dbus.protocol.auth.command.Command;
 import at.yawk.dbus.protocol.auth.mechanism.AuthMechanism;
+import at.yawk.dbus.protocol.jfr.FlightRecorderEvents;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -43,11 +44,32 @@ class AuthClientHandler extends SimpleChannelInboundHandler<Command> {
     }
 
     CompletionStage<?> startAuth(Channel channel, AuthMechanism mechanism) throws Exception {
-        return mechanism.startAuth(command -> {
-            currentCommandFuture = new CompletableFuture<>();
+        Object authEvent = FlightRecorderEvents.beginAuth();
+        CompletionStage<?> stage = mechanism.startAuth(command -> {
+            Object exchangeEvent = FlightRecorderEvents.beginAuthExchange();
+            CompletableFuture<Command> future = new CompletableFuture<>();
+            currentCommandFuture = future;
+            if (exchangeEvent != null) {
+                future.whenComplete((reply, error) -> FlightRecorderEvents.endAuthExchange(
+                        exchangeEvent, commandName(command), reply == null ? null : commandName(reply)));
+            }
             channel.writeAndFlush(command);
-            return currentCommandFuture;
+            return future;
         });
+        if (authEvent != null) {
+            stage.whenComplete((v, error) -> FlightRecorderEvents.endAuth(
+                    authEvent, mechanism.getClass().getSimpleName(), error == null));
+        }
+        return stage;
+    }
+
+    /**
+     * The command name without its arguments, which may contain credentials.
+     */
+    private static String commandName(Command command) {
+        String serialized = command.getSerialized();
+        int space = serialized.indexOf(' ');
+        return space == -1 ? serialized : serialized.substring(0, space);
     }
 
     private ChannelFuture write(Channel channel, Command msg) {
@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Handler that records the raw data passing through it to a {@link CaptureWriter}. It has to sit below all codecs of
+ * the pipeline, including the authentication codec.
+ *
+ * @author yawkat
+ */
+public class CaptureHandler extends ChannelDuplexHandler {
+    private final CaptureWriter writer;
+
+    public CaptureHandler(CaptureWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            writer.record(CaptureRecord.Direction.INBOUND, (ByteBuf) msg);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            writer.record(CaptureRecord.Direction.OUTBOUND, (ByteBuf) msg);
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        writer.flush();
+        super.channelInactive(ctx);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Mock peer that plays the remote side of a captured connection to a single client.
+ *
+ * The peer sends the inbound data of the capture and ignores the content of what the client sends. It only counts the
+ * bytes: inbound data is held back until the client has sent as much as it had sent before that data in the capture,
+ * so replies never overtake their requests, even when replaying faster than the capture. This works as long as the
+ * client sends the same amount of data as the captured one, e.g. the same calls with the same authentication.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+@Slf4j
+public class CapturePeer implements Closeable {
+    private final List<CaptureRecord> records;
+    private final double speed;
+    private final ServerSocket serverSocket;
+
+    @GuardedBy("this")
+    private long received = 0;
+    @GuardedBy("this")
+    private boolean clientClosed = false;
+    @GuardedBy("this")
+    @Nullable
+    private Socket socket;
+
+    /**
+     * Start listening on an ephemeral loopback port.
+     *
+     * @param speed Replay speed relative to the capture, or {@code <= 0} to replay as fast as possible.
+     */
+    public CapturePeer(List<CaptureRecord> records, double speed) throws IOException {
+        this.records = records;
+        this.speed = speed;
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        Thread thread = new Thread(this::serve, "dbus-capture-peer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    private void serve() {
+        try {
+            Socket socket = serverSocket.accept();
+            synchronized (this) {
+                this.socket = socket;
+            }
+            Thread drain = new Thread(() -> drain(socket), "dbus-capture-peer-drain");
+            drain.setDaemon(true);
+            drain.start();
+
+            OutputStream out = socket.getOutputStream();
+            Pacer pacer = new Pacer(speed);
+            long expected = 0;
+            for (CaptureRecord record : records) {
+                if (record.getDirection() == CaptureRecord.Direction.OUTBOUND) {
+                    expected += record.getData().length;
+                } else {
+                    if (!awaitReceived(expected)) { return; }
+                    pacer.await(record.getTimestampNanos());
+                    out.write(record.getData());
+                    out.flush();
+                }
+            }
+            log.debug("Capture replay complete");
+        } catch (IOException | InterruptedException e) {
+            if (!serverSocket.isClosed()) {
+                log.warn("Capture replay failed", e);
+            }
+        }
+    }
+
+    private void drain(Socket socket) {
+        byte[] buffer = new byte[4096];
+        try {
+            InputStream in = socket.getInputStream();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                synchronized (this) {
+                    received += n;
+                    notifyAll();
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            synchronized (this) {
+                clientClosed = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the client disconnected before sending enough data.
+     */
+    private synchronized boolean awaitReceived(long bytes) throws InterruptedException {
+        while (received < bytes) {
+            if (clientClosed) { return false; }
+            wait();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        Socket socket;
+        synchronized (this) {
+            socket = this.socket;
+        }
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Reader of files written by {@link CaptureWriter}.
+ *
+ * @author yawkat
+ */
+@NotThreadSafe
+public class CaptureReader implements Closeable {
+    private static final CaptureRecord.Direction[] DIRECTIONS = CaptureRecord.Direction.values();
+
+    private final DataInputStream in;
+
+    public CaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        byte[] magic = new byte[CaptureWriter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, CaptureWriter.MAGIC)) {
+            throw new IOException("Not a capture file");
+        }
+    }
+
+    public static CaptureReader open(Path file) throws IOException {
+        return new CaptureReader(Files.newInputStream(file));
+    }
+
+    /**
+     * Read all records of the given capture file.
+     */
+    public static List<CaptureRecord> readAll(Path file) throws IOException {
+        try (CaptureReader reader = open(file)) {
+            List<CaptureRecord> records = new ArrayList<>();
+            CaptureRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+            return records;
+        }
+    }
+
+    /**
+     * @return The next record, or {@code null} at the end of the capture.
+     */
+    @Nullable
+    public CaptureRecord next() throws IOException {
+        int direction = in.read();
+        if (direction == -1) { return null; }
+        if (direction >= DIRECTIONS.length) {
+            throw new IOException("Invalid direction " + direction);
+        }
+        try {
+            long timestamp = in.readLong();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new CaptureRecord(DIRECTIONS[direction], timestamp, data);
+        } catch (EOFException e) {
+            // the capture was cut off, e.g. because the process died
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
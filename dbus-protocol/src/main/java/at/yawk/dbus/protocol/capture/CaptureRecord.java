@@ -0,0 +1,35 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import lombok.Value;
+
+/**
+ * A chunk of raw connection data as it was read from or written to the socket.
+ *
+ * @author yawkat
+ */
+@Value
+public class CaptureRecord {
+    Direction direction;
+    /**
+     * Time of this record relative to the start of the capture.
+     */
+    long timestampNanos;
+    byte[] data;
+
+    public enum Direction {
+        /**
+         * Data sent by the peer (usually the bus) to us.
+         */
+        INBOUND,
+        /**
+         * Data we sent to the peer.
+         */
+        OUTBOUND,
+    }
+}
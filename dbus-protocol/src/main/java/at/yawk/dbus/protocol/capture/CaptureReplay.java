@@ -0,0 +1,51 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.codec.DbusMainProtocol;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Replay of captured connections into the message decoder.
+ *
+ * @author yawkat
+ */
+@UtilityClass
+public class CaptureReplay {
+    /**
+     * Decode the inbound data of a capture and pass the messages to the given consumer, on the calling thread.
+     *
+     * The capture must start at the beginning of the connection: inbound data is skipped until the client sent the
+     * {@code BEGIN} command that ends the authentication.
+     *
+     * @param speed Replay speed relative to the capture, or {@code <= 0} to replay as fast as possible.
+     */
+    public static void replayInbound(List<CaptureRecord> records, MessageConsumer consumer, double speed)
+            throws InterruptedException {
+        EmbeddedChannel channel = new EmbeddedChannel(new DbusMainProtocol(consumer));
+        Pacer pacer = new Pacer(speed);
+        boolean authenticated = false;
+        for (CaptureRecord record : records) {
+            if (record.getDirection() == CaptureRecord.Direction.OUTBOUND) {
+                authenticated |= isBegin(record.getData());
+            } else if (authenticated) {
+                pacer.await(record.getTimestampNanos());
+                channel.writeInbound(Unpooled.wrappedBuffer(record.getData()));
+            }
+        }
+        channel.finish();
+    }
+
+    private static boolean isBegin(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains("BEGIN\r\n");
+    }
+}
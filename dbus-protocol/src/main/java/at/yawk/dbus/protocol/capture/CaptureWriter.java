@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import io.netty.buffer.ByteBuf;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Writer of capture files.
+ *
+ * The format is a magic header followed by length-prefixed records: a direction byte ({@code 0} inbound, {@code 1}
+ * outbound), the timestamp in nanoseconds since the start of the capture as a long, the data length as an int and
+ * the data. All numbers are big-endian.
+ *
+ * @author yawkat
+ */
+@ThreadSafe
+public class CaptureWriter implements Closeable {
+    static final byte[] MAGIC = { 'D', 'B', 'U', 'S', 'C', 'A', 'P', 1 };
+
+    private final DataOutputStream out;
+    private final long start = System.nanoTime();
+
+    public CaptureWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.write(MAGIC);
+    }
+
+    public static CaptureWriter create(Path file) throws IOException {
+        return new CaptureWriter(Files.newOutputStream(file));
+    }
+
+    /**
+     * Append the readable bytes of the given buffer without consuming them.
+     */
+    public void record(CaptureRecord.Direction direction, ByteBuf data) throws IOException {
+        long timestamp = System.nanoTime() - start;
+        synchronized (this) {
+            out.writeByte(direction.ordinal());
+            out.writeLong(timestamp);
+            out.writeInt(data.readableBytes());
+            data.getBytes(data.readerIndex(), out, data.readableBytes());
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
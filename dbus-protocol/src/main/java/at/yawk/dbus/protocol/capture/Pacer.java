@@ -0,0 +1,38 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays replayed records so they keep the relative timing of the capture, optionally sped up.
+ *
+ * @author yawkat
+ */
+class Pacer {
+    private final double speed;
+    private final long start = System.nanoTime();
+
+    /**
+     * @param speed Replay speed relative to the capture, or {@code <= 0} to replay without any delay.
+     */
+    Pacer(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Wait until the given capture timestamp is due.
+     */
+    void await(long timestampNanos) throws InterruptedException {
+        if (speed <= 0) { return; }
+        long due = start + (long) (timestampNanos / speed);
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+}
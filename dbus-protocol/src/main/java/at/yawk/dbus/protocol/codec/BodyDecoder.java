@@ -6,9 +6,11 @@
 
 package at.yawk.dbus.protocol.codec;
 
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.HeaderField;
 import at.yawk.dbus.protocol.MessageBody;
 import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.jfr.FlightRecorderEvents;
 import at.yawk.dbus.protocol.object.AlignableByteBuf;
 import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.type.TypeDefinition;
@@ -17,13 +19,17 @@ import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import java.util.ArrayList;
 import java.util.List;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author yawkat
  */
 @Slf4j
+@RequiredArgsConstructor
 class BodyDecoder extends MessageToMessageDecoder<AlignableByteBuf> {
+    private final DbusMetrics metrics;
+
     @Override
     protected void decode(ChannelHandlerContext ctx, AlignableByteBuf in, List<Object> out) throws Exception {
         MessageHeader header = ctx.channel().attr(Local.CURRENT_HEADER).get();
@@ -32,6 +38,8 @@ class BodyDecoder extends MessageToMessageDecoder<AlignableByteBuf> {
             return;
         }
 
+        long start = System.nanoTime();
+        Object event = FlightRecorderEvents.beginMessageDecode();
         DbusObject signature = header.getHeaderFields().get(HeaderField.SIGNATURE);
         if (signature == null) { throw new DecoderException("Non-empty body but missing signature header"); }
 
@@ -47,6 +55,8 @@ class BodyDecoder extends MessageToMessageDecoder<AlignableByteBuf> {
 
         MessageBody body = new MessageBody();
         body.setArguments(bodyObjects);
+        metrics.bodyDecoded(System.nanoTime() - start);
+        FlightRecorderEvents.endMessageCodec(event, "body", header, header.getMessageBodyLength());
         out.add(body);
     }
 }
@@ -7,9 +7,11 @@
 package at.yawk.dbus.protocol.codec;
 
 import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.HeaderField;
 import at.yawk.dbus.protocol.MessageBody;
 import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.jfr.FlightRecorderEvents;
 import at.yawk.dbus.protocol.object.AlignableByteBuf;
 import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.object.SignatureObject;
@@ -19,13 +21,18 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author yawkat
  */
 @Slf4j
+@RequiredArgsConstructor
 class BodyEncoder extends MessageToMessageEncoder<DbusMessage> {
+    private final DbusMetrics metrics;
+
     @Override
     protected void encode(ChannelHandlerContext ctx, DbusMessage msg, List<Object> out) throws Exception {
         MessageHeader header = msg.getHeader();
@@ -34,19 +41,38 @@ class BodyEncoder extends MessageToMessageEncoder<DbusMessage> {
 
         MessageBody body = msg.getBody();
         if (body != null && !body.getArguments().isEmpty()) {
-            List<TypeDefinition> types = new ArrayList<>(body.getArguments().size());
+            long start = System.nanoTime();
+            Object event = FlightRecorderEvents.beginMessageEncode();
             ByteBuf bodyBuffer = ctx.alloc().buffer().order(Local.OUTBOUND_ORDER);
             AlignableByteBuf aligned = AlignableByteBuf.fromAlignedBuffer(bodyBuffer, 8);
             for (DbusObject arg : body.getArguments()) {
-                types.add(arg.getType());
                 arg.serialize(aligned);
             }
 
-            header.addHeader(HeaderField.SIGNATURE, SignatureObject.create(types));
+            // keep a matching signature (e.g. from a header template) so its encoded form can be reused
+            if (!signatureMatches(header.getHeaderFields().get(HeaderField.SIGNATURE), body.getArguments())) {
+                List<TypeDefinition> types = new ArrayList<>(body.getArguments().size());
+                for (DbusObject arg : body.getArguments()) {
+                    types.add(arg.getType());
+                }
+                header.addHeader(HeaderField.SIGNATURE, SignatureObject.create(types));
+            }
             header.setMessageBodyLength(bodyBuffer.readableBytes());
+            FlightRecorderEvents.endMessageCodec(event, "body", header, bodyBuffer.readableBytes());
             out.add(bodyBuffer);
+            metrics.bodyEncoded(System.nanoTime() - start);
             log.trace("Body: {}", body);
         }
         log.trace("Header: {}", header);
     }
+
+    private static boolean signatureMatches(@Nullable DbusObject signature, List<DbusObject> arguments) {
+        if (!(signature instanceof SignatureObject)) { return false; }
+        List<TypeDefinition> types = signature.typeValue();
+        if (types.size() != arguments.size()) { return false; }
+        for (int i = 0; i < types.size(); i++) {
+            if (!types.get(i).equals(arguments.get(i).getType())) { return false; }
+        }
+        return true;
+    }
 }
@@ -6,6 +6,7 @@
 
 package at.yawk.dbus.protocol.codec;
 
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.MessageConsumer;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandler;
@@ -16,19 +17,25 @@ import io.netty.channel.ChannelHandlerContext;
  */
 public class DbusMainProtocol extends ChannelDuplexHandler {
     private final MessageConsumer consumer;
+    private final DbusMetrics metrics;
 
     public DbusMainProtocol(MessageConsumer consumer) {
+        this(consumer, DbusMetrics.NONE);
+    }
+
+    public DbusMainProtocol(MessageConsumer consumer, DbusMetrics metrics) {
         this.consumer = consumer;
+        this.metrics = metrics;
     }
 
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
         add(ctx, new ByteCollector());
 
-        add(ctx, new MessageHeaderCodec());
+        add(ctx, new MessageHeaderCodec(metrics));
 
-        add(ctx, new BodyDecoder());
-        add(ctx, new BodyEncoder());
+        add(ctx, new BodyDecoder(metrics));
+        add(ctx, new BodyEncoder(metrics));
 
         add(ctx, new IncomingMessageAdapter(consumer));
 
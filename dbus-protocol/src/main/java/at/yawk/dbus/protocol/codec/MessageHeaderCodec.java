@@ -6,9 +6,12 @@
 
 package at.yawk.dbus.protocol.codec;
 
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.HeaderFieldTemplate;
 import at.yawk.dbus.protocol.MessageHeader;
 import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.jfr.FlightRecorderEvents;
 import at.yawk.dbus.protocol.object.*;
 import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
 import at.yawk.dbus.protocol.type.BasicType;
@@ -19,10 +22,11 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageCodec;
 import io.netty.handler.codec.DecoderException;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,6 +40,22 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
             new StructTypeDefinition(Arrays.asList(BasicType.BYTE, BasicType.VARIANT));
     private static final ArrayTypeDefinition HEADER_FIELD_LIST_TYPE = new ArrayTypeDefinition(HEADER_FIELD_TYPE);
 
+    private static final HeaderField[] HEADER_FIELDS = HeaderField.values();
+    /**
+     * Encoded variant signature of each header field type, indexed by ordinal.
+     */
+    private static final byte[][] HEADER_FIELD_SIGNATURES = new byte[HEADER_FIELDS.length][];
+
+    static {
+        for (HeaderField field : HEADER_FIELDS) {
+            byte[] signature = field.getType().serialize().getBytes(StandardCharsets.US_ASCII);
+            byte[] encoded = new byte[signature.length + 2];
+            encoded[0] = (byte) signature.length;
+            System.arraycopy(signature, 0, encoded, 1, signature.length);
+            HEADER_FIELD_SIGNATURES[field.ordinal()] = encoded;
+        }
+    }
+
     private static final int MIN_HEADER_LENGTH =
             12 + // static header
             4 // 0 array length
@@ -47,6 +67,8 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
     private static final byte NO_AUTO_START = 0x2;
     private static final byte ALLOW_INTERACTIVE_AUTHORIZATION = 0x4;
 
+    private final DbusMetrics metrics;
+
     /**
      * How many bytes still need to be read in the current packet.
      */
@@ -56,10 +78,21 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
      */
     private ByteOrder byteOrder;
 
+    MessageHeaderCodec() {
+        this(DbusMetrics.NONE);
+    }
+
+    MessageHeaderCodec(DbusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, MessageHeader msg, ByteBuf out)
             throws Exception {
+        long startNanos = System.nanoTime();
         out = out.order(Local.OUTBOUND_ORDER);
+        int start = out.writerIndex();
+        Object event = FlightRecorderEvents.beginMessageEncode();
 
         AlignableByteBuf alignedBuf = AlignableByteBuf.encoding(out);
         out.writeByte(Local.OUTBOUND_ORDER == ByteOrder.LITTLE_ENDIAN ? 'l' : 'B');
@@ -83,22 +116,49 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
         out.writeInt(serial);
 
         checkRequiredHeaderFieldsPresent(msg);
-        ArrayObject headerObject = ArrayObject.create(
-                HEADER_FIELD_LIST_TYPE,
-                msg.getHeaderFields().entrySet().stream()
-                        .map(entry -> {
-                            BasicObject id = BasicObject.createByte(entry.getKey().getId());
-                            DbusObject value = entry.getValue();
-                            return StructObject.create(
-                                    HEADER_FIELD_TYPE,
-                                    Arrays.asList(id, VariantObject.create(value))
-                            );
-                        })
-                        .collect(Collectors.toList())
-        );
-
-        headerObject.serialize(alignedBuf);
+
+        // header field array, length is patched in below
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        int fieldsStart = out.writerIndex();
+
+        HeaderFieldTemplate template = msg.getHeaderFieldTemplate();
+        if (template != null && !template.isIntact(msg)) {
+            log.trace("Header fields were modified, not using template {}", template);
+            template = null;
+        }
+        if (template != null) {
+            template.writeEncodedFields(out);
+        }
+        Map<HeaderField, DbusObject> fields = msg.getHeaderFields();
+        for (HeaderField field : HEADER_FIELDS) {
+            if (template != null && template.contains(field)) { continue; }
+            DbusObject value = fields.get(field);
+            if (value != null) {
+                writeHeaderField(alignedBuf, field, value);
+            }
+        }
+        out.setInt(lengthIndex, out.writerIndex() - fieldsStart);
+
         alignedBuf.alignWrite(8);
+        FlightRecorderEvents.endMessageCodec(event, "header", msg, out.writerIndex() - start);
+        metrics.headerEncoded(System.nanoTime() - startNanos);
+        metrics.messageSent(msg.getMessageType(), out.writerIndex() - start + (int) msg.getMessageBodyLength());
+    }
+
+    /**
+     * Write a single {@code (yv)} header field struct.
+     */
+    private static void writeHeaderField(AlignableByteBuf buf, HeaderField field, DbusObject value) {
+        buf.alignWrite(8);
+        buf.writeByte(field.getId());
+        if (value.getType() == field.getType()) {
+            buf.writeBytes(HEADER_FIELD_SIGNATURES[field.ordinal()]);
+            value.serialize(buf);
+        } else {
+            // invalid, but let the receiver complain about it
+            VariantObject.create(value).serialize(buf);
+        }
     }
 
     @Override
@@ -120,6 +180,8 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
         }
 
         if (rawBuf.readableBytes() < MIN_HEADER_LENGTH) { return; }
+        long startNanos = System.nanoTime();
+        Object event = FlightRecorderEvents.beginMessageDecode();
 
         rawBuf.markReaderIndex();
         byte endianness = rawBuf.readByte();
@@ -139,6 +201,7 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
                 rawBuf.resetReaderIndex().order(order));
 
         buf.getBuffer().markReaderIndex();
+        int start = buf.getBuffer().readerIndex();
         buf.readByte(); // skip endianness byte we read above
 
         @Nullable MessageType type = MessageType.byId(buf.readByte());
@@ -193,6 +256,9 @@ class MessageHeaderCodec extends ByteToMessageCodec<MessageHeader> {
 
         toRead = Math.toIntExact(header.getMessageBodyLength());
         byteOrder = order;
+        metrics.headerDecoded(System.nanoTime() - startNanos);
+        metrics.messageReceived(type, buf.getBuffer().readerIndex() - start + toRead);
+        FlightRecorderEvents.endMessageCodec(event, "header", header, buf.getBuffer().readerIndex() - start);
         out.add(header);
     }
 
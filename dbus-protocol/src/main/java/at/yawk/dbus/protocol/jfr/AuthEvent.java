@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author yawkat
+ */
+@Name("at.yawk.dbus.Auth")
+@Label("Authentication")
+@Category("D-Bus")
+@Description("Authentication handshake of a connection")
+class AuthEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(AuthEvent.class);
+
+    @Label("Mechanism")
+    String mechanism;
+    @Label("Success")
+    boolean success;
+
+    @Nullable
+    static Object start() {
+        if (!TYPE.isEnabled()) { return null; }
+        AuthEvent event = new AuthEvent();
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event, String mechanism, boolean success) {
+        AuthEvent e = (AuthEvent) event;
+        e.end();
+        if (!e.shouldCommit()) { return; }
+        e.mechanism = mechanism;
+        e.success = success;
+        e.commit();
+    }
+}
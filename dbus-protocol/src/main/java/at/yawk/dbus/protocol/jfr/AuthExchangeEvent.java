@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author yawkat
+ */
+@Name("at.yawk.dbus.AuthExchange")
+@Label("Authentication Exchange")
+@Category("D-Bus")
+@Description("One command of the authentication handshake and the reply of the server")
+class AuthExchangeEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(AuthExchangeEvent.class);
+
+    @Label("Sent")
+    String sent;
+    @Label("Received")
+    String received;
+
+    @Nullable
+    static Object start() {
+        if (!TYPE.isEnabled()) { return null; }
+        AuthExchangeEvent event = new AuthExchangeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event, String sent, @Nullable String received) {
+        AuthExchangeEvent e = (AuthExchangeEvent) event;
+        e.end();
+        if (!e.shouldCommit()) { return; }
+        e.sent = sent;
+        e.received = received;
+        e.commit();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import at.yawk.dbus.protocol.MessageHeader;
+import javax.annotation.Nullable;
+
+/**
+ * Entry point for the JDK Flight Recorder events of this library.
+ *
+ * Every event is started with a {@code begin} method that returns an opaque handle, or {@code null} if the event is
+ * not being recorded, and finished by passing that handle to the matching {@code end} method. Fields are only
+ * computed when the event is actually committed, so unrecorded events cost about one check.
+ *
+ * This class does not refer to {@code jdk.jfr} types in its signatures so that it also loads on runtimes without
+ * flight recorder support, where all events are disabled.
+ *
+ * @author yawkat
+ */
+public final class FlightRecorderEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightRecorderEvents() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    public static Object beginMessageEncode() {
+        return AVAILABLE ? MessageEncodeEvent.start() : null;
+    }
+
+    @Nullable
+    public static Object beginMessageDecode() {
+        return AVAILABLE ? MessageDecodeEvent.start() : null;
+    }
+
+    /**
+     * Finish a message encode or decode event.
+     *
+     * @param part {@code "header"} or {@code "body"}.
+     * @param size The encoded size of the part.
+     */
+    public static void endMessageCodec(@Nullable Object event, String part, MessageHeader header, long size) {
+        if (event != null) { MessageCodecEvent.finish(event, part, header, size); }
+    }
+
+    @Nullable
+    public static Object beginMethodCall() {
+        return AVAILABLE ? MethodCallEvent.start() : null;
+    }
+
+    /**
+     * @param errorName The name of the error reply, if the call got one.
+     * @param failure   The exception the call failed with, if it got no reply.
+     */
+    public static void endMethodCall(@Nullable Object event, @Nullable String destination, String interfaceName,
+                                     String member, @Nullable String errorName, @Nullable Throwable failure) {
+        if (event != null) { MethodCallEvent.finish(event, destination, interfaceName, member, errorName, failure); }
+    }
+
+    @Nullable
+    public static Object beginListenerDispatch() {
+        return AVAILABLE ? ListenerDispatchEvent.start() : null;
+    }
+
+    /**
+     * @param header The header of the dispatched message.
+     */
+    public static void endListenerDispatch(@Nullable Object event, MessageHeader header) {
+        if (event != null) { ListenerDispatchEvent.finish(event, header); }
+    }
+
+    @Nullable
+    public static Object beginAuth() {
+        return AVAILABLE ? AuthEvent.start() : null;
+    }
+
+    public static void endAuth(@Nullable Object event, String mechanism, boolean success) {
+        if (event != null) { AuthEvent.finish(event, mechanism, success); }
+    }
+
+    @Nullable
+    public static Object beginAuthExchange() {
+        return AVAILABLE ? AuthExchangeEvent.start() : null;
+    }
+
+    /**
+     * @param sent     The name of the command sent by the client.
+     * @param received The name of the reply of the server, or {@code null} if there was none.
+     */
+    public static void endAuthExchange(@Nullable Object event, String sent, @Nullable String received) {
+        if (event != null) { AuthExchangeEvent.finish(event, sent, received); }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.object.DbusObject;
+import java.util.Map;
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author yawkat
+ */
+@Name("at.yawk.dbus.ListenerDispatch")
+@Label("Listener Dispatch")
+@Category("D-Bus")
+@Description("Delivery of a signal or other message to a listener")
+class ListenerDispatchEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(ListenerDispatchEvent.class);
+
+    @Label("Sender")
+    String sender;
+    @Label("Interface")
+    String interfaceName;
+    @Label("Member")
+    String member;
+
+    @Nullable
+    static Object start() {
+        if (!TYPE.isEnabled()) { return null; }
+        ListenerDispatchEvent event = new ListenerDispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event, MessageHeader header) {
+        ListenerDispatchEvent e = (ListenerDispatchEvent) event;
+        e.end();
+        if (!e.shouldCommit()) { return; }
+        e.sender = stringField(header, HeaderField.SENDER);
+        e.interfaceName = stringField(header, HeaderField.INTERFACE);
+        e.member = stringField(header, HeaderField.MEMBER);
+        e.commit();
+    }
+
+    @Nullable
+    private static String stringField(MessageHeader header, HeaderField field) {
+        Map<HeaderField, DbusObject> fields = header.getHeaderFields();
+        DbusObject value = fields == null ? null : fields.get(field);
+        return value == null ? null : value.stringValue();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.object.DbusObject;
+import at.yawk.dbus.protocol.type.TypeDefinition;
+import java.util.Map;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Encoding or decoding of one part of a message. These events are emitted for every message, so they are disabled
+ * unless enabled explicitly in the recording settings.
+ *
+ * @author yawkat
+ */
+@Category("D-Bus")
+@Enabled(false)
+abstract class MessageCodecEvent extends Event {
+    @Label("Part")
+    String part;
+    @Label("Message Type")
+    String messageType;
+    @Label("Serial")
+    int serial;
+    @Label("Size")
+    @DataAmount
+    long size;
+    @Label("Signature")
+    String signature;
+
+    /**
+     * Start the given event. Subclasses check whether their type is enabled before allocating it.
+     */
+    static Object start(MessageCodecEvent event) {
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event, String part, MessageHeader header, long size) {
+        ((MessageCodecEvent) event).finish(part, header, size);
+    }
+
+    private void finish(String part, MessageHeader header, long size) {
+        end();
+        if (!shouldCommit()) { return; }
+        this.part = part;
+        this.messageType = String.valueOf(header.getMessageType());
+        this.serial = header.getSerial();
+        this.size = size;
+        Map<HeaderField, DbusObject> fields = header.getHeaderFields();
+        DbusObject signature = fields == null ? null : fields.get(HeaderField.SIGNATURE);
+        if (signature != null) {
+            StringBuilder builder = new StringBuilder();
+            for (TypeDefinition type : signature.typeValue()) {
+                builder.append(type.serialize());
+            }
+            this.signature = builder.toString();
+        }
+        commit();
+    }
+}
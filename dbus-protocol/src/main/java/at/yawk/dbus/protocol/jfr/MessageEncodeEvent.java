@@ -0,0 +1,28 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import javax.annotation.Nullable;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author yawkat
+ */
+@Name("at.yawk.dbus.MessageEncode")
+@Label("Message Encode")
+@Description("Encoding of the header or body of an outgoing message")
+class MessageEncodeEvent extends MessageCodecEvent {
+    private static final EventType TYPE = EventType.getEventType(MessageEncodeEvent.class);
+
+    @Nullable
+    static Object start() {
+        return TYPE.isEnabled() ? start(new MessageEncodeEvent()) : null;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @author yawkat
+ */
+@Name("at.yawk.dbus.MethodCall")
+@Label("Method Call")
+@Category("D-Bus")
+@Description("Round trip of a method call, from submission until the reply, error or timeout")
+class MethodCallEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(MethodCallEvent.class);
+
+    @Label("Destination")
+    String destination;
+    @Label("Interface")
+    String interfaceName;
+    @Label("Member")
+    String member;
+    @Label("Error Name")
+    @Description("Name of the error reply, if any")
+    String errorName;
+    @Label("Failure")
+    @Description("Exception the call failed with without a reply, e.g. a timeout")
+    Class<?> failure;
+
+    @Nullable
+    static Object start() {
+        if (!TYPE.isEnabled()) { return null; }
+        MethodCallEvent event = new MethodCallEvent();
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event, @Nullable String destination, String interfaceName, String member,
+                       @Nullable String errorName, @Nullable Throwable failure) {
+        MethodCallEvent e = (MethodCallEvent) event;
+        e.end();
+        if (!e.shouldCommit()) { return; }
+        e.destination = destination;
+        e.interfaceName = interfaceName;
+        e.member = member;
+        e.errorName = errorName;
+        e.failure = failure == null ? null : failure.getClass();
+        e.commit();
+    }
+}
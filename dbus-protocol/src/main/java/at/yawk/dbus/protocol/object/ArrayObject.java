@@ -7,6 +7,8 @@
 package at.yawk.dbus.protocol.object;
 
 import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
+import at.yawk.dbus.protocol.type.BasicType;
+import at.yawk.dbus.protocol.type.StructTypeDefinition;
 import at.yawk.dbus.protocol.type.TypeDefinition;
 import io.netty.buffer.ByteBuf;
 import java.util.AbstractList;
@@ -63,6 +65,9 @@ public abstract class ArrayObject implements DbusObject {
             throw new DeserializerException(
                     "Array exceeded length limit (got " + bytes + " bytes, max is " + ARRAY_MAX_BYTES + " bytes)");
         }
+        if (hasEightByteAlignedMembers(type)) {
+            buf.alignRead(8);
+        }
         int start = buf.readerIndex();
         List<DbusObject> values = new ArrayList<>();
         while ((buf.readerIndex() - start) < bytes) {
@@ -73,16 +78,29 @@ public abstract class ArrayObject implements DbusObject {
 
     @Override
     public void serialize(AlignableByteBuf buf) {
-        ByteBuf tempBuffer = serializeValues(ArrayObject.allocateBufferForWrite(buf.getBuffer()));
+        ByteBuf tempBuffer = serializeValues(buf.getBuffer());
 
         buf.alignWrite(4);
         buf.getBuffer().writeInt(tempBuffer.writerIndex());
+        if (hasEightByteAlignedMembers(type)) {
+            buf.alignWrite(8);
+        }
         if (tempBuffer.isReadable()) {
             buf.getBuffer().writeBytes(tempBuffer);
         }
         tempBuffer.release();
     }
 
+    /**
+     * Whether the first member must start on an 8-byte boundary. The padding between the length and that member is
+     * present even for empty arrays and not included in the length.
+     */
+    private static boolean hasEightByteAlignedMembers(ArrayTypeDefinition type) {
+        TypeDefinition memberType = type.getMemberType();
+        return memberType instanceof StructTypeDefinition ||
+               memberType == BasicType.INT64 || memberType == BasicType.UINT64 || memberType == BasicType.DOUBLE;
+    }
+
     protected abstract ByteBuf serializeValues(ByteBuf writeTarget);
 
     protected abstract int size();
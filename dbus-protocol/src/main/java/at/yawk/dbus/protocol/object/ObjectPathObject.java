@@ -65,6 +65,23 @@ public class ObjectPathObject extends BasicObject {
         return new ObjectPathObject(bytes);
     }
 
+    /**
+     * Check whether this path is equal to the given namespace or a descendant of it, as used for {@code
+     * path_namespace} match rules. Every path is in the root namespace {@code /}.
+     */
+    public boolean isInNamespace(ObjectPathObject namespace) {
+        byte[] prefix = namespace.bytes;
+        if (prefix.length == 1) {
+            // root namespace
+            return true;
+        }
+        if (prefix.length > bytes.length) { return false; }
+        for (int i = 0; i < prefix.length; i++) {
+            if (prefix[i] != bytes[i]) { return false; }
+        }
+        return bytes.length == prefix.length || bytes[prefix.length] == '/';
+    }
+
     public CharSequence getSequence() {
         return new AsciiString(bytes, false);
     }
@@ -10,9 +10,10 @@ import at.yawk.dbus.protocol.type.BasicType;
 import at.yawk.dbus.protocol.type.MalformedTypeDefinitionException;
 import at.yawk.dbus.protocol.type.TypeDefinition;
 import at.yawk.dbus.protocol.type.TypeParser;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
@@ -20,9 +21,13 @@ import lombok.ToString;
  * @author yawkat
  */
 @EqualsAndHashCode(callSuper = true)
-@ToString(callSuper = true)
+@ToString(callSuper = true, exclude = "signature")
 public class SignatureObject extends BasicObject {
     private final List<TypeDefinition> definitions;
+    /**
+     * Lazily computed signature string, cached because header signatures are written for every message.
+     */
+    private transient String signature;
 
     SignatureObject(List<TypeDefinition> definitions) {
         super(BasicType.SIGNATURE);
@@ -44,11 +49,19 @@ public class SignatureObject extends BasicObject {
 
     @Override
     public void serialize(AlignableByteBuf buf) {
-        StringBuilder builder = new StringBuilder();
-        for (TypeDefinition definition : definitions) {
-            builder.append(definition.serialize());
+        writeSignatureString(buf, signature());
+    }
+
+    private String signature() {
+        String signature = this.signature;
+        if (signature == null) {
+            StringBuilder builder = new StringBuilder();
+            for (TypeDefinition definition : definitions) {
+                builder.append(definition.serialize());
+            }
+            this.signature = signature = builder.toString();
         }
-        writeSignatureString(buf, builder.toString());
+        return signature;
     }
 
     static String readSignatureString(AlignableByteBuf buf) {
@@ -62,20 +75,18 @@ public class SignatureObject extends BasicObject {
     }
 
     static void writeSignatureString(AlignableByteBuf buf, String definition) {
-        byte[] bytes = definition.getBytes(StandardCharsets.US_ASCII);
-        if (bytes.length > 0xff) {
-            throw new IllegalStateException("Signature too long (is " + bytes.length + " bytes)");
+        if (definition.length() > 0xff) {
+            throw new IllegalStateException("Signature too long (is " + definition.length() + " bytes)");
         }
-        buf.writeByte(bytes.length);
-        buf.writeBytes(bytes);
+        buf.writeByte(definition.length());
+        // see StringObject#serialize
+        ByteBufUtil.writeAscii(buf.getBuffer().order(ByteOrder.BIG_ENDIAN), definition);
         buf.writeByte('\0');
     }
 
     @Override
     public String stringValue() throws UnsupportedOperationException {
-        return typeValue().stream()
-                .map(TypeDefinition::serialize)
-                .collect(Collectors.joining());
+        return signature();
     }
 
     @Override
@@ -8,6 +8,8 @@ package at.yawk.dbus.protocol.object;
 
 import at.yawk.dbus.protocol.type.BasicType;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -32,20 +34,28 @@ public class StringObject extends BasicObject {
     static StringObject deserialize(AlignableByteBuf buf) {
         buf.alignRead(4);
         int len = Math.toIntExact(buf.readUnsignedInt());
-        ByteBuf bts = buf.readBytes(len);
+        // decode in place rather than copying into a (pooled) buffer first
+        ByteBuf in = buf.getBuffer();
+        String value = in.toString(in.readerIndex(), len, StandardCharsets.UTF_8);
+        in.skipBytes(len);
         if (buf.readByte() != 0) {
             throw new DeserializerException("String not properly NUL-terminated");
         }
-        return new StringObject(bts.toString(StandardCharsets.UTF_8));
+        return new StringObject(value);
     }
 
     @Override
     public void serialize(AlignableByteBuf buf) {
         buf.alignWrite(4);
-        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-        buf.writeInt(bytes.length);
-        buf.writeBytes(bytes);
-        buf.writeByte(0);
+        // encode straight into the buffer and patch the length in afterwards
+        ByteBuf target = buf.getBuffer();
+        int lengthIndex = target.writerIndex();
+        target.writeInt(0);
+        // the bytes do not depend on the byte order, and the big-endian view is the unwrapped buffer that netty can
+        // write to directly
+        int length = ByteBufUtil.writeUtf8(target.order(ByteOrder.BIG_ENDIAN), value);
+        target.setInt(lengthIndex, length);
+        target.writeByte(0);
     }
 
     @Override
@@ -21,10 +21,23 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.unix.DomainSocketAddress;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 /**
@@ -32,6 +45,57 @@ import org.testng.annotations.Test;
  */
 @Slf4j
 public class DbusConnectorTest {
+    @Test(timeOut = 60000)
+    public void testAuthIsFirstWrite() throws Exception {
+        List<String> firstLines = Collections.synchronizedList(new ArrayList<>());
+        List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread serverThread = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        sockets.add(socket);
+                        InputStream in = socket.getInputStream();
+                        int nul = in.read();
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(in, StandardCharsets.US_ASCII));
+                        // a missing NUL byte fails the check below
+                        firstLines.add((nul == 0 ? "" : "?") + reader.readLine());
+                        OutputStream out = socket.getOutputStream();
+                        out.write(("OK " + DbusUtil.printUuid(UUID.randomUUID()) + "\r\n")
+                                          .getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        // the message protocol starts after BEGIN, we do not answer the Hello call
+                        String line;
+                        while ((line = reader.readLine()) != null && !line.equals("BEGIN")) {
+                            out.write("ERROR\r\n".getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // closed
+                }
+            }, "fake-bus");
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            // the pipeline used to be set up after the first writes now and then, which sent the AUTH command past
+            // the codec and hung the connect
+            for (int i = 0; i < 100; i++) {
+                DbusChannel channel = new DbusConnector().connect(server.getLocalSocketAddress());
+                channel.close();
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        Assert.assertEquals(firstLines.size(), 100);
+        for (String line : firstLines) {
+            Assert.assertTrue(line.startsWith("AUTH EXTERNAL "), line);
+        }
+    }
+
     @Test(enabled = false)
     public void testDefault() throws Exception {
         DbusChannel channel = new DbusConnector().connectSystem();
@@ -6,12 +6,16 @@
 
 package at.yawk.dbus.protocol;
 
+import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.object.ObjectPathObject;
 import java.util.HashMap;
 import java.util.Map;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 /**
  * @author yawkat
@@ -54,7 +58,92 @@ public class MatchRuleTest {
 
     @Test
     public void testMatch() throws Exception {
-        // todo
+        MatchRule rule = new MatchRule();
+        rule.setMessageType(MessageType.SIGNAL);
+        rule.setInterfaceName("at.yawk.MyInterface");
+        rule.setPathNamespace(ObjectPathObject.create("/at/yawk"));
+        Map<Integer, String> arguments = new HashMap<>();
+        arguments.put(1, "myarg");
+        rule.setArguments(arguments);
+        CompiledMatchRule compiled = rule.compile();
+
+        assertTrue(compiled.needsBody());
+        assertTrue(compiled.matches(signal("/at/yawk/a", "at.yawk.MyInterface",
+                                           BasicObject.createString("x"), BasicObject.createString("myarg"))));
+        assertTrue(compiled.matches(signal("/at/yawk", "at.yawk.MyInterface",
+                                           BasicObject.createString("x"), BasicObject.createString("myarg"))));
+        // namespace must end at a path element boundary
+        assertFalse(compiled.matches(signal("/at/yawkat", "at.yawk.MyInterface",
+                                            BasicObject.createString("x"), BasicObject.createString("myarg"))));
+        assertFalse(compiled.matches(signal("/at/yawk/a", "at.yawk.OtherInterface",
+                                            BasicObject.createString("x"), BasicObject.createString("myarg"))));
+        assertFalse(compiled.matches(signal("/at/yawk/a", "at.yawk.MyInterface",
+                                            BasicObject.createString("x"))));
+        // argN only matches strings
+        assertFalse(compiled.matches(signal("/at/yawk/a", "at.yawk.MyInterface",
+                                            BasicObject.createString("x"), BasicObject.createObjectPath("/myarg"))));
+        assertTrue(compiled.matchesHeader(signal("/at/yawk/a", "at.yawk.MyInterface").getHeader()));
+    }
+
+    @Test
+    public void testMatchAfterChange() throws Exception {
+        MatchRule rule = new MatchRule();
+        rule.setInterfaceName("at.yawk.MyInterface");
+        DbusMessage message = signal("/at/yawk", "at.yawk.MyInterface");
+
+        assertTrue(rule.matches(message));
+        rule.setMember("OtherSignal");
+        assertFalse(rule.matches(message));
+        rule.setMember("MySignal");
+        assertTrue(rule.matches(message));
+        assertEquals(rule, copyOf(rule));
+    }
+
+    @Test
+    public void testMatchArg0Namespace() throws Exception {
+        MatchRule rule = new MatchRule();
+        rule.setArg0Namespace(ObjectPathObject.create("/"));
+        CompiledMatchRule compiled = rule.compile();
+
+        assertTrue(compiled.matches(signal("/", "at.yawk.MyInterface", BasicObject.createObjectPath("/at"))));
+        assertFalse(compiled.matches(signal("/", "at.yawk.MyInterface", BasicObject.createString("/at"))));
+        assertFalse(compiled.matches(signal("/", "at.yawk.MyInterface")));
+    }
+
+    @Test
+    public void testMatchSender() throws Exception {
+        MatchRule rule = new MatchRule();
+        rule.setSender("org.example.Service");
+        CompiledMatchRule compiled = rule.compile();
+
+        DbusMessage fromOwner = signal("/", "at.yawk.MyInterface");
+        fromOwner.getHeader().addHeader(HeaderField.SENDER, BasicObject.createString(":1.42"));
+        assertFalse(compiled.matches(fromOwner));
+        assertTrue(compiled.matches(fromOwner, name -> name.equals("org.example.Service") ? ":1.42" : null));
+        assertFalse(compiled.matches(fromOwner, name -> ":1.43"));
+
+        DbusMessage fromName = signal("/", "at.yawk.MyInterface");
+        fromName.getHeader().addHeader(HeaderField.SENDER, BasicObject.createString("org.example.Service"));
+        assertTrue(compiled.matches(fromName));
+
+        MatchRule uniqueRule = new MatchRule();
+        uniqueRule.setSender(":1.42");
+        assertTrue(uniqueRule.compile().matches(fromOwner, name -> {
+            throw new AssertionError("unique names are not resolved");
+        }));
+    }
+
+    private static MatchRule copyOf(MatchRule rule) {
+        MatchRule copy = new MatchRule();
+        copy.setInterfaceName(rule.getInterfaceName());
+        copy.setMember(rule.getMember());
+        return copy;
+    }
+
+    private static DbusMessage signal(String path, String interfaceName, DbusObject... arguments) {
+        DbusMessage message = MessageFactory.methodCall(path, null, interfaceName, "MySignal", arguments);
+        message.getHeader().setMessageType(MessageType.SIGNAL);
+        return message;
     }
 
     static String escape(String s) {
@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.capture;
+
+import at.yawk.dbus.protocol.DbusMessage;
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageConsumer;
+import at.yawk.dbus.protocol.MessageFactory;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.codec.DbusMainProtocol;
+import at.yawk.dbus.protocol.object.BasicObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class CaptureTest {
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        EmbeddedChannel encoder = new EmbeddedChannel(new DbusMainProtocol(MessageConsumer.DISCARD));
+        encoder.writeOutbound(MessageFactory.methodCall(
+                "/", "org.example", "org.example.Test", "Call", BasicObject.createString("hi")));
+        ByteBuf message = encoder.readOutbound();
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (CaptureWriter writer = new CaptureWriter(file)) {
+            EmbeddedChannel channel = new EmbeddedChannel(new CaptureHandler(writer));
+            channel.writeOutbound(ascii("AUTH EXTERNAL 30\r\n"));
+            channel.writeInbound(ascii("OK 0123\r\n"));
+            channel.writeOutbound(ascii("BEGIN\r\n"));
+            // a message split across two reads
+            channel.writeInbound(message.slice(0, 10), message.slice(10, message.readableBytes() - 10));
+        }
+
+        List<CaptureRecord> records = new ArrayList<>();
+        try (CaptureReader reader = new CaptureReader(new ByteArrayInputStream(file.toByteArray()))) {
+            CaptureRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        Assert.assertEquals(records.size(), 5);
+        Assert.assertEquals(records.get(0).getDirection(), CaptureRecord.Direction.OUTBOUND);
+        Assert.assertEquals(new String(records.get(1).getData(), StandardCharsets.US_ASCII), "OK 0123\r\n");
+        Assert.assertEquals(records.get(4).getData().length, message.readableBytes() - 10);
+
+        List<DbusMessage> received = new ArrayList<>();
+        CaptureReplay.replayInbound(records, new MessageConsumer() {
+            @Override
+            public boolean requireAccept(MessageHeader header) {
+                return true;
+            }
+
+            @Override
+            public void accept(DbusMessage message) {
+                received.add(message);
+            }
+        }, 0);
+        Assert.assertEquals(received.size(), 1);
+        MessageHeader header = received.get(0).getHeader();
+        Assert.assertEquals(header.getHeaderFields().get(HeaderField.MEMBER).stringValue(), "Call");
+        Assert.assertEquals(received.get(0).getBody().getArguments(),
+                            Arrays.asList(BasicObject.createString("hi")));
+    }
+
+    @Test(timeOut = 10000)
+    public void testPeer() throws Exception {
+        List<CaptureRecord> records = Arrays.asList(
+                new CaptureRecord(CaptureRecord.Direction.OUTBOUND, 0, new byte[]{ 1, 2 }),
+                new CaptureRecord(CaptureRecord.Direction.INBOUND, 1000, new byte[]{ 3 }),
+                new CaptureRecord(CaptureRecord.Direction.OUTBOUND, 2000, new byte[]{ 4 }),
+                new CaptureRecord(CaptureRecord.Direction.INBOUND, 3000, new byte[]{ 5, 6 })
+        );
+        try (CapturePeer peer = new CapturePeer(records, 1);
+             Socket socket = new Socket(peer.getAddress().getAddress(), peer.getAddress().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(new byte[]{ 1, 2 });
+            Assert.assertEquals(in.readByte(), 3);
+            out.write(4);
+
+            byte[] reply = new byte[2];
+            in.readFully(reply);
+            Assert.assertEquals(reply, new byte[]{ 5, 6 });
+        }
+    }
+
+    private static ByteBuf ascii(String s) {
+        return Unpooled.copiedBuffer(s, StandardCharsets.US_ASCII);
+    }
+}
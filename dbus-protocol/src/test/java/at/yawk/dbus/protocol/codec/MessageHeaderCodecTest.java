@@ -6,10 +6,13 @@
 
 package at.yawk.dbus.protocol.codec;
 
+import at.yawk.dbus.protocol.DbusMetrics;
 import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.HeaderFieldTemplate;
 import at.yawk.dbus.protocol.MessageHeader;
 import at.yawk.dbus.protocol.MessageType;
 import at.yawk.dbus.protocol.object.BasicObject;
+import at.yawk.dbus.protocol.object.DbusObject;
 import at.yawk.dbus.protocol.object.ObjectPathObject;
 import at.yawk.dbus.protocol.object.SignatureObject;
 import at.yawk.dbus.protocol.type.BasicType;
@@ -18,7 +21,10 @@ import io.netty.buffer.Unpooled;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -52,4 +58,85 @@ public class MessageHeaderCodecTest {
         Assert.assertEquals(out.size(), 1);
         Assert.assertEquals(out.get(0), inHeader);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTemplate() throws Exception {
+        Map<HeaderField, DbusObject> templateFields = new EnumMap<>(HeaderField.class);
+        templateFields.put(HeaderField.PATH, ObjectPathObject.create("/org/freedesktop/UPower/devices/DisplayDevice"));
+        templateFields.put(HeaderField.SIGNATURE, SignatureObject.create(Arrays.asList(BasicType.UINT16,
+                                                                                       BasicType.UINT32)));
+        HeaderFieldTemplate template = HeaderFieldTemplate.create(templateFields);
+
+        MessageHeader templateHeader = header();
+        template.applyTo(templateHeader);
+        // not part of the template, written after the template fields
+        templateHeader.addHeader(HeaderField.MEMBER, BasicObject.createString("Get"));
+
+        MessageHeaderCodec codec = new MessageHeaderCodec();
+        ByteBuf templateBuffer = Unpooled.buffer();
+        codec.encode(null, templateHeader, templateBuffer);
+
+        List<Object> out = new ArrayList<>();
+        codec.decode(null, templateBuffer, out);
+        Assert.assertEquals(out, Collections.singletonList(templateHeader));
+
+        // replacing a template field must not write the stale template value
+        templateHeader.addHeader(HeaderField.PATH, ObjectPathObject.create("/other"));
+        ByteBuf modifiedBuffer = Unpooled.buffer();
+        codec.encode(null, templateHeader, modifiedBuffer);
+        out.clear();
+        new MessageHeaderCodec().decode(null, modifiedBuffer, out);
+        Assert.assertEquals(((MessageHeader) out.get(0)).getHeaderFields().get(HeaderField.PATH),
+                            ObjectPathObject.create("/other"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        List<String> recorded = new ArrayList<>();
+        MessageHeaderCodec codec = new MessageHeaderCodec(new DbusMetrics() {
+            @Override
+            public void messageSent(MessageType type, int bytes) {
+                recorded.add("out " + type + " " + bytes);
+            }
+
+            @Override
+            public void messageReceived(MessageType type, int bytes) {
+                recorded.add("in " + type + " " + bytes);
+            }
+
+            @Override
+            public void headerEncoded(long nanos) {
+                recorded.add("header encoded");
+            }
+
+            @Override
+            public void headerDecoded(long nanos) {
+                recorded.add("header decoded");
+            }
+        });
+        MessageHeader header = header();
+        header.addHeader(HeaderField.PATH, ObjectPathObject.create("/"));
+        header.addHeader(HeaderField.MEMBER, BasicObject.createString("Get"));
+        ByteBuf buffer = Unpooled.buffer();
+        codec.encode(null, header, buffer);
+        int length = buffer.readableBytes() + 6;
+
+        // an incomplete header is not reported
+        codec.decode(null, buffer.slice(0, buffer.readableBytes() - 8), new ArrayList<>());
+        Assert.assertEquals(recorded, Arrays.asList("header encoded", "out METHOD_CALL " + length));
+
+        codec.decode(null, buffer, new ArrayList<>());
+        Assert.assertEquals(recorded, Arrays.asList("header encoded", "out METHOD_CALL " + length,
+                                                    "header decoded", "in METHOD_CALL " + length));
+    }
+
+    private static MessageHeader header() {
+        MessageHeader header = new MessageHeader();
+        header.setByteOrder(ByteOrder.BIG_ENDIAN);
+        header.setMajorProtocolVersion((byte) 1);
+        header.setSerial(1);
+        header.setMessageType(MessageType.METHOD_CALL);
+        header.setMessageBodyLength(6);
+        return header;
+    }
+}
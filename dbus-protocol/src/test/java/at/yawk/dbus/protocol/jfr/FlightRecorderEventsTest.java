@@ -0,0 +1,107 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package at.yawk.dbus.protocol.jfr;
+
+import at.yawk.dbus.protocol.HeaderField;
+import at.yawk.dbus.protocol.MessageHeader;
+import at.yawk.dbus.protocol.MessageType;
+import at.yawk.dbus.protocol.object.SignatureObject;
+import at.yawk.dbus.protocol.type.BasicType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author yawkat
+ */
+public class FlightRecorderEventsTest {
+    @Test
+    public void testEvents() throws Exception {
+        // not recording
+        Assert.assertNull(FlightRecorderEvents.beginMessageEncode());
+
+        MessageHeader header = new MessageHeader();
+        header.setMessageType(MessageType.METHOD_CALL);
+        header.setSerial(5);
+        header.addHeader(HeaderField.SIGNATURE, SignatureObject.create(Arrays.asList(BasicType.STRING,
+                                                                                     BasicType.UINT32)));
+
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("dbus", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("at.yawk.dbus.MessageEncode");
+            recording.enable("at.yawk.dbus.MethodCall");
+            recording.start();
+
+            FlightRecorderEvents.endMessageCodec(FlightRecorderEvents.beginMessageEncode(), "body", header, 12);
+            FlightRecorderEvents.endMethodCall(FlightRecorderEvents.beginMethodCall(), "org.example", "org.example.I",
+                                               "Get", null, new TimeoutException());
+            // not enabled
+            Assert.assertNull(FlightRecorderEvents.beginMessageDecode());
+
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+
+        Assert.assertEquals(events.size(), 2);
+        RecordedEvent encode = events.get(0).getEventType().getName().equals("at.yawk.dbus.MessageEncode") ?
+                events.get(0) : events.get(1);
+        Assert.assertEquals(encode.getString("part"), "body");
+        Assert.assertEquals(encode.getString("messageType"), "METHOD_CALL");
+        Assert.assertEquals(encode.getInt("serial"), 5);
+        Assert.assertEquals(encode.getLong("size"), 12);
+        Assert.assertEquals(encode.getString("signature"), "su");
+
+        RecordedEvent call = events.get(encode == events.get(0) ? 1 : 0);
+        Assert.assertEquals(call.getString("destination"), "org.example");
+        Assert.assertEquals(call.getString("member"), "Get");
+        Assert.assertNull(call.getString("errorName"));
+        Assert.assertEquals(call.getClass("failure").getName(), TimeoutException.class.getName());
+    }
+
+    @Test
+    public void testHeaderWithoutFields() throws Exception {
+        MessageHeader header = new MessageHeader();
+        header.setMessageType(MessageType.SIGNAL);
+
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("dbus", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("at.yawk.dbus.MessageDecode");
+            recording.enable("at.yawk.dbus.ListenerDispatch");
+            recording.start();
+
+            FlightRecorderEvents.endMessageCodec(FlightRecorderEvents.beginMessageDecode(), "header", header, 16);
+            FlightRecorderEvents.endListenerDispatch(FlightRecorderEvents.beginListenerDispatch(), header);
+
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+
+        Assert.assertEquals(events.size(), 2);
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("at.yawk.dbus.MessageDecode")) {
+                Assert.assertNull(event.getString("signature"));
+            } else {
+                Assert.assertNull(event.getString("member"));
+            }
+        }
+    }
+}
@@ -10,8 +10,13 @@ import at.yawk.dbus.protocol.type.ArrayTypeDefinition;
 import at.yawk.dbus.protocol.type.BasicType;
 import at.yawk.dbus.protocol.type.DictTypeDefinition;
 import at.yawk.dbus.protocol.type.StructTypeDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +36,7 @@ public class DbusObjectTest {
         testSerialize(BasicObject.createInt64(0x0fffffffffffL));
         testSerialize(BasicObject.createDouble(0.16682));
         testSerialize(BasicObject.createString("Test"));
+        testSerialize(BasicObject.createString("T\u00e9st \ud83d\ude00"));
         testSerialize(SignatureObject.create(Arrays.asList(BasicType.INT16, BasicType.INT32)));
     }
 
@@ -41,6 +47,56 @@ public class DbusObjectTest {
         testSerialize(ArrayObject.create(type, values));
     }
 
+    @Test
+    public void testSerializeStructArray() {
+        StructTypeDefinition memberType = new StructTypeDefinition(Arrays.asList(BasicType.STRING, BasicType.INT32));
+        ArrayTypeDefinition type = new ArrayTypeDefinition(memberType);
+        List<DbusObject> values = Arrays.asList(
+                StructObject.create(memberType, Arrays.asList(BasicObject.createString("a"),
+                                                              BasicObject.createInt32(1))),
+                StructObject.create(memberType, Arrays.asList(BasicObject.createString("bc"),
+                                                              BasicObject.createInt32(2)))
+        );
+        testSerialize(ArrayObject.create(type, values));
+        testSerialize(ArrayObject.create(type, Collections.emptyList()));
+    }
+
+    @Test
+    public void testEightByteAlignedArrayLayout() {
+        // padding to the first element follows the length, is not counted in it, and is present for empty arrays
+        assertEquals(serializedBytes(ArrayObject.create(new ArrayTypeDefinition(BasicType.INT64),
+                                                        Collections.singletonList(BasicObject.createInt64(1)))),
+                     new byte[]{ 0, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 });
+        StructTypeDefinition memberType = new StructTypeDefinition(Arrays.asList(BasicType.INT32, BasicType.INT32));
+        assertEquals(serializedBytes(ArrayObject.create(new ArrayTypeDefinition(memberType),
+                                                        Collections.emptyList())),
+                     new byte[]{ 0, 0, 0, 0, 0, 0, 0, 0 });
+        assertEquals(serializedBytes(ArrayObject.create(new ArrayTypeDefinition(BasicType.INT32),
+                                                        Collections.singletonList(BasicObject.createInt32(1)))),
+                     new byte[]{ 0, 0, 0, 4, 0, 0, 0, 1 });
+    }
+
+    @Test
+    public void testCodecReleasesBuffers() {
+        // no thread caches, so every release shows up in the arena metrics
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false, 1, 0, 8192, 11, 0, 0, 0);
+        ArrayObject array = ArrayObject.create(
+                new ArrayTypeDefinition(BasicType.STRING),
+                Arrays.asList(BasicObject.createString("a"), BasicObject.createString("b")));
+
+        ByteBuf buffer = allocator.heapBuffer();
+        AlignableByteBuf buf = AlignableByteBuf.fromAlignedBuffer(buffer, 8);
+        array.serialize(buf);
+        assertEquals(array.getType().deserialize(buf), array);
+        buffer.release();
+
+        long active = 0;
+        for (PoolArenaMetric arena : allocator.heapArenas()) {
+            active += arena.numActiveAllocations();
+        }
+        assertEquals(active, 0);
+    }
+
     @Test
     public void testSerializeStruct() {
         StructTypeDefinition type = new StructTypeDefinition(Arrays.asList(BasicType.INT32, BasicType.INT32));
@@ -61,13 +117,23 @@ public class DbusObjectTest {
         testSerialize(VariantObject.create(BasicObject.createInt32(10)));
     }
 
+    private static byte[] serializedBytes(DbusObject object) {
+        AlignableByteBuf buf = AlignableByteBuf.fromAlignedBuffer(Unpooled.buffer(), 8);
+        object.serialize(buf);
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBuffer().readBytes(bytes);
+        return bytes;
+    }
+
     private static void testSerialize(DbusObject object) {
-        for (int readerOffset = 0; readerOffset < 10; readerOffset++) {
-            AlignableByteBuf buf = new AlignableByteBuf(Unpooled.buffer(), readerOffset, 8);
-            object.serialize(buf);
-            DbusObject des = object.getType().deserialize(buf);
-            assertEquals(des, object, "offset=" + readerOffset);
-            assertEquals(buf.readableBytes(), 0, "offset=" + readerOffset);
+        for (ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            for (int readerOffset = 0; readerOffset < 10; readerOffset++) {
+                AlignableByteBuf buf = new AlignableByteBuf(Unpooled.buffer().order(order), readerOffset, 8);
+                object.serialize(buf);
+                DbusObject des = object.getType().deserialize(buf);
+                assertEquals(des, object, "order=" + order + " offset=" + readerOffset);
+                assertEquals(buf.readableBytes(), 0, "order=" + order + " offset=" + readerOffset);
+            }
         }
     }
 }
\ No newline at end of file